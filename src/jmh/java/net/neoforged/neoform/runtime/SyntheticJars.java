@@ -0,0 +1,172 @@
+package net.neoforged.neoform.runtime;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates synthetic inputs for benchmarks that are shaped like the files NFRT processes for Minecraft:
+ * A client jar with roughly 10,000 entries, mostly classes with some resources, and a matching sources jar
+ * along with mappings for its SRG names.
+ * The content is generated from a fixed seed, so it is identical across benchmark runs.
+ */
+public final class SyntheticJars {
+    public static final int CLASS_COUNT = 8000;
+    public static final int RESOURCE_COUNT = 2000;
+    public static final int SRG_NAME_COUNT = 20000;
+
+    private static final String[] PACKAGES = {
+            "net/minecraft/client/",
+            "net/minecraft/world/level/",
+            "net/minecraft/world/entity/",
+            "net/minecraft/server/",
+            "com/mojang/blaze3d/",
+    };
+
+    private SyntheticJars() {
+    }
+
+    /**
+     * Writes a jar that contains classes and resources, like the original Minecraft client jar.
+     */
+    public static void writeClientJar(Path path) throws IOException {
+        var random = new Random(1);
+        try (var out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.putNextEntry(new ZipEntry(JarFile.MANIFEST_NAME));
+            out.write("Manifest-Version: 1.0\r\n".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+
+            for (var i = 0; i < CLASS_COUNT; i++) {
+                out.putNextEntry(new ZipEntry(getClassName(i) + ".class"));
+                out.write(randomContent(random, 512 + random.nextInt(8192)));
+                out.closeEntry();
+            }
+            for (var i = 0; i < RESOURCE_COUNT; i++) {
+                var name = (i % 2 == 0 ? "assets/minecraft/textures/block/" : "data/minecraft/recipe/") + "resource" + i + (i % 2 == 0 ? ".png" : ".json");
+                out.putNextEntry(new ZipEntry(name));
+                out.write(randomContent(random, 256 + random.nextInt(4096)));
+                out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Writes a jar with a Java source file for each class of the {@linkplain #writeClientJar client jar},
+     * referring to fields and methods by their SRG names.
+     */
+    public static void writeSourcesJar(Path path) throws IOException {
+        var random = new Random(2);
+        try (var out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            for (var i = 0; i < CLASS_COUNT; i++) {
+                var className = getClassName(i);
+                out.putNextEntry(new ZipEntry(className + ".java"));
+                out.write(generateSourceCode(random, className).getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Writes the merged mappings from obfuscated to SRG names, and the official mappings from official to
+     * obfuscated names, for the SRG names used by the {@linkplain #writeSourcesJar sources jar}.
+     * Like real mappings, some SRG names are left unmapped.
+     */
+    public static void writeMappings(Path mergedMappings, Path officialMappings) throws IOException {
+        try (var merged = Files.newBufferedWriter(mergedMappings);
+             var official = Files.newBufferedWriter(officialMappings)) {
+            for (var classIndex = 0; classIndex < CLASS_COUNT; classIndex++) {
+                var className = getClassName(classIndex);
+                merged.write("c" + classIndex + " " + className + "\n");
+                official.write(className.replace('/', '.') + " -> c" + classIndex + ":\n");
+                for (var i = classIndex; i < SRG_NAME_COUNT; i += CLASS_COUNT) {
+                    if (i % 10 == 0) {
+                        continue;
+                    }
+                    merged.write("\ta" + i + " f_" + i + "_\n");
+                    merged.write("\tb" + i + " (I)I m_" + i + "_\n");
+                    official.write("    int field" + i + " -> a" + i + "\n");
+                    official.write("    int method" + i + "(int) -> b" + i + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates a Java source file that declares and uses fields and methods with SRG names.
+     */
+    public static String generateSourceCode(Random random, String className) {
+        var source = new StringBuilder();
+        var lastSlash = className.lastIndexOf('/');
+        source.append("package ").append(className.substring(0, lastSlash).replace('/', '.')).append(";\n\n");
+        source.append("public class ").append(className.substring(lastSlash + 1)).append(" {\n");
+        var members = 5 + random.nextInt(30);
+        for (var i = 0; i < members; i++) {
+            var field = "f_" + random.nextInt(SRG_NAME_COUNT) + "_";
+            var method = "m_" + random.nextInt(SRG_NAME_COUNT) + "_";
+            source.append("    private int ").append(field).append(";\n\n");
+            source.append("    public int ").append(method).append("(int p_").append(i).append("_) {\n");
+            source.append("        this.").append(field).append(" += p_").append(i).append("_;\n");
+            source.append("        return this.").append(field).append(";\n");
+            source.append("    }\n\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * Writes the entries of the {@linkplain #writeClientJar client jar} as individual files to a directory.
+     */
+    public static void writeClientDirectory(Path directory) throws IOException {
+        var random = new Random(1);
+        for (var i = 0; i < CLASS_COUNT + RESOURCE_COUNT; i++) {
+            var file = directory.resolve(i < CLASS_COUNT ? getClassName(i) + ".class" : "assets/resource" + i + ".png");
+            Files.createDirectories(file.getParent());
+            Files.write(file, randomContent(random, 512 + random.nextInt(8192)));
+        }
+    }
+
+    public static String getClassName(int index) {
+        return PACKAGES[index % PACKAGES.length] + "pkg" + (index % 97) + "/Class" + index;
+    }
+
+    /**
+     * Content that compresses roughly as well as class files.
+     */
+    private static byte[] randomContent(Random random, int size) {
+        var content = new byte[size];
+        for (var i = 0; i < size; i++) {
+            content[i] = (byte) ('A' + random.nextInt(random.nextBoolean() ? 4 : 64));
+        }
+        return content;
+    }
+
+    public static void deleteRecursively(Path directory) {
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package net.neoforged.neoform.runtime.actions;
+
+import net.neoforged.neoform.runtime.SyntheticJars;
+import net.neoforged.neoform.runtime.engine.BenchmarkEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Measures built-in actions that copy and transform the content of jar files of the size of the Minecraft client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BuiltInActionsBenchmark {
+    private Path tempDir;
+    private Path workspace;
+    private Path clientJar;
+    private Path sourcesJar;
+    private ZipFile injectionZip;
+
+    @Setup
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("nfrt-jmh");
+        workspace = Files.createDirectories(tempDir.resolve("workspace"));
+        clientJar = tempDir.resolve("client.jar");
+        SyntheticJars.writeClientJar(clientJar);
+        sourcesJar = tempDir.resolve("sources.jar");
+        SyntheticJars.writeSourcesJar(sourcesJar);
+
+        var injectionZipPath = tempDir.resolve("inject.zip");
+        try (var out = new ZipOutputStream(Files.newOutputStream(injectionZipPath))) {
+            out.putNextEntry(new ZipEntry("inject/package-info-template.java"));
+            out.write("@ParametersAreNonnullByDefault\npackage {PACKAGE};\n".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("inject/net/minecraft/Injected.java"));
+            out.write("package net.minecraft;\nclass Injected {}\n".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        injectionZip = new ZipFile(injectionZipPath.toFile());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        injectionZip.close();
+        SyntheticJars.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public Map<String, Path> splitResourcesFromClasses() throws Exception {
+        var action = new SplitResourcesFromClassesAction();
+        action.addDenyPatterns("META-INF/.*");
+        return run(action, Map.of("input", clientJar));
+    }
+
+    @Benchmark
+    public Map<String, Path> injectZipContent() throws Exception {
+        var action = new InjectZipContentAction(List.of(new InjectFromZipFileSource(injectionZip, "inject/")));
+        return run(action, Map.of("input", sourcesJar));
+    }
+
+    @Benchmark
+    public Map<String, Path> mergeWithSources() throws Exception {
+        return run(new MergeWithSourcesAction(), Map.of("classes", clientJar, "sources", sourcesJar));
+    }
+
+    private Map<String, Path> run(BuiltInAction action, Map<String, Path> inputs) throws Exception {
+        var environment = new BenchmarkEnvironment(workspace, inputs);
+        action.run(environment);
+        return environment.getOutputs();
+    }
+}
@@ -0,0 +1,61 @@
+package net.neoforged.neoform.runtime.actions;
+
+import net.neoforged.neoform.runtime.SyntheticJars;
+import net.neoforged.neoform.runtime.engine.BenchmarkEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures replacing SRG names in the sources of all classes of a Minecraft-sized jar, including loading the
+ * mappings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RemapSrgSourcesBenchmark {
+    private Path tempDir;
+    private Path workspace;
+    private Map<String, Path> inputs;
+
+    @Setup
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("nfrt-jmh");
+        workspace = Files.createDirectories(tempDir.resolve("workspace"));
+        var sourcesJar = tempDir.resolve("sources.jar");
+        SyntheticJars.writeSourcesJar(sourcesJar);
+        var mergedMappings = tempDir.resolve("merged.tsrg");
+        var officialMappings = tempDir.resolve("official.txt");
+        SyntheticJars.writeMappings(mergedMappings, officialMappings);
+        inputs = Map.of("sources", sourcesJar, "mergedMappings", mergedMappings, "officialMappings", officialMappings);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticJars.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public Map<String, Path> remapSrgSources() throws Exception {
+        var environment = new BenchmarkEnvironment(workspace, inputs);
+        new RemapSrgSourcesAction().run(environment);
+        return environment.getOutputs();
+    }
+}
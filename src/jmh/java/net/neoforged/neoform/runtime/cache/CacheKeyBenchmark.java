@@ -0,0 +1,65 @@
+package net.neoforged.neoform.runtime.cache;
+
+import net.neoforged.neoform.runtime.cli.FileHashService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building cache keys with a number of components similar to the nodes of a NeoForm graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CacheKeyBenchmark {
+    private static final int COMPONENT_COUNT = 50;
+
+    private final FileHashService fileHashService = new FileHashService();
+    private CacheKeyBuilder precomputedActionKey;
+
+    @Setup
+    public void setUp() {
+        precomputedActionKey = createActionKey();
+    }
+
+    @Benchmark
+    public CacheKey buildCacheKey() {
+        var builder = createActionKey();
+        builder.add("input", "0123456789abcdef0123456789abcdef01234567", "~/.neoform/intermediate_results/input.jar");
+        return builder.build();
+    }
+
+    @Benchmark
+    public CacheKey buildCacheKeyFromPrecomputedComponents() {
+        var builder = new CacheKeyBuilder("decompile", fileHashService, Map.of());
+        builder.add("input", "0123456789abcdef0123456789abcdef01234567", "~/.neoform/intermediate_results/input.jar");
+        builder.addAll(precomputedActionKey);
+        return builder.build();
+    }
+
+    @Benchmark
+    public String describeCacheKey() {
+        return buildCacheKey().describe();
+    }
+
+    private CacheKeyBuilder createActionKey() {
+        var builder = new CacheKeyBuilder("decompile", fileHashService, Map.of());
+        for (var i = 0; i < COMPONENT_COUNT; i++) {
+            builder.add("component" + i, "value of component " + i, i % 2 == 0 ? "annotation " + i : null);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,59 @@
+package net.neoforged.neoform.runtime.cache;
+
+import net.neoforged.neoform.runtime.SyntheticJars;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ZipContentHasherBenchmark {
+    private Path tempDir;
+    private ZipFile clientJar;
+
+    @Setup
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("nfrt-jmh");
+        var clientJarPath = tempDir.resolve("client.jar");
+        SyntheticJars.writeClientJar(clientJarPath);
+        clientJar = new ZipFile(clientJarPath.toFile());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        clientJar.close();
+        SyntheticJars.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public String hashAllEntries() throws IOException {
+        var hasher = new ZipContentHasher(clientJar);
+        hasher.addFileEntriesAtOrUnderPath("");
+        return hasher.getHash();
+    }
+
+    @Benchmark
+    public String hashEntriesUnderPath() throws IOException {
+        var hasher = new ZipContentHasher(clientJar);
+        hasher.addFileEntriesAtOrUnderPath("net/minecraft/client/");
+        return hasher.getHash();
+    }
+}
@@ -0,0 +1,103 @@
+package net.neoforged.neoform.runtime.engine;
+
+import net.neoforged.neoform.runtime.artifacts.ArtifactManager;
+import net.neoforged.neoform.runtime.graph.ResultRepresentation;
+import net.neoforged.neoform.runtime.utils.JavaInstallationInformation;
+import net.neoforged.problems.ProblemReporter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A minimal processing environment to run built-in actions outside the engine. Inputs are given as paths,
+ * and outputs are written to the workspace.
+ */
+public class BenchmarkEnvironment implements ProcessingEnvironment {
+    private final Path workspace;
+    private final Map<String, Path> inputs;
+    private final Map<String, Path> outputs = new HashMap<>();
+
+    public BenchmarkEnvironment(Path workspace, Map<String, Path> inputs) {
+        this.workspace = workspace;
+        this.inputs = Map.copyOf(inputs);
+    }
+
+    @Override
+    public ArtifactManager getArtifactManager() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Path getWorkspace() {
+        return workspace;
+    }
+
+    @Override
+    public String getJavaExecutable() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public @Nullable JavaInstallationInformation getJavaExecutableInformation() {
+        return null;
+    }
+
+    @Override
+    public String interpolateString(String text) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Path extractData(String id) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> T getRequiredInput(String id, ResultRepresentation<T> representation) throws IOException {
+        var result = getInput(id, representation);
+        if (result == null) {
+            throw new IllegalArgumentException("Missing input " + id);
+        }
+        return result;
+    }
+
+    @Override
+    public <T> @Nullable T getInput(String id, ResultRepresentation<T> representation) throws IOException {
+        var path = inputs.get(id);
+        return path != null ? representation.loader().load(path) : null;
+    }
+
+    @Override
+    public Path getOutputPath(String id) {
+        var path = workspace.resolve(id + ".jar");
+        setOutput(id, path);
+        return path;
+    }
+
+    @Override
+    public void setOutput(String id, Path resultPath) {
+        outputs.put(id, resultPath);
+    }
+
+    public Map<String, Path> getOutputs() {
+        return outputs;
+    }
+
+    @Override
+    public boolean isVerbose() {
+        return false;
+    }
+
+    @Override
+    public int waitForProcess(Process process) throws InterruptedException {
+        return process.waitFor();
+    }
+
+    @Override
+    public ProblemReporter getProblemReporter() {
+        return ProblemReporter.NOOP;
+    }
+}
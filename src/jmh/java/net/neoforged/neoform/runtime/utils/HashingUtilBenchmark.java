@@ -0,0 +1,55 @@
+package net.neoforged.neoform.runtime.utils;
+
+import net.neoforged.neoform.runtime.SyntheticJars;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HashingUtilBenchmark {
+    private Path tempDir;
+    private Path clientJar;
+    private Path clientDirectory;
+
+    @Setup
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("nfrt-jmh");
+        clientJar = tempDir.resolve("client.jar");
+        SyntheticJars.writeClientJar(clientJar);
+        clientDirectory = tempDir.resolve("client");
+        SyntheticJars.writeClientDirectory(clientDirectory);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticJars.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public String hashFile() throws IOException {
+        return HashingUtil.hashFile(clientJar, "SHA-1");
+    }
+
+    @Benchmark
+    public String hashDirectory() throws IOException {
+        return HashingUtil.hashDirectory(clientDirectory, "SHA-1");
+    }
+}
@@ -3,7 +3,12 @@ package net.neoforged.neoform.runtime.actions;
 import net.neoforged.neoform.runtime.cache.CacheKeyBuilder;
 import net.neoforged.neoform.runtime.graph.ExecutionNodeAction;
 import net.neoforged.neoform.runtime.utils.Logger;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
@@ -13,13 +18,52 @@ import java.nio.file.Paths;
 public abstract class BuiltInAction implements ExecutionNodeAction {
     protected static final Logger LOG = Logger.create();
 
+    /**
+     * Name of the resource that contains a fingerprint of the NFRT implementation, which is computed at build time.
+     */
+    private static final String FINGERPRINT_RESOURCE = "/nfrt-implementation-fingerprint.txt";
+
     @Override
     public void computeCacheKey(CacheKeyBuilder ck) {
+        Path location;
         try {
-            var location = Paths.get(getClass().getProtectionDomain().getCodeSource().getLocation().toURI());
-            ck.addPath("action implementation", location);
+            location = Paths.get(getClass().getProtectionDomain().getCodeSource().getLocation().toURI());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+
+        addImplementationFingerprint(ck, location, EmbeddedFingerprint.VALUE);
+    }
+
+    /**
+     * When running from a packaged jar, the fingerprint embedded at build-time is used instead of hashing the jar.
+     * Exploded class directories (i.e. when running from the IDE) may not have an up-to-date fingerprint.
+     */
+    static void addImplementationFingerprint(CacheKeyBuilder ck, Path location, @Nullable String embeddedFingerprint) {
+        var fingerprint = Files.isRegularFile(location) ? embeddedFingerprint : null;
+        if (fingerprint != null) {
+            ck.add("action implementation", fingerprint, CacheKeyBuilder.prettifyPath(location));
+        } else {
+            ck.addPath("action implementation", location);
+        }
+    }
+
+    @Nullable
+    static String readEmbeddedFingerprint() {
+        try (var in = BuiltInAction.class.getResourceAsStream(FINGERPRINT_RESOURCE)) {
+            if (in == null) {
+                return null;
+            }
+            var fingerprint = new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+            return fingerprint.isEmpty() ? null : fingerprint;
+        } catch (IOException e) {
+            LOG.warn("Failed to read " + FINGERPRINT_RESOURCE + ": " + e);
+            return null;
+        }
+    }
+
+    private static final class EmbeddedFingerprint {
+        @Nullable
+        static final String VALUE = readEmbeddedFingerprint();
     }
 }
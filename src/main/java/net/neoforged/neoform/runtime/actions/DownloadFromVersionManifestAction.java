@@ -3,6 +3,7 @@ package net.neoforged.neoform.runtime.actions;
 import net.neoforged.neoform.runtime.artifacts.ArtifactManager;
 import net.neoforged.neoform.runtime.cache.CacheKeyBuilder;
 import net.neoforged.neoform.runtime.engine.ProcessingEnvironment;
+import net.neoforged.neoform.runtime.graph.NodeResources;
 import net.neoforged.neoform.runtime.graph.ResultRepresentation;
 
 import java.io.IOException;
@@ -31,4 +32,9 @@ public class DownloadFromVersionManifestAction extends BuiltInAction {
         super.computeCacheKey(ck);
         ck.add("manifest entry", manifestEntry);
     }
+
+    @Override
+    public NodeResources getResources() {
+        return NodeResources.IO_ONLY;
+    }
 }
@@ -2,6 +2,7 @@ package net.neoforged.neoform.runtime.actions;
 
 import net.neoforged.neoform.runtime.artifacts.ArtifactManager;
 import net.neoforged.neoform.runtime.engine.ProcessingEnvironment;
+import net.neoforged.neoform.runtime.graph.NodeResources;
 
 import java.io.IOException;
 
@@ -17,4 +18,9 @@ public class DownloadLauncherManifestAction extends BuiltInAction {
         var artifact = artifactManager.getLauncherManifest();
         environment.setOutput("output", artifact.path());
     }
+
+    @Override
+    public NodeResources getResources() {
+        return NodeResources.IO_ONLY;
+    }
 }
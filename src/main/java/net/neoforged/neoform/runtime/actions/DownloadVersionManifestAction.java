@@ -3,6 +3,7 @@ package net.neoforged.neoform.runtime.actions;
 import net.neoforged.neoform.runtime.artifacts.ArtifactManager;
 import net.neoforged.neoform.runtime.config.neoform.NeoFormDistConfig;
 import net.neoforged.neoform.runtime.engine.ProcessingEnvironment;
+import net.neoforged.neoform.runtime.graph.NodeResources;
 
 import java.io.IOException;
 
@@ -20,4 +21,9 @@ public class DownloadVersionManifestAction extends BuiltInAction {
         var artifact = artifactManager.getVersionManifest(config.minecraftVersion());
         environment.setOutput("output", artifact.path());
     }
+
+    @Override
+    public NodeResources getResources() {
+        return NodeResources.IO_ONLY;
+    }
 }
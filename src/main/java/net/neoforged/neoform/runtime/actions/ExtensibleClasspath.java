@@ -1,17 +1,22 @@
 package net.neoforged.neoform.runtime.actions;
 
 import net.neoforged.neoform.runtime.artifacts.ClasspathItem;
+import net.neoforged.neoform.runtime.cache.CacheKey;
 import net.neoforged.neoform.runtime.cache.CacheKeyBuilder;
+import net.neoforged.neoform.runtime.cli.FileHashService;
 import net.neoforged.neoform.runtime.graph.NodeOutput;
 import net.neoforged.neoform.runtime.manifests.MinecraftLibrary;
 import net.neoforged.neoform.runtime.manifests.MinecraftVersionManifest;
 import net.neoforged.neoform.runtime.utils.MavenCoordinate;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
@@ -23,6 +28,15 @@ public class ExtensibleClasspath {
     private List<ClasspathItem> additionalClasspath = new ArrayList<>();
     @Nullable
     private List<ClasspathItem> overriddenClasspath;
+    @Nullable
+    private volatile Fingerprint fingerprint;
+
+    /**
+     * The cache key component computed for the given classpath items, which is reused as long as they do not change.
+     */
+    private record Fingerprint(List<ClasspathItem> items, FileHashService fileHashService, boolean referenceNodeOutputs,
+                               CacheKey.AnnotatedValue value) {
+    }
 
     public List<ClasspathItem> getEffectiveClasspath() {
         if (overriddenClasspath != null) {
@@ -117,29 +131,68 @@ public class ExtensibleClasspath {
             prefix = "additional " + prefix;
         }
 
-        for (int i = 0; i < effectiveItems.size(); i++) {
-            var component = String.format(Locale.ROOT, "%s[%03d]", prefix, i);
-            var item = effectiveItems.get(i);
-
-            switch (item) {
-                case ClasspathItem.MavenCoordinateItem(MavenCoordinate coordinate, URI uri) -> {
-                    if (uri != null) {
-                        ck.add(component, coordinate + " from " + uri);
-                    } else {
-                        ck.add(component, coordinate.toString());
-                    }
+        ck.add(prefix, getFingerprint(effectiveItems, ck.getFileHashService(), ck.isReferenceNodeOutputs()));
+    }
+
+    /**
+     * Computes a single digest of the given classpath items. Since the same classpath is usually part of the cache
+     * keys of several nodes, it is memoized, and copies of this classpath start out with the same digest.
+     * The values of the individual items are kept as details of the digest, to explain cache misses per item.
+     * Files that have not been hashed yet are hashed in parallel.
+     */
+    private CacheKey.AnnotatedValue getFingerprint(List<ClasspathItem> items, FileHashService fileHashService, boolean referenceNodeOutputs) {
+        var fingerprint = this.fingerprint;
+        if (fingerprint != null
+            && fingerprint.fileHashService() == fileHashService
+            && fingerprint.referenceNodeOutputs() == referenceNodeOutputs
+            && fingerprint.items().equals(items)) {
+            return fingerprint.value();
+        }
+
+        var values = items.parallelStream().map(item -> getCacheKeyValue(item, fileHashService, referenceNodeOutputs)).toList();
+        var details = new LinkedHashMap<String, CacheKey.AnnotatedValue>(items.size());
+        for (int i = 0; i < values.size(); i++) {
+            details.put(String.format(Locale.ROOT, "[%03d]", i), values.get(i));
+        }
+        var digest = new CacheKey("classpath", details).hashValue();
+        var value = new CacheKey.AnnotatedValue(digest, items.size() + " entries", details);
+        this.fingerprint = new Fingerprint(List.copyOf(items), fileHashService, referenceNodeOutputs, value);
+        return value;
+    }
+
+    private static CacheKey.AnnotatedValue getCacheKeyValue(ClasspathItem item, FileHashService fileHashService, boolean referenceNodeOutputs) {
+        return switch (item) {
+            case ClasspathItem.MavenCoordinateItem(MavenCoordinate coordinate, URI uri) -> {
+                if (uri != null) {
+                    yield new CacheKey.AnnotatedValue(coordinate + " from " + uri, null);
+                } else {
+                    yield new CacheKey.AnnotatedValue(coordinate.toString(), null);
+                }
+            }
+            case ClasspathItem.MinecraftLibraryItem(MinecraftLibrary library) -> {
+                var artifactDownload = library.getArtifactDownload();
+                if (artifactDownload != null) {
+                    yield new CacheKey.AnnotatedValue(library.artifactId() + " [" + artifactDownload.checksum() + "]", null);
+                } else {
+                    yield new CacheKey.AnnotatedValue(library.artifactId(), null);
                 }
-                case ClasspathItem.MinecraftLibraryItem(MinecraftLibrary library) -> {
-                    var artifactDownload = library.getArtifactDownload();
-                    if (artifactDownload != null) {
-                        ck.add(component, library.artifactId() + " [" + artifactDownload.checksum() + "]");
-                    } else {
-                        ck.add(component, library.artifactId());
-                    }
+            }
+            case ClasspathItem.PathItem(Path path) -> getPathValue(path, fileHashService);
+            case ClasspathItem.NodeOutputItem(NodeOutput output) -> {
+                if (referenceNodeOutputs) {
+                    yield new CacheKey.AnnotatedValue("output " + output.getNode().id() + "." + output.id(), null);
+                } else {
+                    yield getPathValue(output.getResultPath(), fileHashService);
                 }
-                case ClasspathItem.PathItem(Path path) -> ck.addPath(component, path);
-                case ClasspathItem.NodeOutputItem(NodeOutput output) -> ck.addPath(component, output.getResultPath());
             }
+        };
+    }
+
+    private static CacheKey.AnnotatedValue getPathValue(Path path, FileHashService fileHashService) {
+        try {
+            return new CacheKey.AnnotatedValue(fileHashService.getHashValue(path), CacheKeyBuilder.prettifyPath(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -163,6 +216,7 @@ public class ExtensibleClasspath {
         var result = new ExtensibleClasspath();
         result.overriddenClasspath = overriddenClasspath;
         result.additionalClasspath = new ArrayList<>(additionalClasspath);
+        result.fingerprint = fingerprint;
         return result;
     }
 }
@@ -4,11 +4,15 @@ import net.neoforged.neoform.runtime.artifacts.Artifact;
 import net.neoforged.neoform.runtime.cache.CacheKeyBuilder;
 import net.neoforged.neoform.runtime.engine.ProcessingEnvironment;
 import net.neoforged.neoform.runtime.graph.ExecutionNodeAction;
+import net.neoforged.neoform.runtime.graph.NodeResources;
 import net.neoforged.neoform.runtime.utils.AnsiColor;
 import net.neoforged.neoform.runtime.utils.JavaInstallationInformation;
 import net.neoforged.neoform.runtime.utils.Logger;
 import net.neoforged.neoform.runtime.utils.MavenCoordinate;
+import net.neoforged.neoform.runtime.utils.OsUtil;
+import net.neoforged.neoform.runtime.utils.StringUtil;
 import net.neoforged.neoform.runtime.utils.ToolCoordinate;
+import net.neoforged.neoform.runtime.utils.Tracer;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.BufferedReader;
@@ -187,14 +191,19 @@ public class ExternalJavaToolAction implements ExecutionNodeAction {
             writer.append("-".repeat(80)).append("\n\n");
         }
 
-        var process = new ProcessBuilder()
-                .directory(workingDir.toFile())
-                .command(command)
-                .redirectErrorStream(true)
-                .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile))
-                .start();
-
-        var exitCode = process.waitFor();
+        int exitCode;
+        try (var span = Tracer.span("process", "Run " + classpath.getFirst())) {
+            var process = new ProcessBuilder()
+                    .directory(workingDir.toFile())
+                    .command(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile))
+                    .start();
+            span.arg("pid", process.pid());
+
+            exitCode = environment.waitForProcess(process);
+            span.arg("exitCode", exitCode);
+        }
         if (exitCode != 0) {
             // Try tailing the last few lines of the log-file
             tailLogFile(logFile);
@@ -290,6 +299,27 @@ public class ExternalJavaToolAction implements ExecutionNodeAction {
         }
     }
 
+    /**
+     * The memory used by the external tool is estimated from its maximum heap size. If it is not set explicitly
+     * using {@code -Xmx}, the JVM defaults to a quarter of the physical memory.
+     */
+    @Override
+    public NodeResources getResources() {
+        long maxHeap = -1;
+        for (var jvmArg : jvmArgs) {
+            if (jvmArg.startsWith("-Xmx")) {
+                try {
+                    maxHeap = StringUtil.parseBytes(jvmArg.substring("-Xmx".length()));
+                } catch (NumberFormatException | ArithmeticException ignored) {
+                }
+            }
+        }
+        if (maxHeap == -1) {
+            maxHeap = Math.max(0, OsUtil.getTotalMemory() / 4);
+        }
+        return new NodeResources(maxHeap, 1);
+    }
+
     public List<MavenCoordinate> getClasspath() {
         return classpath;
     }
@@ -4,6 +4,7 @@ import net.neoforged.neoform.runtime.artifacts.ClasspathItem;
 import net.neoforged.neoform.runtime.cache.CacheKeyBuilder;
 import net.neoforged.neoform.runtime.engine.ProcessingEnvironment;
 import net.neoforged.neoform.runtime.graph.ExecutionNodeAction;
+import net.neoforged.neoform.runtime.graph.NodeResources;
 import net.neoforged.neoform.runtime.graph.ResultRepresentation;
 
 import java.io.IOException;
@@ -11,6 +12,10 @@ import java.nio.file.Path;
 import java.util.List;
 
 public abstract class RecompileSourcesAction extends BuiltInAction implements ExecutionNodeAction {
+    /**
+     * Compiling the Minecraft sources in-process needs a few gigabytes of heap.
+     */
+    private static final NodeResources RESOURCES = new NodeResources(3L * 1024 * 1024 * 1024, 1);
 
     private final ExtensibleClasspath classpath = new ExtensibleClasspath();
     private final ExtensibleClasspath sourcepath = new ExtensibleClasspath();
@@ -24,6 +29,11 @@ public abstract class RecompileSourcesAction extends BuiltInAction implements Ex
         ck.add("target java version", String.valueOf(targetJavaVersion));
     }
 
+    @Override
+    public NodeResources getResources() {
+        return RESOURCES;
+    }
+
     protected final List<Path> getEffectiveClasspath(ProcessingEnvironment environment) throws IOException {
         var versionManifest = environment.getRequiredInput("versionManifest", ResultRepresentation.MINECRAFT_VERSION_MANIFEST);
 
@@ -0,0 +1,239 @@
+package net.neoforged.neoform.runtime.cache;
+
+import net.neoforged.neoform.runtime.utils.FileUtil;
+import net.neoforged.neoform.runtime.utils.Logger;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores the content of cached files once, addressed by its SHA-1 hash. Cache entries with the same content
+ * are hardlinks to the same blob, so identical outputs produced under different cache keys only use disk space once.
+ * <p>
+ * Blobs are laid out as {@code <first two hex digits>/<sha1>}. Whether a cache entry refers to a blob is determined
+ * by comparing their {@linkplain BasicFileAttributes#fileKey() file keys}, so the store is only used on file systems
+ * that support both hardlinks and file keys. Otherwise, cache entries are stored as plain files.
+ * <p>
+ * Content that has not been used for a while can be {@linkplain #compress compressed}. The compressed copy of a blob
+ * is stored as another blob next to it, with the {@link #COMPRESSED_SUFFIX} appended to its hash.
+ */
+final class BlobStore {
+    private static final Logger LOG = Logger.create();
+
+    /**
+     * Unreferenced blobs younger than this are not deleted, since they may be in the process of being linked
+     * by a concurrently running process.
+     */
+    private static final Duration MIN_UNREFERENCED_AGE = Duration.ofHours(1);
+
+    static final String COMPRESSED_SUFFIX = ".gz";
+
+    private static final int COMPRESSIBILITY_SAMPLE_SIZE = 1024 * 1024;
+
+    /**
+     * Content is only compressed if it shrinks to less than this fraction of its size.
+     */
+    private static final double MAX_COMPRESSION_RATIO = 0.8;
+
+    private final Path directory;
+    private volatile Boolean supported;
+
+    /**
+     * A blob in the store.
+     */
+    record Blob(Path path, long size, long lastModified) {
+    }
+
+    BlobStore(Path directory) {
+        this.directory = directory;
+    }
+
+    Path getBlobPath(String sha1) {
+        return directory.resolve(sha1.substring(0, 2)).resolve(sha1);
+    }
+
+    /**
+     * {@return true if the file system of the store supports hardlinks and file keys}
+     */
+    boolean isSupported() {
+        var result = supported;
+        if (result == null) {
+            result = checkSupported();
+            supported = result;
+        }
+        return result;
+    }
+
+    private boolean checkSupported() {
+        var testFile = directory.resolve("link-test-" + ProcessHandle.current().pid() + ".tmp");
+        var testLink = directory.resolve("link-test-" + ProcessHandle.current().pid() + ".lnk");
+        try {
+            Files.createDirectories(directory);
+            Files.writeString(testFile, "");
+            Files.createLink(testLink, testFile);
+            var fileKey = Files.readAttributes(testFile, BasicFileAttributes.class).fileKey();
+            return fileKey != null && fileKey.equals(Files.readAttributes(testLink, BasicFileAttributes.class).fileKey());
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.println("Not deduplicating cache entries since hardlinks are not supported in " + directory + ": " + e);
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(testLink);
+                Files.deleteIfExists(testFile);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Stores the content of a file with the given SHA-1 hash and makes it available at the destination as a hardlink
+     * to the stored blob. If a blob with the same hash is already stored, the source file is deleted.
+     * If the store is not supported, the source file is moved to the destination instead.
+     */
+    void store(Path source, String sha1, Path destination) throws IOException {
+        if (!isSupported()) {
+            FileUtil.atomicMove(source, destination);
+            return;
+        }
+
+        var blob = getBlobPath(sha1);
+        if (!Files.isRegularFile(blob)) {
+            Files.createDirectories(blob.getParent());
+            FileUtil.atomicMove(source, blob);
+        }
+
+        try {
+            link(blob, destination);
+        } catch (NoSuchFileException e) {
+            // The blob was concurrently removed by cache maintenance after we found it
+            if (!Files.exists(source)) {
+                throw e;
+            }
+            FileUtil.atomicMove(source, destination);
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    /**
+     * Atomically replaces the destination with a hardlink to the given blob.
+     */
+    static void link(Path blob, Path destination) throws IOException {
+        var tempLink = destination.resolveSibling(destination.getFileName() + "." + ProcessHandle.current().pid() + "." + Thread.currentThread().threadId() + ".tmp");
+        try {
+            Files.deleteIfExists(tempLink);
+            Files.createLink(tempLink, blob);
+            FileUtil.atomicMove(tempLink, destination);
+        } finally {
+            Files.deleteIfExists(tempLink);
+        }
+    }
+
+    /**
+     * Creates a compressed copy of the blob with the given hash, unless it already exists.
+     *
+     * @param content A file with the content of the blob.
+     * @return The path of the compressed blob.
+     */
+    Path compress(String sha1, Path content) throws IOException {
+        var compressedBlob = getBlobPath(sha1 + COMPRESSED_SUFFIX);
+        if (!Files.isRegularFile(compressedBlob)) {
+            Files.createDirectories(compressedBlob.getParent());
+            compress(content, compressedBlob);
+        }
+        return compressedBlob;
+    }
+
+    /**
+     * Estimates whether compressing a file is worthwhile by compressing a sample from its start.
+     * Archives whose entries are already compressed, for example, will not get much smaller.
+     */
+    static boolean isCompressible(Path path) throws IOException {
+        byte[] sample;
+        try (var in = Files.newInputStream(path)) {
+            sample = in.readNBytes(COMPRESSIBILITY_SAMPLE_SIZE);
+        }
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            var buffer = new byte[8192];
+            long compressedSize = 0;
+            while (!deflater.finished()) {
+                compressedSize += deflater.deflate(buffer);
+            }
+            return compressedSize < sample.length * MAX_COMPRESSION_RATIO;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Compresses a file using the strongest level of Deflate compression. The compressed file is written atomically.
+     */
+    static void compress(Path source, Path destination) throws IOException {
+        var tempFile = destination.resolveSibling(destination.getFileName() + "." + ProcessHandle.current().pid() + "." + Thread.currentThread().threadId() + ".tmp");
+        try {
+            try (var in = Files.newInputStream(source);
+                 var out = new GZIPOutputStream(Files.newOutputStream(tempFile), 65536) {
+                     {
+                         def.setLevel(Deflater.BEST_COMPRESSION);
+                     }
+                 }) {
+                in.transferTo(out);
+            }
+            FileUtil.atomicMove(tempFile, destination);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * {@return the number of hardlinks to the given file, or -1 if the file system does not report it}
+     */
+    static int getLinkCount(Path path) {
+        try {
+            return (Integer) Files.getAttribute(path, "unix:nlink");
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Lists all blobs in the store, indexed by their file key.
+     */
+    Map<Object, Blob> listBlobs() throws IOException {
+        var blobs = new HashMap<Object, Blob>();
+        if (!Files.isDirectory(directory) || !isSupported()) {
+            return blobs;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && attrs.fileKey() != null && file.getParent() != null && !file.getParent().equals(directory)) {
+                    blobs.put(attrs.fileKey(), new Blob(file, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return blobs;
+    }
+
+    /**
+     * {@return true if the blob is old enough to be deleted when it is no longer referenced}
+     */
+    static boolean canDeleteUnreferenced(Blob blob, Instant now) {
+        return Duration.between(Instant.ofEpochMilli(blob.lastModified()), now).compareTo(MIN_UNREFERENCED_AGE) > 0;
+    }
+}
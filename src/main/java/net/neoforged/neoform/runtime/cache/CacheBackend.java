@@ -0,0 +1,26 @@
+package net.neoforged.neoform.runtime.cache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A cache of intermediate results that is shared beyond the local {@link CacheManager cache}, i.e. between
+ * CI agents and developer machines. Entries are opaque files addressed by their cache key.
+ */
+public interface CacheBackend extends AutoCloseable {
+    /**
+     * Loads the entry for the given cache key into the target file.
+     *
+     * @return False if the backend has no entry for the key.
+     */
+    boolean load(String key, Path target) throws IOException;
+
+    /**
+     * Stores the content of the given file as the entry for the cache key.
+     */
+    void store(String key, Path source) throws IOException;
+
+    @Override
+    default void close() throws Exception {
+    }
+}
@@ -0,0 +1,345 @@
+package net.neoforged.neoform.runtime.cache;
+
+import net.neoforged.neoform.runtime.utils.AppendOnlyLog;
+import net.neoforged.neoform.runtime.utils.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * An index of the entries in the cache of intermediate results, so that cache maintenance and the analysis of cache
+ * misses do not have to list and read every file in the cache.
+ * <p>
+ * For each cache key, the index records when it was last used and which files belong to it, including their size
+ * and the hash of the {@linkplain BlobStore blob} they link to. Changes are appended to the index file immediately
+ * as they are made, so the index can be shared by multiple processes.
+ * <p>
+ * Caches written before the index existed, or files added to the cache by other means, are not known to the index.
+ * The index is only considered {@linkplain Snapshot#complete() complete} after it has been rebuilt from a scan of
+ * the cache directory. Since it may miss changes that could not be recorded, or that were made by older versions,
+ * the index should be rebuilt again periodically. The progress of that scan is kept in a separate {@linkplain ScanCheckpoint checkpoint}, so that
+ * a scan that was interrupted can be continued later.
+ */
+final class CacheIndex {
+    private static final Logger LOG = Logger.create();
+
+    private static final String RECORD_VERSION = "1";
+    private static final String GENERATION = "gen";
+    private static final String COMPLETE = "complete";
+    private static final String SAVED = "put";
+    private static final String USED = "use";
+    private static final String DELETED = "del";
+    private static final String REMOVED_FILES = "rm";
+    private static final String SCAN = "scan";
+
+    private final AppendOnlyLog log;
+    private final AppendOnlyLog scanLog;
+    /**
+     * When appending to the index last failed in this process, in milliseconds since the epoch, or -1 if it never did.
+     * The index is missing the changes that were not recorded, so it is only complete again after a scan that started
+     * after that.
+     */
+    private volatile long lastFailedAppend = -1;
+
+    /**
+     * A file that belongs to a cache entry.
+     *
+     * @param filename The name of the file in the cache directory.
+     * @param size     The size of the file in bytes.
+     * @param blobHash The SHA-1 hash of the blob the file links to, or null if it is not stored in the blob store.
+     *                 For compressed blobs, this is followed by {@link BlobStore#COMPRESSED_SUFFIX}.
+     */
+    record IndexedFile(String filename, long size, @Nullable String blobHash) {
+    }
+
+    /**
+     * All files that belong to a cache key.
+     *
+     * @param lastUsed When the entry was last used, in milliseconds since the epoch.
+     */
+    record Entry(String cacheKey, long lastUsed, Map<String, IndexedFile> files) {
+    }
+
+    /**
+     * The content of the index at the time it was read.
+     *
+     * @param lastScan   When the scan of the cache that the index was last rebuilt from started, in milliseconds since
+     *                   the epoch, or -1 if the index is not complete.
+     * @param records    The number of intact records in the index file, including superseded records.
+     * @param generation Identifies the last rewrite of the index file, or null if it was never rewritten.
+     */
+    record Snapshot(Map<String, Entry> entries, long lastScan, int records, @Nullable String generation) {
+        /**
+         * {@return true if the index was rebuilt from a scan of the cache and therefore knows all entries in it}
+         */
+        boolean complete() {
+            return lastScan >= 0;
+        }
+
+        /**
+         * {@return true if the index file contains enough superseded records that it should be rewritten}
+         */
+        boolean shouldCompact() {
+            return records > 1000 && records > 2 * entries.size();
+        }
+    }
+
+    /**
+     * The progress of a scan of the cache directory.
+     *
+     * @param before    The index as it was read before the scan started. Only its generation and number of records
+     *                  are known.
+     * @param startedAt When the scan started, in milliseconds since the epoch.
+     * @param entries   The entries scanned so far. Cache keys are scanned in order, so all keys up to the greatest
+     *                  of these have been scanned.
+     */
+    record ScanCheckpoint(Snapshot before, long startedAt, Map<String, Entry> entries) {
+    }
+
+    CacheIndex(Path indexFile) {
+        this.log = new AppendOnlyLog(indexFile);
+        this.scanLog = new AppendOnlyLog(indexFile.resolveSibling(indexFile.getFileName() + ".scan"));
+    }
+
+    Path getFile() {
+        return log.getFile();
+    }
+
+    /**
+     * Reads the current content of the index, including changes made by other processes.
+     */
+    Snapshot read() throws IOException {
+        var replay = new Replay(new HashMap<>());
+        log.read(replay::apply);
+        var lastScan = replay.lastScan > lastFailedAppend ? replay.lastScan : -1;
+        return new Snapshot(replay.entries, lastScan, replay.records, replay.generation);
+    }
+
+    /**
+     * Applies the records of the index file to a map of entries.
+     */
+    private static final class Replay {
+        final Map<String, Entry> entries;
+        long lastScan = -1;
+        @Nullable
+        String generation;
+        int records;
+        @Nullable
+        Snapshot scanBefore;
+        long scanStartedAt;
+
+        Replay(Map<String, Entry> entries) {
+            this.entries = entries;
+        }
+
+        void apply(List<String> record) {
+            records++;
+            if (record.size() < 2 || !RECORD_VERSION.equals(record.get(0))) {
+                return;
+            }
+            try {
+                switch (record.get(1)) {
+                    case GENERATION -> generation = record.get(2);
+                    // Older versions did not record when the scan started, so their index is rebuilt by the next maintenance
+                    case COMPLETE -> lastScan = record.size() > 2 ? Long.parseLong(record.get(2)) : 0;
+                    case SAVED -> {
+                        var cacheKey = record.get(2);
+                        var files = new LinkedHashMap<String, IndexedFile>();
+                        var existing = entries.get(cacheKey);
+                        if (existing != null) {
+                            files.putAll(existing.files());
+                        }
+                        for (var i = 4; i + 2 < record.size(); i += 3) {
+                            var blobHash = record.get(i + 2);
+                            files.put(record.get(i), new IndexedFile(record.get(i), Long.parseLong(record.get(i + 1)), blobHash.isEmpty() ? null : blobHash));
+                        }
+                        entries.put(cacheKey, new Entry(cacheKey, Long.parseLong(record.get(3)), files));
+                    }
+                    case USED -> {
+                        var existing = entries.get(record.get(2));
+                        if (existing != null) {
+                            entries.put(existing.cacheKey(), new Entry(existing.cacheKey(), Long.parseLong(record.get(3)), existing.files()));
+                        }
+                    }
+                    case DELETED -> entries.remove(record.get(2));
+                    case SCAN -> {
+                        scanStartedAt = Long.parseLong(record.get(2));
+                        scanBefore = new Snapshot(Map.of(), -1, Integer.parseInt(record.get(3)), record.size() > 4 ? record.get(4) : null);
+                    }
+                    case REMOVED_FILES -> {
+                        var existing = entries.get(record.get(2));
+                        if (existing != null) {
+                            var files = new LinkedHashMap<>(existing.files());
+                            files.keySet().removeAll(record.subList(3, record.size()));
+                            entries.put(existing.cacheKey(), new Entry(existing.cacheKey(), existing.lastUsed(), files));
+                        }
+                    }
+                }
+            } catch (IndexOutOfBoundsException | NumberFormatException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Records that files were added to the cache entry for the given key. The files are added to any files that are
+     * already known for the key.
+     */
+    synchronized void recordSaved(String cacheKey, long lastUsed, Collection<IndexedFile> files) {
+        append(List.of(toRecord(cacheKey, lastUsed, files)));
+    }
+
+    synchronized void recordUsed(String cacheKey, long lastUsed) {
+        append(List.of(List.of(RECORD_VERSION, USED, cacheKey, String.valueOf(lastUsed))));
+    }
+
+    /**
+     * Records that some files of a cache entry were replaced by the given files.
+     */
+    synchronized void recordReplaced(String cacheKey, long lastUsed, Collection<String> removedFilenames, Collection<IndexedFile> files) {
+        var removed = new ArrayList<String>(3 + removedFilenames.size());
+        removed.add(RECORD_VERSION);
+        removed.add(REMOVED_FILES);
+        removed.add(cacheKey);
+        removed.addAll(removedFilenames);
+        append(List.of(removed, toRecord(cacheKey, lastUsed, files)));
+    }
+
+    synchronized void recordDeleted(Collection<String> cacheKeys) {
+        var records = new ArrayList<List<String>>(cacheKeys.size());
+        for (var cacheKey : cacheKeys) {
+            records.add(List.of(RECORD_VERSION, DELETED, cacheKey));
+        }
+        append(records);
+    }
+
+    /**
+     * Replaces the index with the entries found by scanning the cache, and marks it as complete.
+     * <p>
+     * The scan must have started after {@code before} was read, at {@code scanStartedAt}. Changes recorded since then, i.e. by other processes
+     * while the cache was being scanned, are applied on top of the scanned entries while the index is locked,
+     * so none of them are lost. If another process rewrote the index in the meantime, the changes since
+     * {@code before} can no longer be told apart, and the index is left as the other process wrote it.
+     *
+     * @return The entries now in the index, or null if the index was left unchanged.
+     */
+    @Nullable
+    synchronized Collection<Entry> rebuild(Snapshot before, long scanStartedAt, Collection<Entry> scannedEntries) throws IOException {
+        var entries = new HashMap<String, Entry>();
+        for (var entry : scannedEntries) {
+            entries.put(entry.cacheKey(), entry);
+        }
+        var rewritten = log.rewrite(records -> {
+            var current = new Replay(new HashMap<>());
+            records.forEach(current::apply);
+            if (!Objects.equals(current.generation, before.generation()) || records.size() < before.records()) {
+                return null;
+            }
+            var replay = new Replay(entries);
+            records.subList(before.records(), records.size()).forEach(replay::apply);
+            return toRecords(entries.values(), scanStartedAt);
+        });
+        return rewritten ? entries.values() : null;
+    }
+
+    /**
+     * Rewrites the index without superseded records. The index is read again while it is locked, so changes made
+     * by other processes since it was last read are kept.
+     */
+    synchronized void compact() throws IOException {
+        log.rewrite(records -> {
+            var replay = new Replay(new HashMap<>());
+            records.forEach(replay::apply);
+            return toRecords(replay.entries.values(), replay.lastScan);
+        });
+    }
+
+    /**
+     * Starts a new scan of the cache directory, replacing the checkpoint of any previous scan.
+     *
+     * @param before The index as it was read before the scan started.
+     */
+    void startScan(Snapshot before, long startedAt) throws IOException {
+        var header = new ArrayList<String>(5);
+        header.add(RECORD_VERSION);
+        header.add(SCAN);
+        header.add(String.valueOf(startedAt));
+        header.add(String.valueOf(before.records()));
+        if (before.generation() != null) {
+            header.add(before.generation());
+        }
+        scanLog.rewrite(List.of(header));
+    }
+
+    /**
+     * Adds scanned entries to the checkpoint of the current scan.
+     */
+    void recordScanned(Collection<Entry> entries) throws IOException {
+        var records = new ArrayList<List<String>>(entries.size());
+        for (var entry : entries) {
+            records.add(toRecord(entry.cacheKey(), entry.lastUsed(), entry.files().values()));
+        }
+        scanLog.append(records);
+    }
+
+    /**
+     * {@return the checkpoint of the last scan that was not finished, or null if there is none}
+     */
+    @Nullable
+    ScanCheckpoint readScanCheckpoint() throws IOException {
+        var replay = new Replay(new HashMap<>());
+        scanLog.read(replay::apply);
+        if (replay.scanBefore == null) {
+            return null;
+        }
+        return new ScanCheckpoint(replay.scanBefore, replay.scanStartedAt, replay.entries);
+    }
+
+    void deleteScanCheckpoint() throws IOException {
+        Files.deleteIfExists(scanLog.getFile());
+    }
+
+    private static List<List<String>> toRecords(Collection<Entry> entries, long lastScan) {
+        var records = new ArrayList<List<String>>(entries.size() + 2);
+        records.add(List.of(RECORD_VERSION, GENERATION, UUID.randomUUID().toString()));
+        if (lastScan >= 0) {
+            records.add(List.of(RECORD_VERSION, COMPLETE, String.valueOf(lastScan)));
+        }
+        for (var entry : entries) {
+            records.add(toRecord(entry.cacheKey(), entry.lastUsed(), entry.files().values()));
+        }
+        return records;
+    }
+
+    private void append(List<List<String>> records) {
+        try {
+            log.append(records);
+        } catch (IOException e) {
+            lastFailedAppend = System.currentTimeMillis();
+            LOG.warn("Failed to update cache index " + log.getFile() + ": " + e);
+        }
+    }
+
+    private static List<String> toRecord(String cacheKey, long lastUsed, Collection<IndexedFile> files) {
+        var record = new ArrayList<String>(4 + 3 * files.size());
+        record.add(RECORD_VERSION);
+        record.add(SAVED);
+        record.add(cacheKey);
+        record.add(String.valueOf(lastUsed));
+        for (var file : files) {
+            record.add(file.filename());
+            record.add(String.valueOf(file.size()));
+            record.add(file.blobHash() == null ? "" : file.blobHash());
+        }
+        return record;
+    }
+}
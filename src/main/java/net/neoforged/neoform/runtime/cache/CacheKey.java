@@ -10,6 +10,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -41,19 +42,25 @@ public record CacheKey(
         this(type, computeHashValue(components), components);
     }
 
+    /**
+     * Compares the components of two cache keys. Components that are a digest of other values are compared
+     * by those values instead, to show which of them changed.
+     */
     public List<Delta> getDiff(CacheKey other) {
+        var ourComponents = expandDetails(components);
+        var theirComponents = expandDetails(other.components);
 
         var deltas = new ArrayList<Delta>();
-        for (var entry : components.entrySet()) {
+        for (var entry : ourComponents.entrySet()) {
             var ourValue = entry.getValue();
-            var theirValue = other.components().get(entry.getKey());
+            var theirValue = theirComponents.get(entry.getKey());
 
             if (theirValue == null || !ourValue.value().equals(theirValue.value())) {
                 deltas.add(new Delta(entry.getKey(), ourValue, theirValue));
             }
         }
-        for (var entry : other.components.entrySet()) {
-            if (!components.containsKey(entry.getKey())) {
+        for (var entry : theirComponents.entrySet()) {
+            if (!ourComponents.containsKey(entry.getKey())) {
                 deltas.add(new Delta(entry.getKey(), null, entry.getValue()));
             }
         }
@@ -61,6 +68,21 @@ public record CacheKey(
         return deltas;
     }
 
+    private static Map<String, AnnotatedValue> expandDetails(Map<String, AnnotatedValue> components) {
+        var result = new LinkedHashMap<String, AnnotatedValue>(components.size());
+        for (var entry : components.entrySet()) {
+            var details = entry.getValue().details();
+            if (details == null) {
+                result.put(entry.getKey(), entry.getValue());
+            } else {
+                for (var detail : details.entrySet()) {
+                    result.put(entry.getKey() + detail.getKey(), detail.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
     private static String computeHashValue(Map<String, AnnotatedValue> components) {
         var hashValue = components.entrySet()
                 .stream()
@@ -98,8 +120,16 @@ public record CacheKey(
     /**
      * For some parts of cache-keys, it is beneficial to have additional information, such as filenames or paths,
      * which are not part of the cache key.
+     *
+     * @param details If the value is a digest of other values, those values. They are not part of the cache key,
+     *                but are kept to explain which of them changed when analyzing cache misses.
      */
-    public record AnnotatedValue(String value, @Nullable String annotation) {
+    public record AnnotatedValue(String value, @Nullable String annotation,
+                                 @Nullable Map<String, AnnotatedValue> details) {
+        public AnnotatedValue(String value, @Nullable String annotation) {
+            this(value, annotation, null);
+        }
+
         @Override
         public String toString() {
             if (annotation == null) {
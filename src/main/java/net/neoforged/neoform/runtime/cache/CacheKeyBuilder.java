@@ -19,6 +19,7 @@ public class CacheKeyBuilder {
     private final Map<String, DataSource> dataSources;
 
     private final Map<String, CacheKey.AnnotatedValue> components = new LinkedHashMap<>();
+    private boolean referenceNodeOutputs;
 
     public CacheKeyBuilder(String type, FileHashService fileHashService, Map<String, DataSource> dataSources) {
         this.type = type;
@@ -85,17 +86,17 @@ public class CacheKeyBuilder {
     }
 
     public void add(String component, String text, @Nullable String annotation) {
+        add(component, new CacheKey.AnnotatedValue(text, annotation));
+    }
+
+    public void add(String component, CacheKey.AnnotatedValue value) {
         if (component == null) {
             throw new IllegalArgumentException("Cache key component cannot be null");
         }
         if (components.containsKey(component)) {
             throw new IllegalArgumentException("Duplicate cache key component: " + component);
         }
-        components.put(component, new CacheKey.AnnotatedValue(text, annotation));
-    }
-
-    public void add(String component, CacheKey.AnnotatedValue value) {
-        add(component, value.value(), value.annotation());
+        components.put(component, value);
     }
 
     public void addStrings(String component, List<String> values) {
@@ -119,10 +120,38 @@ public class CacheKeyBuilder {
         }
     }
 
+    /**
+     * Adds all components of another builder to this builder.
+     */
+    public void addAll(CacheKeyBuilder other) {
+        addAll("", other);
+    }
+
+    /**
+     * Adds all components of another builder to this builder, prefixing the name of each component.
+     */
+    public void addAll(String prefix, CacheKeyBuilder other) {
+        for (var entry : other.components.entrySet()) {
+            add(prefix + entry.getKey(), entry.getValue());
+        }
+    }
+
     public CacheKey build() {
         return new CacheKey(type, components);
     }
 
+    /**
+     * Makes outputs of other nodes contribute which output they are, instead of their content. This allows building
+     * the key before those nodes have run, but is only valid for keys that also cover how those nodes are computed.
+     */
+    public void setReferenceNodeOutputs(boolean referenceNodeOutputs) {
+        this.referenceNodeOutputs = referenceNodeOutputs;
+    }
+
+    public boolean isReferenceNodeOutputs() {
+        return referenceNodeOutputs;
+    }
+
     public FileHashService getFileHashService() {
         return fileHashService;
     }
@@ -1,42 +1,62 @@
 package net.neoforged.neoform.runtime.cache;
 
+import net.neoforged.neoform.runtime.cli.LockManager;
 import net.neoforged.neoform.runtime.graph.ExecutionNode;
 import net.neoforged.neoform.runtime.utils.AnsiColor;
 import net.neoforged.neoform.runtime.utils.FileUtil;
 import net.neoforged.neoform.runtime.utils.FilenameUtil;
 import net.neoforged.neoform.runtime.utils.Logger;
 import net.neoforged.neoform.runtime.utils.StringUtil;
+import net.neoforged.neoform.runtime.utils.Tracer;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Cache storage is generally handled as follows:
@@ -47,6 +67,14 @@ import java.util.stream.Collectors;
  * <li>While it is unlikely that intermediate results will be shared across Minecraft versions they are stored using
  * hash-keys. As such, the cleanup routine will take care of removing old Minecraft version intermediate results over time.</li>
  * <li>Game asset indices are shared across Minecraft versions since many assets do not change between versions.</li>
+ * <li>The content of intermediate results is stored once in a {@linkplain BlobStore content-addressed store}, and
+ * the cache entries are hardlinks to it. This avoids storing identical outputs produced under different cache keys
+ * multiple times.</li>
+ * <li>Outputs of cache entries that have not been used for a while are compressed, and decompressed when they are used
+ * again. This trades some time on rare cache hits for fitting more entries into the maximum size of the cache.</li>
+ * <li>Optionally, intermediate results are shared with other machines through a {@linkplain CacheBackend remote cache}.
+ * Results missing from the local cache are downloaded from it, and new results are uploaded to it in the background.
+ * Each remote entry is a zip file containing the outputs of a node, named by their output id.</li>
  * </ul>
  */
 public class CacheManager implements AutoCloseable {
@@ -54,248 +82,1479 @@ public class CacheManager implements AutoCloseable {
 
     private static final DateTimeFormatter WORKSPACE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
 
+    private static final String OUTPUTS_RECORD_SUFFIX = "_outputs.json";
+
+    /**
+     * When analyzing a cache miss, only compare against this many of the most recently used entries of the same type.
+     */
+    private static final int MAX_MISS_ANALYSIS_CANDIDATES = 50;
+
+    /**
+     * When the cache exceeds its maximum size, entries are evicted until it is below this fraction of the maximum,
+     * so that eviction does not run again after every new entry.
+     */
+    private static final double EVICTION_TARGET_RATIO = 0.9;
+
+    /**
+     * Files smaller than this are not worth compressing when their entries are no longer used.
+     */
+    private static final long MIN_COMPRESSED_FILE_SIZE = 64 * 1024;
+
+    /**
+     * Entries used more recently than this are not evicted in the background, since other processes may still be
+     * using them.
+     */
+    private static final Duration MIN_EVICTION_AGE = Duration.ofHours(1);
+
+    /**
+     * The progress of scanning the cache directory is saved after this many cache keys.
+     */
+    private static final int SCAN_BATCH_SIZE = 1000;
+
+    /**
+     * An interrupted scan of the cache directory is only continued if it started less than this long ago, since the
+     * entries it has already scanned become outdated.
+     */
+    private static final Duration MAX_SCAN_CHECKPOINT_AGE = Duration.ofDays(7);
+
+    /**
+     * The cache index is rebuilt from a scan of the cache directory at least this often, to pick up entries it does
+     * not know about, i.e. entries written by older versions sharing the cache, or whose changes could not be recorded.
+     */
+    private static final Duration RESCAN_INTERVAL = Duration.ofDays(7);
+
+    /**
+     * Archives transferred from or to the remote cache are deleted by maintenance once they are older than this,
+     * since they are left behind by processes that did not exit cleanly. Other processes may still be using newer ones.
+     */
+    private static final Duration MAX_REMOTE_TRANSFER_AGE = Duration.ofDays(1);
+
     private final Path homeDir;
     private final Path artifactCacheDir;
     private final Path intermediateResultsDir;
     private final Path assetsDir;
     private final Path workspacesDir;
+    private final BlobStore blobStore;
+    private final CacheIndex cacheIndex;
+    private final CacheMetrics metrics = new CacheMetrics();
+
+    /**
+     * The intermediate results directories of read-only caches that are consulted after this cache.
+     */
+    private List<Path> fallbackDirs = List.of();
+    private boolean importFromFallback;
+
+    @Nullable
+    private CacheBackend remoteBackend;
+    private boolean remotePush;
+    private final ExecutorService remoteExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+            .name("remote-cache", 1).factory());
+    /**
+     * Downloads from the remote cache by cache key, so that prefetched entries are only downloaded once.
+     * They complete with the downloaded archive, or null if the remote cache does not have the entry.
+     * Archives are only added to the local cache by {@link #restoreOutputsFromCache}, which runs under the exclusive
+     * lock for the key.
+     */
+    private final Map<String, CompletableFuture<Path>> remoteFetches = new ConcurrentHashMap<>();
+    private final List<CompletableFuture<?>> pendingUploads = new ArrayList<>();
+
+    /**
+     * Cache keys used by this process. Their entries are not evicted in the background.
+     */
+    private final Set<String> usedKeys = ConcurrentHashMap.newKeySet();
+    /**
+     * Estimated size of the intermediate results cache in bytes, or -1 if it is not being tracked.
+     */
+    private final AtomicLong estimatedSize = new AtomicLong(-1);
+    /**
+     * Held by the background eviction thread, or by the periodic maintenance, so only one of them runs at a time.
+     */
+    private final Semaphore evictionPermit = new Semaphore(1);
+    @Nullable
+    private LockManager lockManager;
+    private volatile boolean closing;
 
     /**
      * Maximum age of cache entries in the intermediate work cache in hours.
      */
     private long maxAgeInHours = 24 * 31;
     /**
-     * Maximum overall size of the intermediate work cache.
+     * Maximum overall size of the intermediate work cache. When background eviction is enabled, exceeding it
+     * triggers eviction of the least-recently-used entries.
      */
     private long maxSize = 10L * 1024 * 1024 * 1024;
 
-    private boolean disabled;
-    private boolean analyzeMisses;
-    private boolean verbose;
+    /**
+     * Outputs of cache entries that have not been used for this many days are compressed. 0 disables compression.
+     */
+    private int compressAfterDays = 14;
+
+    private boolean disabled;
+    private boolean analyzeMisses;
+    private boolean verifyOutputs;
+    private boolean verbose;
+
+    public CacheManager(Path homeDir, @Nullable Path assetsDir, Path workspacesDir) throws IOException {
+        this.homeDir = homeDir;
+        Files.createDirectories(homeDir);
+        this.artifactCacheDir = homeDir.resolve("artifacts");
+        this.intermediateResultsDir = homeDir.resolve("intermediate_results");
+        this.assetsDir = Objects.requireNonNullElse(assetsDir, homeDir.resolve("assets"));
+        this.workspacesDir = workspacesDir;
+        this.blobStore = new BlobStore(intermediateResultsDir.resolve("blobs"));
+        this.cacheIndex = new CacheIndex(homeDir.resolve("intermediate_results.idx"));
+    }
+
+    /**
+     * Cleans up the cache if this has not been done in the last 24 hours. This waits for the
+     * {@linkplain #startBackgroundEviction background eviction} to finish first. Entries that this process used, or
+     * that other processes hold the lock for, are not deleted.
+     */
+    public void performMaintenance() throws IOException {
+        if (!Files.exists(homeDir)) {
+            return;
+        }
+
+        try {
+            evictionPermit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the background eviction", e);
+        }
+        try {
+            performPeriodicMaintenance();
+        } finally {
+            evictionPermit.release();
+        }
+    }
+
+    private void performPeriodicMaintenance() throws IOException {
+        var cacheLock = homeDir.resolve("nfrt_cache_cleanup.state");
+
+        try (var channel = FileChannel.open(cacheLock, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException ignored) {
+                lock = null;
+            }
+
+            if (lock != null) {
+                var lastModified = Files.getLastModifiedTime(cacheLock, LinkOption.NOFOLLOW_LINKS);
+                var age = Duration.between(lastModified.toInstant(), Instant.now());
+                var interval = Duration.ofHours(24);
+                if (age.compareTo(interval) < 0) {
+                    if (verbose) {
+                        LOG.println("Not performing routine maintenance since the last maintenance was "
+                                    + AnsiColor.BOLD + StringUtil.formatDuration(age) + " ago" + AnsiColor.RESET);
+                    }
+                    return;
+                }
+
+                LOG.println("Performing periodic cache maintenance on " + homeDir);
+
+                cleanUpIntermediateResults(false, true);
+
+                // Maintenance that was interrupted by closing the cache is not done yet
+                if (!closing) {
+                    Files.setLastModifiedTime(cacheLock, FileTime.from(Instant.now()));
+                }
+
+                return;
+            }
+
+            LOG.println("Cache maintenance is already performed by another process.");
+        }
+    }
+
+    public void cleanUpAll() throws IOException {
+        cleanUpIntermediateResults(true, false);
+    }
+
+    public void cleanUpIntermediateResults() throws IOException {
+        cleanUpIntermediateResults(false, false);
+    }
+
+    /**
+     * Cleans the cache of intermediate results based on two goals:
+     * <ol>
+     * <li>Removing cache entries that have not been used for a given number of hours.</li>
+     * <li>Removing enough cache entries to keep the overall size under the given target.</li>
+     * </ol>
+     * Cache entries and their last use are taken from the {@linkplain CacheIndex cache index}. If the index is not
+     * complete, was last rebuilt longer than {@link #RESCAN_INTERVAL} ago, or a rescan is requested, it is rebuilt by
+     * scanning the cache directory first.
+     *
+     * @param skipEntriesInUse If true, entries that are in use are skipped, like they are by {@link #evictLeastRecentlyUsed}.
+     */
+    private void cleanUpIntermediateResults(boolean rescan, boolean skipEntriesInUse) throws IOException {
+        if (!Files.exists(intermediateResultsDir)) {
+            return;
+        }
+
+        LOG.println("Cleaning intermediate results cache in " + intermediateResultsDir);
+        LOG.println(" Maximum age: " + maxAgeInHours + "h");
+        LOG.println(" Maximum cache size: " + StringUtil.formatBytes(maxSize));
+
+        var now = Instant.now();
+        cleanUpQuarantine(now);
+        cleanUpRemoteTransfers(now);
+
+        Collection<CacheIndex.Entry> entries;
+        var snapshot = cacheIndex.read();
+        if (rescan || !snapshot.complete() || Duration.between(Instant.ofEpochMilli(snapshot.lastScan()), now).compareTo(RESCAN_INTERVAL) > 0) {
+            LOG.println(" Scanning cache directory to rebuild the cache index");
+            var rebuiltEntries = rebuildIndex(snapshot, now);
+            if (rebuiltEntries == null) {
+                return; // The scan was interrupted, and is continued by the next maintenance
+            }
+            entries = rebuiltEntries;
+        } else {
+            entries = snapshot.entries().values();
+            if (snapshot.shouldCompact()) {
+                cacheIndex.compact();
+            }
+        }
+
+        var deleter = new EntryDeleter(entries);
+        var totalSize = deleter.totalSize;
+
+        var expiredEntries = entries.stream()
+                .filter(entry -> Duration.between(Instant.ofEpochMilli(entry.lastUsed()), now).toHours() > maxAgeInHours)
+                .toList();
+
+        LOG.println(" " + AnsiColor.MUTED + deleter.fileCount + " files found" + AnsiColor.RESET);
+        LOG.println(" " + AnsiColor.MUTED + StringUtil.formatBytes(totalSize) + " overall size" + AnsiColor.RESET);
+        LOG.println(" " + AnsiColor.MUTED + expiredEntries.size() + " expired keys found" + AnsiColor.RESET);
+
+        var deletedKeys = new HashSet<String>();
+        try {
+            // Delete all entries that belong to expired cache keys
+            if (!expiredEntries.isEmpty()) {
+                long freedSpace = 0;
+                long deletedEntries = 0;
+                for (var entry : expiredEntries) {
+                    if (closing) {
+                        break;
+                    }
+                    var freed = skipEntriesInUse ? evictEntry(deleter, entry) : deleter.delete(entry);
+                    if (freed < 0) {
+                        continue;
+                    }
+                    freedSpace += freed;
+                    deletedEntries += entry.files().size();
+                    deletedKeys.add(entry.cacheKey());
+                }
+
+                LOG.println("Freed up " + AnsiColor.BOLD + StringUtil.formatBytes(freedSpace) + AnsiColor.RESET + " by deleting " + AnsiColor.BOLD + deletedEntries + " expired entries" + AnsiColor.RESET);
+                totalSize -= freedSpace;
+            }
+
+            var remainingEntries = new ArrayList<>(entries);
+            remainingEntries.removeIf(entry -> deletedKeys.contains(entry.cacheKey()));
+            totalSize -= compressColdEntries(remainingEntries, deleter, now);
+
+            if (totalSize <= maxSize) {
+                return;
+            }
+
+            LOG.println("Cache size exceeds target size. Deleting least-recently-used entries first.");
+
+            // If the total size still exceeds the target, evict the least-recently-used cache keys first.
+            // Their last use is recorded in the index on every cache hit (see restoreOutputsFromCache).
+            remainingEntries.sort(Comparator.comparingLong(CacheIndex.Entry::lastUsed));
+            long freedSpace = 0;
+            var deletedEntries = 0;
+            for (var entry : remainingEntries) {
+                if (closing || totalSize <= maxSize) {
+                    break;
+                }
+
+                var freed = skipEntriesInUse ? evictEntry(deleter, entry) : deleter.delete(entry);
+                if (freed < 0) {
+                    continue;
+                }
+                freedSpace += freed;
+                totalSize -= freed;
+                deletedEntries += entry.files().size();
+                deletedKeys.add(entry.cacheKey());
+            }
+
+            LOG.println("Freed up " + AnsiColor.BOLD + StringUtil.formatBytes(freedSpace) + AnsiColor.RESET + " by deleting " + AnsiColor.BOLD + deletedEntries + " entries" + AnsiColor.RESET);
+        } finally {
+            cacheIndex.recordDeleted(deletedKeys);
+            if (estimatedSize.get() >= 0) {
+                estimatedSize.set(totalSize);
+            }
+        }
+    }
+
+    /**
+     * Deletes cache entries, while keeping track of how many entries refer to each blob, so that a blob is deleted
+     * together with its last entry. Entries that are hardlinks to a blob do not use any space of their own.
+     */
+    private final class EntryDeleter {
+        private final Map<String, Integer> blobReferences = new HashMap<>();
+        private long totalSize;
+        private int fileCount;
+
+        EntryDeleter(Collection<CacheIndex.Entry> entries) {
+            for (var entry : entries) {
+                for (var file : entry.files().values()) {
+                    fileCount++;
+                    if (file.blobHash() == null || blobReferences.merge(file.blobHash(), 1, Integer::sum) == 1) {
+                        totalSize += file.size();
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return The number of bytes freed, or -1 if the entry could not be deleted.
+         */
+        long delete(CacheIndex.Entry entry) {
+            long freed = 0;
+            for (var file : entry.files().values()) {
+                if (verbose) {
+                    LOG.println(" Deleting " + file.filename());
+                }
+                try {
+                    Files.deleteIfExists(intermediateResultsDir.resolve(file.filename()));
+                } catch (IOException e) {
+                    LOG.warn("Failed to delete cache entry " + intermediateResultsDir.resolve(file.filename()));
+                    return -1;
+                }
+                freed += release(file);
+            }
+            metrics.recordEvicted(CacheMetrics.getType(entry.cacheKey()), freed);
+            return freed;
+        }
+
+        int getReferences(String blobHash) {
+            return blobReferences.getOrDefault(blobHash, 0);
+        }
+
+        /**
+         * Adds a reference to a blob.
+         *
+         * @return The number of bytes the cache grew by, which is only the size of the blob for its first reference.
+         */
+        long addReference(String blobHash, long size) {
+            return blobReferences.merge(blobHash, 1, Integer::sum) == 1 ? size : 0;
+        }
+
+        /**
+         * Releases a file that has been deleted from the cache, and deletes the blob it refers to if it was its
+         * last reference.
+         *
+         * @return The number of bytes freed.
+         */
+        long release(CacheIndex.IndexedFile file) {
+            if (file.blobHash() == null) {
+                return file.size();
+            } else if (blobReferences.merge(file.blobHash(), -1, Integer::sum) <= 0 && deleteBlob(blobStore.getBlobPath(file.blobHash()))) {
+                return file.size();
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Compresses the outputs of cache entries that have not been used for {@link #compressAfterDays} days.
+     * Content that is shared with entries that are still in use is not compressed, since that would not free any space.
+     * The given list is updated with the compressed entries.
+     *
+     * @return The number of bytes freed.
+     */
+    private long compressColdEntries(List<CacheIndex.Entry> entries, EntryDeleter deleter, Instant now) {
+        if (compressAfterDays <= 0) {
+            return 0;
+        }
+
+        var newestToCompress = now.minus(Duration.ofDays(compressAfterDays)).toEpochMilli();
+        var coldReferences = new HashMap<String, Integer>();
+        for (var entry : entries) {
+            if (entry.lastUsed() < newestToCompress) {
+                for (var file : entry.files().values()) {
+                    if (file.blobHash() != null) {
+                        coldReferences.merge(file.blobHash(), 1, Integer::sum);
+                    }
+                }
+            }
+        }
+
+        long freedSpace = 0;
+        int compressedFiles = 0;
+        for (var i = 0; i < entries.size(); i++) {
+            var entry = entries.get(i);
+            if (closing) {
+                break;
+            }
+            if (entry.lastUsed() >= newestToCompress) {
+                continue;
+            }
+
+            var removedFiles = new ArrayList<String>();
+            var compressed = new ArrayList<CacheIndex.IndexedFile>();
+            var lock = lockManager != null ? lockManager.tryLock(entry.cacheKey()) : null;
+            if (lockManager != null && lock == null) {
+                continue;
+            }
+            try {
+                // The entry may have been used since the index was read
+                if (usedKeys.contains(entry.cacheKey()) || getLastModified(intermediateResultsDir.resolve(entry.cacheKey() + ".txt")) >= newestToCompress) {
+                    continue;
+                }
+                for (var file : entry.files().values()) {
+                    if (!isCompressible(file) || file.blobHash() != null && deleter.getReferences(file.blobHash()) != coldReferences.get(file.blobHash())) {
+                        continue;
+                    }
+                    try {
+                        var compressedFile = compressFile(file);
+                        if (compressedFile == null) {
+                            continue;
+                        }
+                        removedFiles.add(file.filename());
+                        compressed.add(compressedFile);
+                        if (compressedFile.blobHash() != null) {
+                            freedSpace -= deleter.addReference(compressedFile.blobHash(), compressedFile.size());
+                        } else {
+                            freedSpace -= compressedFile.size();
+                        }
+                        freedSpace += deleter.release(file);
+                        compressedFiles++;
+                    } catch (IOException e) {
+                        LOG.println("Failed to compress cache entry " + file.filename() + ": " + e);
+                    }
+                }
+            } finally {
+                if (lock != null) {
+                    lock.close();
+                }
+            }
+
+            if (!compressed.isEmpty()) {
+                cacheIndex.recordReplaced(entry.cacheKey(), entry.lastUsed(), removedFiles, compressed);
+                var files = new HashMap<>(entry.files());
+                files.keySet().removeAll(removedFiles);
+                for (var file : compressed) {
+                    files.put(file.filename(), file);
+                }
+                entries.set(i, new CacheIndex.Entry(entry.cacheKey(), entry.lastUsed(), files));
+            }
+        }
+
+        if (compressedFiles > 0) {
+            LOG.println("Freed up " + AnsiColor.BOLD + StringUtil.formatBytes(freedSpace) + AnsiColor.RESET + " by compressing " + AnsiColor.BOLD + compressedFiles + " unused entries" + AnsiColor.RESET);
+        }
+        return freedSpace;
+    }
+
+    private static boolean isCompressible(CacheIndex.IndexedFile file) {
+        var filename = file.filename();
+        return file.size() >= MIN_COMPRESSED_FILE_SIZE
+               && !filename.endsWith(".txt")
+               && !filename.endsWith(".json")
+               && !filename.endsWith(BlobStore.COMPRESSED_SUFFIX);
+    }
+
+    /**
+     * Replaces a file in the cache with a compressed copy. Content that is stored in the blob store is compressed
+     * once, and the compressed file is a hardlink to the compressed blob.
+     *
+     * @return Null if the content of the file does not compress well.
+     */
+    @Nullable
+    private CacheIndex.IndexedFile compressFile(CacheIndex.IndexedFile file) throws IOException {
+        var path = intermediateResultsDir.resolve(file.filename());
+        var compressedPath = intermediateResultsDir.resolve(file.filename() + BlobStore.COMPRESSED_SUFFIX);
+        if (!BlobStore.isCompressible(path)) {
+            return null;
+        }
+
+        CacheIndex.IndexedFile result;
+        if (file.blobHash() != null) {
+            var compressedBlob = blobStore.compress(file.blobHash(), path);
+            BlobStore.link(compressedBlob, compressedPath);
+            result = new CacheIndex.IndexedFile(compressedPath.getFileName().toString(), Files.size(compressedBlob), file.blobHash() + BlobStore.COMPRESSED_SUFFIX);
+        } else {
+            BlobStore.compress(path, compressedPath);
+            result = new CacheIndex.IndexedFile(compressedPath.getFileName().toString(), Files.size(compressedPath), null);
+        }
+        Files.delete(path);
+        return result;
+    }
+
+    /**
+     * Restores a compressed output of a cache entry, and removes the compressed copy.
+     */
+    private void decompress(CacheKey cacheKey, Path compressedFile, Path cachedFile) throws IOException {
+        var tempFile = cachedFile.resolveSibling(cachedFile.getFileName() + "." + ProcessHandle.current().pid() + "." + Thread.currentThread().threadId() + ".tmp");
+        try {
+            String hash;
+            try (var in = new GZIPInputStream(Files.newInputStream(compressedFile), 65536)) {
+                hash = copyAndHash(in, tempFile);
+            }
+            blobStore.store(tempFile, hash, cachedFile);
+            Files.delete(compressedFile);
+            // The compressed blob is no longer needed once no entry refers to it anymore
+            var compressedBlob = blobStore.getBlobPath(hash + BlobStore.COMPRESSED_SUFFIX);
+            if (BlobStore.getLinkCount(compressedBlob) == 1) {
+                Files.deleteIfExists(compressedBlob);
+            }
+            cacheIndex.recordReplaced(
+                    cacheKey.toString(),
+                    System.currentTimeMillis(),
+                    List.of(compressedFile.getFileName().toString()),
+                    List.of(new CacheIndex.IndexedFile(cachedFile.getFileName().toString(), Files.size(cachedFile), blobStore.isSupported() ? hash : null))
+            );
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static long getLastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException ignored) {
+            return -1;
+        }
+    }
+
+    /**
+     * Starts tracking the size of the cache, and evicts least-recently-used entries on a low-priority background
+     * thread whenever it exceeds the maximum size. This happens while the cache is in use, so entries are only
+     * evicted if they have not been used by this process or recently by any process, and nobody holds their lock.
+     */
+    public void startBackgroundEviction(LockManager lockManager) {
+        if (disabled) {
+            return;
+        }
+        this.lockManager = lockManager;
+        // The initial size is determined in the background too
+        estimatedSize.compareAndSet(-1, 0);
+        scheduleEviction();
+    }
+
+    /**
+     * Stops background eviction and any ongoing maintenance after the entry that is currently being processed. This
+     * does not wait for it, since deleting cache entries is safe to interrupt at any point, and an interrupted scan of
+     * the cache directory is continued by the next maintenance.
+     */
+    private void stopBackgroundEviction() {
+        closing = true;
+    }
+
+    private void trackAddedSize(long size) {
+        if (estimatedSize.get() >= 0 && estimatedSize.addAndGet(size) > maxSize) {
+            scheduleEviction();
+        }
+    }
+
+    boolean isEvicting() {
+        return evictionPermit.availablePermits() == 0;
+    }
+
+    private void scheduleEviction() {
+        if (closing || !evictionPermit.tryAcquire()) {
+            return;
+        }
+        Thread.ofPlatform()
+                .name("cache-eviction")
+                .daemon()
+                .priority(Thread.MIN_PRIORITY)
+                .start(() -> {
+                    try {
+                        evictLeastRecentlyUsed();
+                    } catch (Exception e) {
+                        LOG.println("Failed to evict cache entries: " + e);
+                    } finally {
+                        evictionPermit.release();
+                    }
+                });
+    }
+
+    /**
+     * Evicts least-recently-used cache entries until the cache is below its target size, skipping entries
+     * that may still be in use.
+     */
+    void evictLeastRecentlyUsed() throws IOException {
+        var cacheLock = homeDir.resolve("nfrt_cache_cleanup.state");
+        try (var channel = FileChannel.open(cacheLock, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException ignored) {
+                lock = null;
+            }
+            if (lock == null) {
+                return; // Another process is already cleaning up
+            }
+
+            var snapshot = cacheIndex.read();
+            if (!snapshot.complete()) {
+                // Only the periodic maintenance scans the cache directory to complete the index
+                estimatedSize.set(-1);
+                return;
+            }
+
+            var entries = new ArrayList<>(snapshot.entries().values());
+            var deleter = new EntryDeleter(entries);
+            var totalSize = deleter.totalSize;
+            estimatedSize.set(totalSize);
+            if (totalSize <= maxSize) {
+                return;
+            }
+
+            var targetSize = (long) (maxSize * EVICTION_TARGET_RATIO);
+            var newestToEvict = Instant.now().minus(MIN_EVICTION_AGE).toEpochMilli();
+            entries.sort(Comparator.comparingLong(CacheIndex.Entry::lastUsed));
+            var deletedKeys = new ArrayList<String>();
+            long freedSpace = 0;
+            try {
+                for (var entry : entries) {
+                    if (closing || totalSize <= targetSize || entry.lastUsed() > newestToEvict) {
+                        break;
+                    }
+                    var freed = evictEntry(deleter, entry);
+                    if (freed >= 0) {
+                        totalSize -= freed;
+                        freedSpace += freed;
+                        deletedKeys.add(entry.cacheKey());
+                    }
+                }
+            } finally {
+                cacheIndex.recordDeleted(deletedKeys);
+                // If entries that are in use kept us from reaching the target, only try again once the cache has grown
+                estimatedSize.set(Math.min(totalSize, targetSize));
+            }
+
+            if (!deletedKeys.isEmpty()) {
+                LOG.println(AnsiColor.MUTED + "Evicted " + deletedKeys.size() + " cache entries (" + StringUtil.formatBytes(freedSpace) + ") in the background" + AnsiColor.RESET);
+            }
+        }
+    }
+
+    /**
+     * Evicts a single entry, unless it is in use.
+     *
+     * @return The number of bytes freed, or -1 if the entry was not evicted.
+     */
+    private long evictEntry(EntryDeleter deleter, CacheIndex.Entry entry) {
+        var lock = lockManager != null ? lockManager.tryLock(entry.cacheKey()) : null;
+        if (lockManager != null && lock == null) {
+            return -1;
+        }
+        try {
+            // Nodes of this process add their keys while holding the lock of the key
+            if (usedKeys.contains(entry.cacheKey())) {
+                return -1;
+            }
+            return deleter.delete(entry);
+        } finally {
+            if (lock != null) {
+                lock.close();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the cache index from a scan of the cache directory. A scan that was interrupted before is continued
+     * where it stopped, if it is recent enough and the index has not been rewritten since it started.
+     * Blobs that are no longer referenced by any entry are deleted.
+     *
+     * @return The entries in the cache, or null if the scan was interrupted by closing the cache.
+     */
+    @Nullable
+    private Collection<CacheIndex.Entry> rebuildIndex(CacheIndex.Snapshot snapshot, Instant now) throws IOException {
+        var checkpoint = cacheIndex.readScanCheckpoint();
+        CacheIndex.Snapshot before;
+        long scanStartedAt;
+        var scannedEntries = new HashMap<String, CacheIndex.Entry>();
+        if (checkpoint != null
+            && Objects.equals(checkpoint.before().generation(), snapshot.generation())
+            && checkpoint.before().records() <= snapshot.records()
+            && Duration.between(Instant.ofEpochMilli(checkpoint.startedAt()), now).compareTo(MAX_SCAN_CHECKPOINT_AGE) < 0) {
+            LOG.println(" Continuing the previous scan after " + checkpoint.entries().size() + " entries");
+            before = checkpoint.before();
+            scanStartedAt = checkpoint.startedAt();
+            scannedEntries.putAll(checkpoint.entries());
+        } else {
+            before = snapshot;
+            scanStartedAt = now.toEpochMilli();
+            cacheIndex.startScan(snapshot, scanStartedAt);
+        }
+
+        var blobs = blobStore.listBlobs();
+        if (!scanIntermediateResults(blobs, scannedEntries)) {
+            return null;
+        }
+
+        var rebuiltEntries = cacheIndex.rebuild(before, scanStartedAt, scannedEntries.values());
+        cacheIndex.deleteScanCheckpoint();
+        if (rebuiltEntries == null) {
+            LOG.println(" The cache index was rewritten by another process while scanning, keeping it unchanged");
+            return scannedEntries.values();
+        }
+
+        // Entries saved while scanning are part of the rebuilt index, so their blobs are not deleted
+        var referencedBlobs = new HashSet<String>();
+        for (var entry : rebuiltEntries) {
+            for (var file : entry.files().values()) {
+                if (file.blobHash() != null) {
+                    referencedBlobs.add(file.blobHash());
+                }
+            }
+        }
+        long unreferencedBlobSize = 0;
+        for (var blob : blobs.values()) {
+            if (!referencedBlobs.contains(blob.path().getFileName().toString()) && BlobStore.canDeleteUnreferenced(blob, now) && deleteBlob(blob.path())) {
+                unreferencedBlobSize += blob.size();
+            }
+        }
+        if (unreferencedBlobSize > 0) {
+            LOG.println("Freed up " + AnsiColor.BOLD + StringUtil.formatBytes(unreferencedBlobSize) + AnsiColor.RESET + " by deleting unreferenced content");
+        }
+
+        return rebuiltEntries;
+    }
+
+    /**
+     * Scans the cache directory for the cache entries that come after the given scanned entries. Cache keys are
+     * scanned in order, and each batch of scanned entries is saved to the {@linkplain CacheIndex.ScanCheckpoint
+     * checkpoint} of the scan, so that it can be continued if it is interrupted, i.e. by the process exiting.
+     * The last use of an entry is the last modification time of its cache marker, which is touched whenever it is used.
+     *
+     * @param blobs          The blobs in the blob store by their file key.
+     * @param scannedEntries The entries that have already been scanned. Newly scanned entries are added to it.
+     * @return False if the scan was interrupted by closing the cache.
+     */
+    private boolean scanIntermediateResults(Map<Object, BlobStore.Blob> blobs, Map<String, CacheIndex.Entry> scannedEntries) throws IOException {
+        var lastScannedKey = scannedEntries.keySet().stream().max(Comparator.naturalOrder()).orElse(null);
+
+        // Only listing the directory is fast, reading the attributes of every file is what takes time
+        var filesByKey = new TreeMap<String, List<Path>>();
+        try (var stream = Files.newDirectoryStream(intermediateResultsDir)) {
+            for (var file : stream) {
+                var m = CacheKey.FILENAME_PREFIX_PATTERN.matcher(file.getFileName().toString());
+                if (m.find()) {
+                    if (lastScannedKey == null || m.group(1).compareTo(lastScannedKey) > 0) {
+                        filesByKey.computeIfAbsent(m.group(1), ignored -> new ArrayList<>()).add(file);
+                    }
+                } else if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                    LOG.println("  Unrecognized file in cache: " + file);
+                }
+            }
+        }
+
+        var batch = new ArrayList<CacheIndex.Entry>(SCAN_BATCH_SIZE);
+        for (var group : filesByKey.entrySet()) {
+            var entry = scanEntry(group.getKey(), group.getValue(), blobs);
+            if (entry != null) {
+                batch.add(entry);
+            }
+            if (batch.size() >= SCAN_BATCH_SIZE) {
+                saveScannedBatch(batch, scannedEntries);
+                if (closing) {
+                    return false;
+                }
+            }
+        }
+        saveScannedBatch(batch, scannedEntries);
+        return true;
+    }
+
+    private void saveScannedBatch(List<CacheIndex.Entry> batch, Map<String, CacheIndex.Entry> scannedEntries) throws IOException {
+        cacheIndex.recordScanned(batch);
+        for (var entry : batch) {
+            scannedEntries.put(entry.cacheKey(), entry);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Reads the attributes of the files of a single cache entry.
+     *
+     * @return Null if the files of the entry were deleted concurrently.
+     */
+    @Nullable
+    private CacheIndex.Entry scanEntry(String cacheKey, List<Path> files, Map<Object, BlobStore.Blob> blobs) throws IOException {
+        var indexedFiles = new HashMap<String, CacheIndex.IndexedFile>();
+        // Nodes whose outputs are not cached only have a record of their outputs, which then acts as the marker
+        long markerLastModified = -1;
+        long outputsRecordLastModified = -1;
+        long lastModified = 0;
+        for (var file : files) {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException ignored) {
+                continue;
+            }
+            if (!attrs.isRegularFile()) {
+                continue;
+            }
+            var filename = file.getFileName().toString();
+            var blob = attrs.fileKey() != null ? blobs.get(attrs.fileKey()) : null;
+            indexedFiles.put(filename, new CacheIndex.IndexedFile(filename, attrs.size(), blob != null ? blob.path().getFileName().toString() : null));
+
+            var fileLastModified = attrs.lastModifiedTime().toMillis();
+            var suffix = filename.substring(cacheKey.length());
+            if (suffix.equals(".txt")) {
+                markerLastModified = fileLastModified;
+            } else if (suffix.equals(OUTPUTS_RECORD_SUFFIX)) {
+                outputsRecordLastModified = fileLastModified;
+            }
+            lastModified = Math.max(lastModified, fileLastModified);
+        }
+        if (indexedFiles.isEmpty()) {
+            return null;
+        }
+        var lastUsed = markerLastModified != -1 ? markerLastModified : outputsRecordLastModified != -1 ? outputsRecordLastModified : lastModified;
+        return new CacheIndex.Entry(cacheKey, lastUsed, indexedFiles);
+    }
+
+    private boolean deleteBlob(Path blob) {
+        if (verbose) {
+            LOG.println(" Deleting " + intermediateResultsDir.relativize(blob));
+        }
+        try {
+            Files.deleteIfExists(blob);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Failed to delete cache blob " + blob);
+            return false;
+        }
+    }
+
+    /**
+     * Records the given files of a cache entry in the cache index.
+     *
+     * @param blobHashes The hashes of files that were stored in the blob store.
+     */
+    private void indexFiles(CacheKey cacheKey, Collection<Path> files, Map<Path, String> blobHashes) {
+        usedKeys.add(cacheKey.toString());
+        var indexedFiles = new ArrayList<CacheIndex.IndexedFile>(files.size());
+        long addedSize = 0;
+        for (var file : files) {
+            try {
+                var indexedFile = new CacheIndex.IndexedFile(file.getFileName().toString(), Files.size(file), blobHashes.get(file));
+                indexedFiles.add(indexedFile);
+                addedSize += indexedFile.size();
+            } catch (IOException ignored) {
+                // A concurrent cleanup may have removed it already
+            }
+        }
+        cacheIndex.recordSaved(cacheKey.toString(), System.currentTimeMillis(), indexedFiles);
+        metrics.recordWritten(cacheKey.type(), addedSize);
+        // This overestimates the size of deduplicated outputs, but the exact size is computed before evicting
+        trackAddedSize(addedSize);
+    }
+
+    /**
+     * {@return true if all outputs of a node for the given key are ready to be restored without modifying the cache}
+     * That is the case if the entry is in this cache and none of its outputs are compressed, or it can be used in
+     * place from a fallback cache. Since entries are only removed or compressed while holding the exclusive lock
+     * for their key, such entries can be restored while holding a shared lock. Restoring them only touches
+     * the cache marker and appends to the cache index, which is safe to do concurrently.
+     */
+    public boolean canRestoreInPlace(ExecutionNode node, CacheKey cacheKey) {
+        if (disabled) {
+            return false;
+        }
+        if (Files.isRegularFile(getCacheMarkerFile(cacheKey))) {
+            return node.outputs().keySet().stream().allMatch(outputId ->
+                    Files.isRegularFile(intermediateResultsDir.resolve(getOutputFilename(node, cacheKey, outputId))));
+        }
+        return !importFromFallback && findFallbackEntry(node, cacheKey) != null;
+    }
+
+    /**
+     * Restores the outputs of a node from the cache. Unless the entry {@linkplain #canRestoreInPlace can be restored
+     * in place}, the caller must hold the exclusive lock for the key, since the entry may be imported, decompressed
+     * or downloaded from the remote cache.
+     */
+    public boolean restoreOutputsFromCache(ExecutionNode node, CacheKey cacheKey, Map<String, Path> outputValues) throws IOException {
+        if (disabled) {
+            return false;
+        }
+
+        var intermediateCacheDir = getIntermediateResultsDir();
+        var cacheMarkerFile = getCacheMarkerFile(cacheKey);
+        Files.createDirectories(intermediateCacheDir);
+        var cached = Files.isRegularFile(cacheMarkerFile);
+        var entryDir = intermediateCacheDir;
+        if (!cached) {
+            var fallbackDir = findFallbackEntry(node, cacheKey);
+            if (fallbackDir != null) {
+                cached = true;
+                if (importFromFallback) {
+                    importFallbackEntry(node, cacheKey, fallbackDir);
+                } else {
+                    entryDir = fallbackDir;
+                }
+            }
+        }
+        if (!cached && remoteBackend != null) {
+            cached = restoreFromRemote(node, cacheKey) && Files.isRegularFile(cacheMarkerFile);
+        }
+        if (cached) {
+            // Try to rebuild output values from cache
+            boolean complete = true;
+            for (var entry : node.outputs().entrySet()) {
+                var filename = getOutputFilename(node, cacheKey, entry.getKey());
+                var cachedFile = entryDir.resolve(filename);
+                var compressedFile = entryDir.resolve(filename + BlobStore.COMPRESSED_SUFFIX);
+                if (Files.isRegularFile(cachedFile)) {
+                    outputValues.put(entry.getKey(), cachedFile);
+                } else if (entryDir.equals(intermediateCacheDir) && Files.isRegularFile(compressedFile)) {
+                    try (var ignored = Tracer.span("cache", "Decompress " + filename)) {
+                        decompress(cacheKey, compressedFile, cachedFile);
+                    }
+                    outputValues.put(entry.getKey(), cachedFile);
+                } else {
+                    LOG.warn("Cache for " + node.id() + " is incomplete. Missing: " + filename);
+                    outputValues.clear();
+                    complete = false;
+                    break;
+                }
+            }
+            if (complete && entryDir.equals(intermediateCacheDir)) {
+                // Mark its use
+                var now = Instant.now();
+                usedKeys.add(cacheKey.toString());
+                Files.setLastModifiedTime(cacheMarkerFile, FileTime.from(now));
+                cacheIndex.recordUsed(cacheKey.toString(), now.toEpochMilli());
+            }
+            if (complete) {
+                long restoredSize = 0;
+                for (var path : outputValues.values()) {
+                    restoredSize += Files.size(path);
+                }
+                metrics.recordHit(cacheKey.type(), restoredSize);
+            } else {
+                metrics.recordMiss(cacheKey.type());
+            }
+            return complete;
+        } else if (analyzeMisses) {
+            analyzeCacheMiss(cacheKey);
+        }
+        metrics.recordMiss(cacheKey.type());
+        return false;
+    }
+
+    private static String getOutputFilename(ExecutionNode node, CacheKey cacheKey, String outputId) {
+        return cacheKey + "_" + outputId + node.getRequiredOutput(outputId).type().getExtension();
+    }
+
+    /**
+     * Finds the first fallback cache that has all outputs of a node for the given key. Compressed outputs can only
+     * be used when entries are imported, since they have to be decompressed.
+     *
+     * @return The intermediate results directory of the fallback cache, or null if none has the entry.
+     */
+    @Nullable
+    private Path findFallbackEntry(ExecutionNode node, CacheKey cacheKey) {
+        for (var fallbackDir : fallbackDirs) {
+            if (!Files.isRegularFile(fallbackDir.resolve(cacheKey + ".txt"))) {
+                continue;
+            }
+            var complete = node.outputs().keySet().stream().allMatch(outputId -> {
+                var filename = getOutputFilename(node, cacheKey, outputId);
+                return Files.isRegularFile(fallbackDir.resolve(filename))
+                       || importFromFallback && Files.isRegularFile(fallbackDir.resolve(filename + BlobStore.COMPRESSED_SUFFIX));
+            });
+            if (complete) {
+                return fallbackDir;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds an entry of a fallback cache to this cache. Outputs are hardlinked if possible, while files that are
+     * touched when the entry is used are always copied, so the fallback cache is never modified.
+     */
+    private void importFallbackEntry(ExecutionNode node, CacheKey cacheKey, Path fallbackDir) throws IOException {
+        var importedFiles = new ArrayList<Path>();
+        for (var outputId : node.outputs().keySet()) {
+            var filename = getOutputFilename(node, cacheKey, outputId);
+            if (!Files.isRegularFile(fallbackDir.resolve(filename))) {
+                filename += BlobStore.COMPRESSED_SUFFIX;
+            }
+            var destination = intermediateResultsDir.resolve(filename);
+            try {
+                BlobStore.link(fallbackDir.resolve(filename), destination);
+            } catch (IOException | UnsupportedOperationException e) {
+                copyAtomically(fallbackDir.resolve(filename), destination);
+            }
+            importedFiles.add(destination);
+        }
+        var outputsRecord = fallbackDir.resolve(getOutputsRecordFile(cacheKey).getFileName());
+        if (Files.isRegularFile(outputsRecord)) {
+            copyAtomically(outputsRecord, getOutputsRecordFile(cacheKey));
+            importedFiles.add(getOutputsRecordFile(cacheKey));
+        }
+        // The marker is imported last, since its presence marks the entry as complete
+        copyAtomically(fallbackDir.resolve(cacheKey + ".txt"), getCacheMarkerFile(cacheKey));
+        importedFiles.add(getCacheMarkerFile(cacheKey));
+        indexFiles(cacheKey, importedFiles, Map.of());
+        if (verbose) {
+            LOG.println(" Imported " + cacheKey + " from " + fallbackDir);
+        }
+    }
+
+    private static void copyAtomically(Path source, Path destination) throws IOException {
+        var tempFile = destination.resolveSibling(destination.getFileName() + "." + ProcessHandle.current().pid() + "." + Thread.currentThread().threadId() + ".tmp");
+        try {
+            Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            FileUtil.atomicMove(tempFile, destination);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Finds a file of a cache entry in this cache, or otherwise in the first fallback cache that has it.
+     */
+    private Path findEntryFile(Path file) {
+        if (!Files.isRegularFile(file)) {
+            for (var fallbackDir : fallbackDirs) {
+                var fallbackFile = fallbackDir.resolve(file.getFileName());
+                if (Files.isRegularFile(fallbackFile)) {
+                    return fallbackFile;
+                }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Moves a corrupt cache entry out of the cache, so that it is no longer used, but can still be inspected.
+     * Quarantined files are deleted by cache maintenance once they are older than the maximum age of cache entries.
+     * Only files in this cache are moved, since fallback caches are never modified.
+     *
+     * @param outputs       The outputs of the entry.
+     * @param corruptHashes The hashes that corrupt outputs should have had. If a corrupt output is a link to the blob
+     *                      with that hash, the blob is quarantined too, since new entries would otherwise link to it.
+     */
+    public void quarantine(CacheKey cacheKey, Collection<Path> outputs, Collection<String> corruptHashes) throws IOException {
+        var files = new ArrayList<>(outputs);
+        files.add(getCacheMarkerFile(cacheKey));
+        files.add(getOutputsRecordFile(cacheKey));
+        for (var hash : corruptHashes) {
+            var blob = blobStore.getBlobPath(hash);
+            if (Files.isRegularFile(blob) && outputs.stream().anyMatch(output -> isSameFile(output, blob))) {
+                files.add(blob);
+            }
+        }
+
+        var quarantineDir = getQuarantineDir();
+        Files.createDirectories(quarantineDir);
+        var now = FileTime.from(Instant.now());
+        for (var file : files) {
+            if (isIntermediateResult(file) && Files.isRegularFile(file)) {
+                var destination = quarantineDir.resolve(file.getFileName());
+                FileUtil.atomicMove(file, destination);
+                Files.setLastModifiedTime(destination, now);
+            }
+        }
+        cacheIndex.recordDeleted(List.of(cacheKey.toString()));
+        LOG.warn("Moved corrupt cache entry " + cacheKey + " to " + quarantineDir);
+    }
 
-    public CacheManager(Path homeDir, @Nullable Path assetsDir, Path workspacesDir) throws IOException {
-        this.homeDir = homeDir;
-        Files.createDirectories(homeDir);
-        this.artifactCacheDir = homeDir.resolve("artifacts");
-        this.intermediateResultsDir = homeDir.resolve("intermediate_results");
-        this.assetsDir = Objects.requireNonNullElse(assetsDir, homeDir.resolve("assets"));
-        this.workspacesDir = workspacesDir;
+    private static boolean isSameFile(Path a, Path b) {
+        try {
+            return Files.isSameFile(a, b);
+        } catch (IOException e) {
+            return false;
+        }
     }
 
-    public void performMaintenance() throws IOException {
-        if (!Files.exists(homeDir)) {
+    private void cleanUpQuarantine(Instant now) throws IOException {
+        var quarantineDir = getQuarantineDir();
+        if (!Files.isDirectory(quarantineDir)) {
             return;
         }
+        try (var stream = Files.list(quarantineDir)) {
+            for (var file : stream.toList()) {
+                if (Duration.between(Files.getLastModifiedTime(file).toInstant(), now).toHours() > maxAgeInHours) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
 
-        var cacheLock = homeDir.resolve("nfrt_cache_cleanup.state");
+    private Path getQuarantineDir() {
+        return homeDir.resolve("quarantine");
+    }
 
-        try (var channel = FileChannel.open(cacheLock, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
-            FileLock lock;
-            try {
-                lock = channel.tryLock();
-            } catch (OverlappingFileLockException ignored) {
-                lock = null;
+    private void cleanUpRemoteTransfers(Instant now) throws IOException {
+        var remoteTransfersDir = getRemoteTransfersDir();
+        if (!Files.isDirectory(remoteTransfersDir)) {
+            return;
+        }
+        try (var stream = Files.list(remoteTransfersDir)) {
+            for (var file : stream.toList()) {
+                if (Duration.between(Files.getLastModifiedTime(file).toInstant(), now).compareTo(MAX_REMOTE_TRANSFER_AGE) > 0) {
+                    Files.deleteIfExists(file);
+                }
             }
+        }
+    }
 
-            if (lock != null) {
-                var lastModified = Files.getLastModifiedTime(cacheLock, LinkOption.NOFOLLOW_LINKS);
-                var age = Duration.between(lastModified.toInstant(), Instant.now());
-                var interval = Duration.ofHours(24);
-                if (age.compareTo(interval) < 0) {
-                    if (verbose) {
-                        LOG.println("Not performing routine maintenance since the last maintenance was "
-                                    + AnsiColor.BOLD + StringUtil.formatDuration(age) + " ago" + AnsiColor.RESET);
-                    }
-                    return;
-                }
+    /**
+     * Temporary archives downloaded from or uploaded to the remote cache are kept here, away from the cache entries.
+     */
+    private Path getRemoteTransfersDir() {
+        return homeDir.resolve("remote_transfers");
+    }
 
-                LOG.println("Performing periodic cache maintenance on " + homeDir);
+    private Path createRemoteTransferFile() throws IOException {
+        var remoteTransfersDir = getRemoteTransfersDir();
+        Files.createDirectories(remoteTransfersDir);
+        return Files.createTempFile(remoteTransfersDir, "remote", ".tmp");
+    }
 
-                cleanUpIntermediateResults();
+    /**
+     * Starts downloading the outputs of a node from the remote cache in the background, if they are not
+     * in the local cache. A later call to {@link #restoreOutputsFromCache} for the same key will wait for the download.
+     *
+     * @return A future that completes once the download has finished, without adding the outputs to the local cache.
+     */
+    public CompletableFuture<?> prefetch(ExecutionNode node, CacheKey cacheKey) {
+        if (disabled || remoteBackend == null || Files.isRegularFile(getCacheMarkerFile(cacheKey)) || findFallbackEntry(node, cacheKey) != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return fetchFromRemote(cacheKey);
+    }
 
-                Files.setLastModifiedTime(cacheLock, FileTime.from(Instant.now()));
+    /**
+     * Waits for the outputs of a node to be downloaded from the remote cache, and adds them to the local cache.
+     * The caller must hold the exclusive lock for the key.
+     */
+    private boolean restoreFromRemote(ExecutionNode node, CacheKey cacheKey) throws IOException {
+        var fetch = fetchFromRemote(cacheKey);
+        Path archive;
+        try {
+            archive = fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the remote cache", e);
+        } catch (ExecutionException e) {
+            archive = null;
+        } finally {
+            remoteFetches.remove(cacheKey.toString(), fetch);
+        }
+        if (archive == null) {
+            return false;
+        }
 
-                return;
+        try {
+            // Another process may have added the entry while we were waiting for the lock or the download
+            if (Files.isRegularFile(getCacheMarkerFile(cacheKey))) {
+                return true;
             }
-
-            LOG.println("Cache maintenance is already performed by another process.");
+            return addRemoteEntry(node, cacheKey, archive);
+        } finally {
+            Files.deleteIfExists(archive);
         }
     }
 
-    public void cleanUpAll() throws IOException {
-        cleanUpIntermediateResults();
+    private CompletableFuture<Path> fetchFromRemote(CacheKey cacheKey) {
+        return remoteFetches.computeIfAbsent(cacheKey.toString(), key -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return downloadFromRemote(cacheKey);
+            } catch (IOException e) {
+                LOG.println("Failed to download " + cacheKey + " from remote cache " + remoteBackend + ": " + e);
+                return null;
+            }
+        }, remoteExecutor));
     }
 
     /**
-     * Cleans the cache of intermediate results based on two goals:
-     * <ol>
-     * <li>Removing cache entries that have not been used for a given number of hours. We use the last modification
-     * time of the cache key files as the indicator for their last use.</li>
-     * <li>Removing enough cache entries to keep the overall size under the given target.</li>
-     * </ul>
+     * Downloads the archive of an entry from the remote cache into a temporary file. This does not modify the
+     * local cache, so it does not require the lock for the key.
+     *
+     * @return Null if the remote cache does not have the entry.
      */
-    public void cleanUpIntermediateResults() throws IOException {
-        if (!Files.exists(intermediateResultsDir)) {
-            return;
-        }
-
-        LOG.println("Cleaning intermediate results cache in " + intermediateResultsDir);
-        LOG.println(" Maximum age: " + maxAgeInHours + "h");
-        LOG.println(" Maximum cache size: " + StringUtil.formatBytes(maxSize));
-
-        record CacheEntry(Path file, String filename, String cacheKey, long lastModified, long size) {
+    @Nullable
+    private Path downloadFromRemote(CacheKey cacheKey) throws IOException {
+        var archive = createRemoteTransferFile();
+        var found = false;
+        try {
+            try (var ignored = Tracer.span("cache", "Download " + cacheKey)) {
+                found = remoteBackend.load(cacheKey.toString(), archive);
+            }
+            if (!found && verbose) {
+                LOG.println(" Remote cache miss for " + cacheKey);
+            }
+            return found ? archive : null;
+        } finally {
+            if (!found) {
+                Files.deleteIfExists(archive);
+            }
         }
-        var entries = new ArrayList<CacheEntry>(1000);
-        var expiredEntryPrefixes = new HashSet<String>();
+    }
 
-        var now = Instant.now();
-        Files.walkFileTree(intermediateResultsDir, Set.of(), 1, new SimpleFileVisitor<>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                if (attrs.isRegularFile()) {
-                    // Find expired cache control files since those are the files that get touched
-                    // when used.
-                    var filename = file.getFileName().toString();
-                    var m = CacheKey.FILENAME_PREFIX_PATTERN.matcher(filename);
-                    if (m.find()) {
-                        String cacheKey = m.group(1);
-                        entries.add(new CacheEntry(file, filename, cacheKey, attrs.lastModifiedTime().toMillis(), attrs.size()));
-
-                        if (filename.substring(cacheKey.length()).equals(".txt")) {
-                            long ageInHours = Duration.between(attrs.lastModifiedTime().toInstant(), now).toHours();
-                            if (ageInHours > maxAgeInHours) {
-                                expiredEntryPrefixes.add(cacheKey);
-                            }
-                        }
-                    } else {
-                        LOG.println("  Unrecognized file in cache: " + file);
+    /**
+     * Adds the outputs of a node downloaded from the remote cache to the local cache.
+     * The cache marker is written last, so the local entry only becomes visible once it is complete.
+     */
+    private boolean addRemoteEntry(ExecutionNode node, CacheKey cacheKey, Path archive) throws IOException {
+        var cachedFiles = new ArrayList<Path>();
+        var blobHashes = new HashMap<Path, String>();
+        try (var zf = new ZipFile(archive.toFile())) {
+            for (var outputId : node.outputs().keySet()) {
+                if (zf.getEntry(outputId) == null) {
+                    LOG.println("Remote cache entry " + cacheKey + " is missing output " + outputId);
+                    return false;
+                }
+            }
+            for (var outputId : node.outputs().keySet()) {
+                var cachedFile = intermediateResultsDir.resolve(cacheKey + "_" + outputId + node.getRequiredOutput(outputId).type().getExtension());
+                var tempFile = cachedFile.resolveSibling(cachedFile.getFileName() + "." + ProcessHandle.current().pid() + ".download");
+                try (var in = zf.getInputStream(zf.getEntry(outputId))) {
+                    var hash = copyAndHash(in, tempFile);
+                    blobStore.store(tempFile, hash, cachedFile);
+                    cachedFiles.add(cachedFile);
+                    if (blobStore.isSupported()) {
+                        blobHashes.put(cachedFile, hash);
                     }
+                } finally {
+                    Files.deleteIfExists(tempFile);
                 }
-                return FileVisitResult.CONTINUE;
             }
-        });
-
-        var totalSize = entries.stream().mapToLong(CacheEntry::size).sum();
-
-        LOG.println(" " + AnsiColor.MUTED + entries.size() + " files found" + AnsiColor.RESET);
-        LOG.println(" " + AnsiColor.MUTED + StringUtil.formatBytes(totalSize) + " overall size" + AnsiColor.RESET);
-        LOG.println(" " + AnsiColor.MUTED + expiredEntryPrefixes.size() + " expired keys found" + AnsiColor.RESET);
+        }
+        var markerFile = getCacheMarkerFile(cacheKey);
+        cacheKey.write(markerFile);
+        cachedFiles.add(markerFile);
+        indexFiles(cacheKey, cachedFiles, blobHashes);
+        if (verbose) {
+            LOG.println(" Downloaded " + cacheKey + " from remote cache");
+        }
+        return true;
+    }
 
-        // Nothing to expire
-        if (!expiredEntryPrefixes.isEmpty()) {
-            long freedSpace = 0;
-            long deletedEntries = 0;
+    private static String copyAndHash(InputStream in, Path destination) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        try (var out = new DigestOutputStream(Files.newOutputStream(destination), digest)) {
+            in.transferTo(out);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
 
-            // Delete all entries that belong to expired cache keys
-            for (var it = entries.iterator(); it.hasNext(); ) {
-                var item = it.next();
-                if (expiredEntryPrefixes.contains(item.cacheKey)) {
-                    if (verbose) {
-                        LOG.println(" Deleting " + item.filename);
+    /**
+     * Uploads the cached outputs of a node to the remote cache in the background.
+     */
+    private void uploadToRemote(CacheKey cacheKey, Map<String, Path> cachedOutputs) {
+        var upload = CompletableFuture.runAsync(() -> {
+            Path archive = null;
+            try (var ignored = Tracer.span("cache", "Upload " + cacheKey)) {
+                archive = createRemoteTransferFile();
+                try (var zos = new ZipOutputStream(Files.newOutputStream(archive))) {
+                    for (var entry : cachedOutputs.entrySet()) {
+                        zos.putNextEntry(new ZipEntry(entry.getKey()));
+                        Files.copy(entry.getValue(), zos);
+                        zos.closeEntry();
                     }
+                }
+                remoteBackend.store(cacheKey.toString(), archive);
+                if (verbose) {
+                    LOG.println(" Uploaded " + cacheKey + " to remote cache");
+                }
+            } catch (IOException e) {
+                LOG.println("Failed to upload " + cacheKey + " to remote cache " + remoteBackend + ": " + e);
+            } finally {
+                if (archive != null) {
                     try {
-                        Files.delete(item.file);
-                    } catch (IOException e) {
-                        System.err.println("Failed to delete cache entry " + item.file);
-                        continue;
+                        Files.deleteIfExists(archive);
+                    } catch (IOException ignored) {
                     }
-                    freedSpace += item.size;
-                    deletedEntries++;
-                    it.remove();
                 }
             }
-
-            LOG.println("Freed up " + AnsiColor.BOLD + StringUtil.formatBytes(freedSpace) + AnsiColor.RESET + " by deleting " + AnsiColor.BOLD + deletedEntries + " expired entries" + AnsiColor.RESET);
-            totalSize -= freedSpace;
+        }, remoteExecutor);
+        synchronized (pendingUploads) {
+            pendingUploads.add(upload);
         }
+    }
 
-        if (totalSize <= maxSize) {
+    /**
+     * Moves the outputs of a node into the cache. Outputs whose SHA-1 hash is given are stored in the content-addressed
+     * blob store, and the cache entry is a hardlink to the blob.
+     */
+    public void saveOutputs(ExecutionNode node, CacheKey cacheKey, HashMap<String, Path> outputValues, Map<String, String> outputHashes) throws IOException {
+        if (disabled) {
             return;
         }
 
-        LOG.println("Cache size exceeds target size. Deleting least-recently-used entries first.");
-
-        // If the total size still exceeds the target, group remaining cache entries by key and evict the
-        // least-recently-used groups first. The marker (.txt) file's modification time is refreshed on every
-        // cache hit (see restoreOutputsFromCache), so the most recent modification time within a group
-        // reflects when that cached step was last used.
-        var groupedEntries = new ArrayList<>(entries.stream().collect(Collectors.groupingBy(CacheEntry::cacheKey)).values());
-        groupedEntries.sort(Comparator.<List<CacheEntry>>comparingLong(group -> group.stream().mapToLong(CacheEntry::lastModified).max().orElse(0L)));
-        long freedSpace = 0;
-        var deletedEntries = 0;
-        for (var group : groupedEntries) {
-            if (totalSize <= maxSize) {
-                break;
-            }
-
-            for (var item : group) {
-                if (verbose) {
-                    LOG.println(" Deleting " + item.filename);
-                }
-                try {
-                    Files.delete(item.file);
-                } catch (IOException e) {
-                    System.err.println("Failed to delete cache entry " + item.file);
-                    continue;
+        var intermediateCacheDir = getIntermediateResultsDir();
+        var finalOutputValues = new HashMap<String, Path>(outputValues.size());
+        var blobHashes = new HashMap<Path, String>();
+        for (var entry : outputValues.entrySet()) {
+            var filename = cacheKey + "_" + entry.getKey() + node.getRequiredOutput(entry.getKey()).type().getExtension();
+            var cachedPath = intermediateCacheDir.resolve(filename);
+            var hash = outputHashes.get(entry.getKey());
+            if (hash != null && Files.isRegularFile(entry.getValue())) {
+                blobStore.store(entry.getValue(), hash, cachedPath);
+                if (blobStore.isSupported()) {
+                    blobHashes.put(cachedPath, hash);
                 }
-                freedSpace += item.size;
-                totalSize -= item.size;
-                deletedEntries++;
+            } else {
+                FileUtil.atomicMove(entry.getValue(), cachedPath);
             }
+            finalOutputValues.put(entry.getKey(), cachedPath);
         }
+        outputValues.putAll(finalOutputValues);
+        var markerFile = getCacheMarkerFile(cacheKey);
+        cacheKey.write(markerFile);
+        var cachedFiles = new ArrayList<>(finalOutputValues.values());
+        cachedFiles.add(markerFile);
+        indexFiles(cacheKey, cachedFiles, blobHashes);
 
-        LOG.println("Freed up " + AnsiColor.BOLD + StringUtil.formatBytes(freedSpace) + AnsiColor.RESET + " by deleting " + AnsiColor.BOLD + deletedEntries + " entries" + AnsiColor.RESET);
+        if (remoteBackend != null && remotePush && finalOutputValues.values().stream().allMatch(Files::isRegularFile)) {
+            uploadToRemote(cacheKey, finalOutputValues);
+        }
     }
 
-    public boolean restoreOutputsFromCache(ExecutionNode node, CacheKey cacheKey, Map<String, Path> outputValues) throws IOException {
+    /**
+     * Loads the record of outputs that a node produced for the given cache key.
+     *
+     * @return Null if no outputs have been recorded for the key.
+     */
+    @Nullable
+    public CachedNodeOutputs getCachedNodeOutputs(CacheKey cacheKey) throws IOException {
         if (disabled) {
-            return false;
+            return null;
         }
 
-        var intermediateCacheDir = getIntermediateResultsDir();
+        var recordFile = findEntryFile(getOutputsRecordFile(cacheKey));
+        if (!Files.isRegularFile(recordFile)) {
+            return null;
+        }
+        return CachedNodeOutputs.read(recordFile);
+    }
+
+    public boolean hasCachedNodeOutputs(CacheKey cacheKey) {
+        return !disabled && Files.isRegularFile(getOutputsRecordFile(cacheKey));
+    }
+
+    /**
+     * Records the outputs a node produced for the given cache key, unless they have already been recorded.
+     */
+    public void saveNodeOutputs(CacheKey cacheKey, CachedNodeOutputs outputs) throws IOException {
+        if (disabled) {
+            return;
+        }
+
+        var recordFile = getOutputsRecordFile(cacheKey);
+        if (!Files.isRegularFile(recordFile)) {
+            Files.createDirectories(getIntermediateResultsDir());
+            outputs.write(recordFile);
+            indexFiles(cacheKey, List.of(recordFile), Map.of());
+        }
+    }
+
+    /**
+     * Marks the cache entry for a node as used, after its outputs have been taken from the record of its outputs.
+     */
+    public void markNodeOutputsUsed(CacheKey cacheKey) throws IOException {
+        metrics.recordHit(cacheKey.type(), 0);
+        var recordFile = getOutputsRecordFile(cacheKey);
+        if (!Files.isRegularFile(recordFile)) {
+            return; // The record was taken from a fallback cache, which is not modified
+        }
+        usedKeys.add(cacheKey.toString());
+        var now = Instant.now();
+        Files.setLastModifiedTime(recordFile, FileTime.from(now));
         var cacheMarkerFile = getCacheMarkerFile(cacheKey);
-        Files.createDirectories(intermediateCacheDir);
         if (Files.isRegularFile(cacheMarkerFile)) {
-            // Try to rebuild output values from cache
-            boolean complete = true;
-            for (var entry : node.outputs().entrySet()) {
-                var filename = cacheKey + "_" + entry.getKey() + node.getRequiredOutput(entry.getKey()).type().getExtension();
-                var cachedFile = intermediateCacheDir.resolve(filename);
-                if (Files.isRegularFile(cachedFile)) {
-                    outputValues.put(entry.getKey(), cachedFile);
-                } else {
-                    System.err.println("Cache for " + node.id() + " is incomplete. Missing: " + filename);
-                    outputValues.clear();
-                    complete = false;
-                    break;
-                }
-            }
-            if (complete) {
-                // Mark its use
-                Files.setLastModifiedTime(cacheMarkerFile, FileTime.from(Instant.now()));
-            }
-            return complete;
+            Files.setLastModifiedTime(cacheMarkerFile, FileTime.from(now));
+        }
+        cacheIndex.recordUsed(cacheKey.toString(), now.toEpochMilli());
+    }
+
+    private Path getOutputsRecordFile(CacheKey cacheKey) {
+        return getIntermediateResultsDir().resolve(cacheKey.type() + "_" + cacheKey.hashValue() + OUTPUTS_RECORD_SUFFIX);
+    }
+
+    /**
+     * Loads the results of a previous run of the whole execution graph from the cache.
+     * The caller has to verify that the cached results are still valid.
+     *
+     * @return Null if no results are cached for the given key.
+     */
+    @Nullable
+    public CachedResults restoreResultsFromCache(CacheKey cacheKey) throws IOException {
+        if (disabled) {
+            return null;
+        }
+
+        var resultsFile = findEntryFile(getCachedResultsFile(cacheKey));
+        var cacheMarkerFile = resultsFile.resolveSibling(getCacheMarkerFile(cacheKey).getFileName());
+        if (Files.isRegularFile(cacheMarkerFile) && Files.isRegularFile(resultsFile)) {
+            metrics.recordHit(cacheKey.type(), 0);
+            return CachedResults.read(resultsFile);
         } else if (analyzeMisses) {
             analyzeCacheMiss(cacheKey);
         }
-        return false;
+        metrics.recordMiss(cacheKey.type());
+        return null;
+    }
+
+    /**
+     * Marks cached results as used, including the cached intermediate results they refer to.
+     */
+    public void markResultsUsed(CacheKey cacheKey, Collection<Path> resultPaths) throws IOException {
+        var now = Instant.now();
+        usedKeys.add(cacheKey.toString());
+        if (Files.isRegularFile(getCacheMarkerFile(cacheKey))) {
+            Files.setLastModifiedTime(getCacheMarkerFile(cacheKey), FileTime.from(now));
+            cacheIndex.recordUsed(cacheKey.toString(), now.toEpochMilli());
+        }
+        for (var resultPath : resultPaths) {
+            if (!isIntermediateResult(resultPath)) {
+                continue;
+            }
+            var m = CacheKey.FILENAME_PREFIX_PATTERN.matcher(resultPath.getFileName().toString());
+            if (m.find()) {
+                var markerFile = intermediateResultsDir.resolve(m.group(1) + ".txt");
+                usedKeys.add(m.group(1));
+                if (Files.isRegularFile(markerFile)) {
+                    Files.setLastModifiedTime(markerFile, FileTime.from(now));
+                    cacheIndex.recordUsed(m.group(1), now.toEpochMilli());
+                }
+            }
+        }
     }
 
-    public void saveOutputs(ExecutionNode node, CacheKey cacheKey, HashMap<String, Path> outputValues) throws IOException {
+    public void saveResults(CacheKey cacheKey, CachedResults results) throws IOException {
         if (disabled) {
             return;
         }
 
-        var intermediateCacheDir = getIntermediateResultsDir();
-        var finalOutputValues = new HashMap<String, Path>(outputValues.size());
-        for (var entry : outputValues.entrySet()) {
-            var filename = cacheKey + "_" + entry.getKey() + node.getRequiredOutput(entry.getKey()).type().getExtension();
-            var cachedPath = intermediateCacheDir.resolve(filename);
-            FileUtil.atomicMove(entry.getValue(), cachedPath);
-            finalOutputValues.put(entry.getKey(), cachedPath);
-        }
-        outputValues.putAll(finalOutputValues);
-        cacheKey.write(getCacheMarkerFile(cacheKey));
+        Files.createDirectories(getIntermediateResultsDir());
+        var resultsFile = getCachedResultsFile(cacheKey);
+        results.write(resultsFile);
+        var markerFile = getCacheMarkerFile(cacheKey);
+        cacheKey.write(markerFile);
+        indexFiles(cacheKey, List.of(resultsFile, markerFile), Map.of());
+    }
+
+    /**
+     * {@return true if the given path is a file in the cache of intermediate results}
+     */
+    public boolean isIntermediateResult(Path path) {
+        return path.toAbsolutePath().normalize().startsWith(intermediateResultsDir.toAbsolutePath().normalize());
+    }
+
+    private Path getCachedResultsFile(CacheKey cacheKey) {
+        return getIntermediateResultsDir().resolve(cacheKey.type() + "_" + cacheKey.hashValue() + "_results.json");
     }
 
     private Path getCacheMarkerFile(CacheKey cacheKey) {
@@ -320,7 +1579,6 @@ public class CacheManager implements AutoCloseable {
     private void analyzeCacheMiss(CacheKey cacheKey) {
         var intermediateCacheDir = getIntermediateResultsDir();
         var cacheEntries = new ArrayList<>(getCacheEntries(intermediateCacheDir, cacheKey.type()));
-        LOG.println("  " + cacheEntries.size() + " existing cache entries for " + cacheKey.type());
 
         // Calculate distances
         var deltasByCacheEntry = new IdentityHashMap<CacheEntry, List<CacheKey.Delta>>(cacheEntries.size());
@@ -355,21 +1613,43 @@ public class CacheManager implements AutoCloseable {
         return value.value();
     }
 
-    private static List<CacheEntry> getCacheEntries(Path intermediateCacheDir, String type) {
-        var filenamePattern = Pattern.compile(Pattern.quote(type) + "_[0-9a-f]+\\.txt");
-
-        try (var stream = Files.list(intermediateCacheDir)) {
-            return stream.filter(f -> filenamePattern.matcher(f.getFileName().toString()).matches()).map(p -> {
-                try {
-                    return new CacheEntry(p.getFileName().toString(), Files.getLastModifiedTime(p), CacheKey.read(p));
-                } catch (Exception e) {
-                    System.err.println("  Failed to read cache-key " + p + " for analysis");
-                    return null;
+    /**
+     * Finds the cache keys of the given type to compare against. If the cache index is complete, only the most
+     * recently used keys are read, otherwise all keys in the cache directory are.
+     */
+    private List<CacheEntry> getCacheEntries(Path intermediateCacheDir, String type) {
+        List<Path> markerFiles;
+        try {
+            var snapshot = cacheIndex.read();
+            if (snapshot.complete()) {
+                var candidates = snapshot.entries().values().stream()
+                        .filter(entry -> entry.cacheKey().startsWith(type + "_") && entry.files().containsKey(entry.cacheKey() + ".txt"))
+                        .sorted(Comparator.comparingLong(CacheIndex.Entry::lastUsed).reversed())
+                        .toList();
+                LOG.println("  " + candidates.size() + " existing cache entries for " + type);
+                markerFiles = candidates.stream()
+                        .limit(MAX_MISS_ANALYSIS_CANDIDATES)
+                        .map(entry -> intermediateCacheDir.resolve(entry.cacheKey() + ".txt"))
+                        .toList();
+            } else {
+                var filenamePattern = Pattern.compile(Pattern.quote(type) + "_[0-9a-f]+\\.txt");
+                try (var stream = Files.list(intermediateCacheDir)) {
+                    markerFiles = stream.filter(f -> filenamePattern.matcher(f.getFileName().toString()).matches()).toList();
                 }
-            }).filter(Objects::nonNull).toList();
+                LOG.println("  " + markerFiles.size() + " existing cache entries for " + type);
+            }
         } catch (IOException ignored) {
             return List.of();
         }
+
+        return markerFiles.stream().map(p -> {
+            try {
+                return new CacheEntry(p.getFileName().toString(), Files.getLastModifiedTime(p), CacheKey.read(p));
+            } catch (Exception e) {
+                LOG.warn("Failed to read cache-key " + p + " for analysis");
+                return null;
+            }
+        }).filter(Objects::nonNull).toList();
     }
 
     public Path createWorkspace(String stepName) throws IOException {
@@ -408,6 +1688,17 @@ public class CacheManager implements AutoCloseable {
         this.analyzeMisses = analyzeMisses;
     }
 
+    public boolean isVerifyOutputs() {
+        return verifyOutputs;
+    }
+
+    /**
+     * Enables verifying the content of outputs restored from the cache against the hashes recorded when they were saved.
+     */
+    public void setVerifyOutputs(boolean verifyOutputs) {
+        this.verifyOutputs = verifyOutputs;
+    }
+
     public boolean isVerbose() {
         return verbose;
     }
@@ -416,7 +1707,98 @@ public class CacheManager implements AutoCloseable {
         this.verbose = verbose;
     }
 
+    /**
+     * Sets a remote cache that is used when results are not found in the local cache.
+     *
+     * @param push If true, results that are added to the local cache are also uploaded to the remote cache.
+     */
+    public void setRemoteBackend(@Nullable CacheBackend remoteBackend, boolean push) {
+        this.remoteBackend = remoteBackend;
+        this.remotePush = push;
+    }
+
+    public int getCompressAfterDays() {
+        return compressAfterDays;
+    }
+
+    public void setCompressAfterDays(int compressAfterDays) {
+        this.compressAfterDays = compressAfterDays;
+    }
+
+    /**
+     * Sets the lock manager used to avoid modifying cache entries that are in use by other processes during maintenance.
+     */
+    public void setLockManager(@Nullable LockManager lockManager) {
+        this.lockManager = lockManager;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * {@return the counters of cache hits, misses and transferred bytes of this process}
+     */
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Summarizes the entries of the cache of intermediate results, as recorded in the cache index.
+     */
+    public CacheStatistics getStatistics() throws IOException {
+        return CacheStatistics.of(cacheIndex.read());
+    }
+
+    /**
+     * Sets the home directories of read-only caches that are consulted when an entry is not found in this cache,
+     * in the given order. Fallback caches are never modified.
+     *
+     * @param importEntries If true, entries found in a fallback cache are added to this cache, otherwise they
+     *                      are used in place.
+     */
+    public void setFallbackDirs(List<Path> fallbackHomeDirs, boolean importEntries) {
+        this.fallbackDirs = fallbackHomeDirs.stream().map(dir -> dir.resolve("intermediate_results")).toList();
+        this.importFromFallback = importEntries;
+    }
+
+    public boolean hasRemoteBackend() {
+        return !disabled && remoteBackend != null;
+    }
+
     @Override
     public void close() throws Exception {
+        stopBackgroundEviction();
+
+        // Finish uploading results to the remote cache
+        List<CompletableFuture<?>> uploads;
+        synchronized (pendingUploads) {
+            uploads = new ArrayList<>(pendingUploads);
+            pendingUploads.clear();
+        }
+        if (!uploads.isEmpty()) {
+            LOG.println("Waiting for " + uploads.size() + " uploads to the remote cache");
+            for (var upload : uploads) {
+                upload.join();
+            }
+        }
+        remoteExecutor.shutdownNow();
+        if (!remoteExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+            LOG.println("Failed to wait for remote cache transfers to finish.");
+        }
+        // Delete prefetched entries that were never restored
+        for (var fetch : remoteFetches.values()) {
+            if (fetch.isDone() && !fetch.isCompletedExceptionally() && fetch.join() != null) {
+                Files.deleteIfExists(fetch.join());
+            }
+        }
+        remoteFetches.clear();
+        if (remoteBackend != null) {
+            remoteBackend.close();
+        }
     }
 }
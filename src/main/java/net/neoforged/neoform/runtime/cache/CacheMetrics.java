@@ -0,0 +1,123 @@
+package net.neoforged.neoform.runtime.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import net.neoforged.neoform.runtime.utils.FileUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how effective the cache of intermediate results was during a run, aggregated per type of cache key,
+ * which is the id of the node for nodes of the execution graph.
+ */
+public final class CacheMetrics {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Map<String, Counters> countersByType = new ConcurrentHashMap<>();
+
+    private static final class Counters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder bytesRestored = new LongAdder();
+        final LongAdder bytesWritten = new LongAdder();
+        final LongAdder bytesEvicted = new LongAdder();
+        final LongAdder hashingNanos = new LongAdder();
+
+        Counts toCounts() {
+            return new Counts(
+                    hits.sum(),
+                    misses.sum(),
+                    bytesRestored.sum(),
+                    bytesWritten.sum(),
+                    bytesEvicted.sum(),
+                    TimeUnit.NANOSECONDS.toMillis(hashingNanos.sum())
+            );
+        }
+    }
+
+    /**
+     * The counters for a type of cache key, or for all of them.
+     *
+     * @param bytesRestored The size of the outputs restored from the cache.
+     * @param bytesWritten  The size of the outputs stored in the cache, before they are deduplicated.
+     * @param bytesEvicted  The disk space freed by removing entries from the cache.
+     * @param hashingMillis The time spent computing cache keys and hashing outputs.
+     */
+    public record Counts(long hits, long misses, long bytesRestored, long bytesWritten, long bytesEvicted,
+                         long hashingMillis) {
+        Counts plus(Counts other) {
+            return new Counts(
+                    hits + other.hits,
+                    misses + other.misses,
+                    bytesRestored + other.bytesRestored,
+                    bytesWritten + other.bytesWritten,
+                    bytesEvicted + other.bytesEvicted,
+                    hashingMillis + other.hashingMillis
+            );
+        }
+    }
+
+    /**
+     * A snapshot of all counters.
+     */
+    public record Report(Counts total, Map<String, Counts> types) {
+        public void write(Path path) throws IOException {
+            var tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(tempFile, GSON.toJson(this), StandardCharsets.UTF_8);
+            FileUtil.atomicMove(tempFile, path);
+        }
+    }
+
+    void recordHit(String type, long bytesRestored) {
+        var counters = getCounters(type);
+        counters.hits.increment();
+        counters.bytesRestored.add(bytesRestored);
+    }
+
+    void recordMiss(String type) {
+        getCounters(type).misses.increment();
+    }
+
+    void recordWritten(String type, long bytes) {
+        getCounters(type).bytesWritten.add(bytes);
+    }
+
+    void recordEvicted(String type, long bytes) {
+        getCounters(type).bytesEvicted.add(bytes);
+    }
+
+    public void recordHashing(String type, long nanos) {
+        getCounters(type).hashingNanos.add(nanos);
+    }
+
+    public Report createReport() {
+        var types = new TreeMap<String, Counts>();
+        var total = new Counts(0, 0, 0, 0, 0, 0);
+        for (var entry : countersByType.entrySet()) {
+            var counts = entry.getValue().toCounts();
+            types.put(entry.getKey(), counts);
+            total = total.plus(counts);
+        }
+        return new Report(total, types);
+    }
+
+    private Counters getCounters(String type) {
+        return countersByType.computeIfAbsent(type, ignored -> new Counters());
+    }
+
+    /**
+     * {@return the type of the cache key with the given string representation}
+     */
+    static String getType(String cacheKey) {
+        var separator = cacheKey.lastIndexOf('_');
+        return separator > 0 ? cacheKey.substring(0, separator) : cacheKey;
+    }
+}
@@ -0,0 +1,59 @@
+package net.neoforged.neoform.runtime.cache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Summarizes the content of the cache of intermediate results, as recorded in the {@linkplain CacheIndex cache index}.
+ *
+ * @param complete    If false, the index has not been rebuilt from a scan of the cache yet, and entries written before
+ *                    the index existed are missing.
+ * @param size        The size of all files, counting files that share the same content multiple times.
+ * @param storedSize  The disk space used by all files, counting files that share the same content once.
+ */
+public record CacheStatistics(boolean complete, int entries, long size, long storedSize, List<TypeStatistics> types) {
+    /**
+     * The entries of one type of cache key.
+     *
+     * @param compressedFiles The number of files that have been compressed since they were not used for a while.
+     * @param oldestUse       The last use of the least recently used entry, in milliseconds since the epoch.
+     * @param newestUse       The last use of the most recently used entry, in milliseconds since the epoch.
+     */
+    public record TypeStatistics(String type, int entries, long size, int compressedFiles, long oldestUse,
+                                 long newestUse) {
+    }
+
+    static CacheStatistics of(CacheIndex.Snapshot snapshot) {
+        var types = new TreeMap<String, TypeStatistics>();
+        var blobs = new HashSet<String>();
+        long size = 0;
+        long storedSize = 0;
+        for (var entry : snapshot.entries().values()) {
+            long entrySize = 0;
+            var compressedFiles = 0;
+            for (var file : entry.files().values()) {
+                entrySize += file.size();
+                if (file.blobHash() == null || blobs.add(file.blobHash())) {
+                    storedSize += file.size();
+                }
+                if (file.filename().endsWith(BlobStore.COMPRESSED_SUFFIX)) {
+                    compressedFiles++;
+                }
+            }
+            size += entrySize;
+
+            var stats = new TypeStatistics(CacheMetrics.getType(entry.cacheKey()), 1, entrySize, compressedFiles, entry.lastUsed(), entry.lastUsed());
+            types.merge(stats.type(), stats, (a, b) -> new TypeStatistics(
+                    a.type(),
+                    a.entries() + b.entries(),
+                    a.size() + b.size(),
+                    a.compressedFiles() + b.compressedFiles(),
+                    Math.min(a.oldestUse(), b.oldestUse()),
+                    Math.max(a.newestUse(), b.newestUse())
+            ));
+        }
+        return new CacheStatistics(snapshot.complete(), snapshot.entries().size(), size, storedSize, new ArrayList<>(types.values()));
+    }
+}
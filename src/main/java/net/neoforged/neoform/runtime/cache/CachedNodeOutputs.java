@@ -0,0 +1,75 @@
+package net.neoforged.neoform.runtime.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import net.neoforged.neoform.runtime.utils.FileUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+
+/**
+ * Records the outputs a node produced for a given cache key, along with their hashes.
+ * <p>
+ * This allows the cache keys of downstream nodes to be computed without restoring or hashing the outputs
+ * of this node. The record is kept for all nodes, including nodes whose outputs are not stored in the cache
+ * of intermediate results, such as downloaded artifacts.
+ */
+public record CachedNodeOutputs(Map<String, Output> outputs) {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * @param path         Absolute path to the output file.
+     * @param size         Size of the file when it was recorded.
+     * @param lastModified Last modification time of the file in milliseconds when it was recorded.
+     * @param hash         Hash of the file content, as computed by the file hash service.
+     */
+    public record Output(String path, long size, long lastModified, String hash) {
+        public static Output of(Path path, String hash) throws IOException {
+            var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Output(path.toAbsolutePath().toString(), attributes.size(), attributes.lastModifiedTime().toMillis(), hash);
+        }
+
+        /**
+         * {@return true if the file still has the recorded size and modification time}
+         */
+        public boolean isUnmodified() {
+            try {
+                var attributes = Files.readAttributes(Path.of(path), BasicFileAttributes.class);
+                return attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified;
+            } catch (IOException ignored) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Writes the record atomically. Other processes may write the same record concurrently, so each write uses
+     * its own temporary file.
+     */
+    public void write(Path path) throws IOException {
+        var tempFile = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(tempFile, GSON.toJson(this), StandardCharsets.UTF_8);
+            FileUtil.atomicMove(tempFile, path);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    public static CachedNodeOutputs read(Path path) throws IOException {
+        try {
+            var cachedOutputs = GSON.fromJson(Files.readString(path, StandardCharsets.UTF_8), CachedNodeOutputs.class);
+            if (cachedOutputs == null || cachedOutputs.outputs == null) {
+                throw new IOException("Incomplete node outputs in " + path);
+            }
+            return cachedOutputs;
+        } catch (JsonParseException e) {
+            throw new IOException("Failed to read node outputs from " + path, e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package net.neoforged.neoform.runtime.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import net.neoforged.neoform.runtime.utils.FileUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * The results produced by running the execution graph, as stored in the result cache.
+ *
+ * @param results       Maps the requested result ids to the paths of the files containing them.
+ * @param externalFiles Outputs of nodes that are not stored in the cache of intermediate results (i.e. artifacts),
+ *                      mapped to their hash. These must be unchanged for the cached results to be used.
+ */
+public record CachedResults(Map<String, String> results, Map<String, String> externalFiles) {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * Writes the record atomically. Other processes may write the same record concurrently, so each write uses
+     * its own temporary file.
+     */
+    public void write(Path path) throws IOException {
+        var tempFile = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(tempFile, GSON.toJson(this), StandardCharsets.UTF_8);
+            FileUtil.atomicMove(tempFile, path);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    public static CachedResults read(Path path) throws IOException {
+        try {
+            var cachedResults = GSON.fromJson(Files.readString(path, StandardCharsets.UTF_8), CachedResults.class);
+            if (cachedResults == null || cachedResults.results == null || cachedResults.externalFiles == null) {
+                throw new IOException("Incomplete cached results in " + path);
+            }
+            return cachedResults;
+        } catch (JsonParseException e) {
+            throw new IOException("Failed to read cached results from " + path, e);
+        }
+    }
+}
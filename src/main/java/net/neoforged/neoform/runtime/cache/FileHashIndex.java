@@ -0,0 +1,180 @@
+package net.neoforged.neoform.runtime.cache;
+
+import net.neoforged.neoform.runtime.utils.AppendOnlyLog;
+import net.neoforged.neoform.runtime.utils.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent index of file hashes, which allows us to skip re-hashing large files (i.e. the Minecraft jar or
+ * libraries on the classpath) across runs of NFRT.
+ * <p>
+ * Entries are keyed by the absolute path of a file and are only considered valid if size, modification time and the
+ * file key (i.e. the inode on Unix systems) of the file still match the recorded values.
+ * The index is loaded once into memory, after which lookups do not require any locking. New entries are collected
+ * and appended to the index file in batches.
+ */
+public class FileHashIndex implements AutoCloseable {
+    private static final Logger LOG = Logger.create();
+
+    /**
+     * Files that have been modified very recently may still be modified again within the resolution
+     * of the file system timestamps. We do not persist hashes for those.
+     */
+    private static final Duration MIN_AGE = Duration.ofSeconds(2);
+
+    /**
+     * Number of new entries after which they're written to disk.
+     */
+    private static final int FLUSH_THRESHOLD = 256;
+
+    private final AppendOnlyLog log;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<List<String>> pendingRecords = new ConcurrentLinkedQueue<>();
+
+    private record Entry(String algorithm, long size, long lastModified, String fileKey, String hashValue) {
+    }
+
+    private FileHashIndex(Path indexFile) {
+        this.log = new AppendOnlyLog(indexFile);
+    }
+
+    public static FileHashIndex load(Path indexFile) {
+        var index = new FileHashIndex(indexFile);
+        try {
+            var lines = index.log.read(index::loadRecord);
+            // Compact the file if it contains a lot of superseded records
+            if (lines > 1000 && lines > 2 * index.entries.size()) {
+                index.compact();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to read file hash index " + indexFile + ": " + e);
+        }
+        return index;
+    }
+
+    private void loadRecord(List<String> record) {
+        if (record.size() != 6) {
+            return;
+        }
+        try {
+            entries.put(record.get(0), new Entry(
+                    record.get(1),
+                    Long.parseLong(record.get(2)),
+                    Long.parseLong(record.get(3)),
+                    record.get(4),
+                    record.get(5)
+            ));
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    /**
+     * Looks up the hash of a file, given its current attributes.
+     *
+     * @return Null if no hash is known for the file in its current state.
+     */
+    @Nullable
+    public String get(Path path, BasicFileAttributes attributes, String algorithm) {
+        var entry = entries.get(getKey(path));
+        if (entry != null
+            && entry.algorithm.equals(algorithm)
+            && entry.size == attributes.size()
+            && entry.lastModified == getLastModified(attributes)
+            && entry.fileKey.equals(getFileKey(attributes))) {
+            return entry.hashValue;
+        }
+        return null;
+    }
+
+    public void put(Path path, BasicFileAttributes attributes, String algorithm, String hashValue) {
+        if (Instant.now().minus(MIN_AGE).isBefore(attributes.lastModifiedTime().toInstant())) {
+            return;
+        }
+
+        var key = getKey(path);
+        var entry = new Entry(algorithm, attributes.size(), getLastModified(attributes), getFileKey(attributes), hashValue);
+        if (entry.equals(entries.put(key, entry))) {
+            return; // Nothing changed
+        }
+
+        pendingRecords.add(toRecord(key, entry));
+        if (pendingRecords.size() >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes pending entries to disk.
+     */
+    public synchronized void flush() {
+        var records = new ArrayList<List<String>>();
+        List<String> record;
+        while ((record = pendingRecords.poll()) != null) {
+            records.add(record);
+        }
+
+        try {
+            log.append(records);
+        } catch (IOException e) {
+            LOG.warn("Failed to update file hash index " + log.getFile() + ": " + e);
+        }
+    }
+
+    /**
+     * Rewrites the index file, removing superseded records and records for files that no longer exist.
+     */
+    private void compact() throws IOException {
+        var records = new ArrayList<List<String>>(entries.size());
+        for (var it = entries.entrySet().iterator(); it.hasNext(); ) {
+            var entry = it.next();
+            if (Files.isRegularFile(Path.of(entry.getKey()))) {
+                records.add(toRecord(entry.getKey(), entry.getValue()));
+            } else {
+                it.remove();
+            }
+        }
+        log.rewrite(records);
+    }
+
+    private static List<String> toRecord(String key, Entry entry) {
+        return List.of(
+                key,
+                entry.algorithm,
+                String.valueOf(entry.size),
+                String.valueOf(entry.lastModified),
+                entry.fileKey,
+                entry.hashValue
+        );
+    }
+
+    private static String getKey(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private static long getLastModified(BasicFileAttributes attributes) {
+        return attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS);
+    }
+
+    private static String getFileKey(BasicFileAttributes attributes) {
+        return Objects.toString(attributes.fileKey(), "");
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
@@ -0,0 +1,24 @@
+package net.neoforged.neoform.runtime.cli;
+
+import net.neoforged.neoform.runtime.utils.StringUtil;
+import picocli.CommandLine;
+
+/**
+ * Converts options that specify a size in bytes, using the format of JVM options such as {@code -Xmx}
+ * (i.e. {@code 512m} or {@code 10g}). Invalid sizes are reported as a usage error for the option.
+ */
+class ByteSizeConverter implements CommandLine.ITypeConverter<Long> {
+    @Override
+    public Long convert(String value) {
+        long size;
+        try {
+            size = StringUtil.parseBytes(value);
+        } catch (NumberFormatException | ArithmeticException e) {
+            size = -1;
+        }
+        if (size <= 0) {
+            throw new CommandLine.TypeConversionException("'" + value + "' is not a positive size such as 512m or 10g");
+        }
+        return size;
+    }
+}
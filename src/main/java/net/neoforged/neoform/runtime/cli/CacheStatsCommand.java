@@ -0,0 +1,70 @@
+package net.neoforged.neoform.runtime.cli;
+
+import com.google.gson.GsonBuilder;
+import net.neoforged.neoform.runtime.utils.Logger;
+import net.neoforged.neoform.runtime.utils.StringUtil;
+import picocli.CommandLine;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Summarizes the content of the cache of intermediate results per node, based on the cache index.
+ *
+ * @see net.neoforged.neoform.runtime.cache.CacheStatistics
+ */
+@CommandLine.Command(name = "cache-stats", description = "Summarize the content of the intermediate results cache per node")
+public class CacheStatsCommand implements Callable<Integer> {
+    private static final Logger LOG = Logger.create();
+
+    @CommandLine.ParentCommand
+    Main commonOptions;
+
+    @CommandLine.Option(names = "--json", description = "Print the statistics as JSON to standard output")
+    boolean json;
+
+    @Override
+    public Integer call() throws Exception {
+        try (var cacheManager = commonOptions.createCacheManager()) {
+            var statistics = cacheManager.getStatistics();
+            if (json) {
+                // Bypasses the logger, which may prefix or alter lines, so that the output can be parsed by scripts
+                System.out.println(new GsonBuilder().setPrettyPrinting().create().toJson(statistics));
+                return 0;
+            }
+
+            if (!statistics.complete()) {
+                LOG.warn("The cache index is incomplete. Run clean-cache to rebuild it from the cache directory.");
+            }
+            if (statistics.entries() == 0) {
+                LOG.println("The cache is empty.");
+                return 0;
+            }
+
+            var now = Instant.now();
+            var format = "%-30s %8s %10s %10s %12s %12s";
+            LOG.println(String.format(Locale.ROOT, format, "Node", "Entries", "Size", "Compressed", "Oldest Use", "Newest Use"));
+            for (var stats : statistics.types()) {
+                LOG.println(String.format(Locale.ROOT, format,
+                        stats.type(),
+                        stats.entries(),
+                        StringUtil.formatBytes(stats.size()),
+                        stats.compressedFiles(),
+                        formatAge(stats.oldestUse(), now),
+                        formatAge(stats.newestUse(), now)));
+            }
+            LOG.println("");
+            LOG.println(statistics.entries() + " entries, " + StringUtil.formatBytes(statistics.size()) + " ("
+                        + StringUtil.formatBytes(statistics.storedSize()) + " on disk after deduplication)");
+        }
+
+        return 0;
+    }
+
+    private static String formatAge(long lastUsed, Instant now) {
+        var age = Duration.between(Instant.ofEpochMilli(lastUsed), now);
+        return age.toHours() < 1 ? "<1h" : StringUtil.formatDuration(Duration.ofHours(age.toHours()));
+    }
+}
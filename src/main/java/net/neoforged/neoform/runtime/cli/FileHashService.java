@@ -1,11 +1,13 @@
 package net.neoforged.neoform.runtime.cli;
 
+import net.neoforged.neoform.runtime.cache.FileHashIndex;
 import net.neoforged.neoform.runtime.utils.HashingUtil;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
@@ -14,10 +16,25 @@ import java.util.concurrent.locks.ReentrantLock;
 /**
  * Maintains a cached view of file hashes. We use SHA-1, since Minecraft uses those in their version manifest,
  * and we can reuse them.
+ * <p>
+ * If a {@link FileHashIndex} is given, hashes of files, including the files in hashed directories, are also persisted
+ * across runs.
  */
 public class FileHashService {
-    private final Map<Path, String> hashValues = new HashMap<>();
+    private static final String ALGORITHM = "SHA1";
+
+    private final Map<Path, String> hashValues = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<Path, Lock> locks = new ConcurrentHashMap<>();
+    @Nullable
+    private final FileHashIndex index;
+
+    public FileHashService() {
+        this(null);
+    }
+
+    public FileHashService(@Nullable FileHashIndex index) {
+        this.index = index;
+    }
 
     public String getHashValue(Path path) throws IOException {
         var lock = locks.computeIfAbsent(path, ignored -> new ReentrantLock());
@@ -27,9 +44,10 @@ public class FileHashService {
             var hashValue = hashValues.get(path);
             if (hashValue == null) {
                 if (Files.isDirectory(path)) {
-                    hashValue = HashingUtil.hashDirectory(path, "SHA1");
+                    // Hashes of unchanged files in the directory are taken from the index
+                    hashValue = HashingUtil.hashDirectory(path, this::getFileHashValue);
                 } else {
-                    hashValue = HashingUtil.hashFile(path, "SHA1");
+                    hashValue = getFileHashValue(path);
                 }
                 hashValues.put(path, hashValue);
             }
@@ -39,6 +57,20 @@ public class FileHashService {
         }
     }
 
+    private String getFileHashValue(Path path) throws IOException {
+        if (index == null) {
+            return HashingUtil.hashFile(path, ALGORITHM);
+        }
+
+        var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        var hashValue = index.get(path, attributes, ALGORITHM);
+        if (hashValue == null) {
+            hashValue = HashingUtil.hashFile(path, ALGORITHM);
+            index.put(path, attributes, ALGORITHM, hashValue);
+        }
+        return hashValue;
+    }
+
     public void setHashValue(Path path, String hash) {
         var lock = locks.computeIfAbsent(path, ignored -> new ReentrantLock());
         try {
@@ -49,4 +81,15 @@ public class FileHashService {
             lock.unlock();
         }
     }
+
+    /**
+     * Same as {@link #setHashValue}, but also persists the hash in the index. Only use this for files whose content
+     * is known to have the given hash, i.e. because they were just copied from a file with that hash.
+     */
+    public void putHashValue(Path path, String hash) throws IOException {
+        setHashValue(path, hash);
+        if (index != null) {
+            index.put(path, Files.readAttributes(path, BasicFileAttributes.class), ALGORITHM, hash);
+        }
+    }
 }
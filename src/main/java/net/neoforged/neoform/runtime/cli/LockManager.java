@@ -3,24 +3,74 @@ package net.neoforged.neoform.runtime.cli;
 import net.neoforged.neoform.runtime.utils.AnsiColor;
 import net.neoforged.neoform.runtime.utils.HashingUtil;
 import net.neoforged.neoform.runtime.utils.Logger;
+import net.neoforged.neoform.runtime.utils.Tracer;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class LockManager {
     private static final Logger LOG = Logger.create();
 
+    /**
+     * Delay before the first retry when another process holds a lock. It doubles with each retry, up to
+     * {@link #MAX_RETRY_DELAY_MILLIS}.
+     */
+    private static final long MIN_RETRY_DELAY_MILLIS = 2;
+    private static final long MAX_RETRY_DELAY_MILLIS = 500;
+
+    /**
+     * Lock files are spread over this many subdirectories of {@code locks}, named after the first two hex digits
+     * of their hash.
+     */
+    private static final int SHARD_COUNT = 256;
+    /**
+     * The number of subdirectories cleaned up by each call to {@link #performMaintenance()}, so that maintenance
+     * never has to list all lock files at once.
+     */
+    private static final int SHARDS_PER_MAINTENANCE = 16;
+
+    /**
+     * Threads of this process wait for each other on these locks, keyed by the absolute path of the lock file,
+     * before they contend for the file lock itself. The file lock only excludes other processes, and threads
+     * waiting on these are woken up as soon as the lock is released instead of having to poll.
+     * Entries are removed when no thread holds or waits for them anymore.
+     */
+    private static final Map<Path, InProcessLock> IN_PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private static final class InProcessLock {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // Only modified in IN_PROCESS_LOCKS.compute
+        int users;
+        // A JVM can only hold one lock on a file, so the threads holding a shared lock share the file lock.
+        // Both fields are guarded by fileLockGuard, which is never held while waiting for other processes.
+        final ReentrantLock fileLockGuard = new ReentrantLock();
+        @Nullable
+        FileLock fileLock;
+        int fileLockHolders;
+    }
+
     private final Path lockDirectory;
     private boolean verbose;
 
@@ -29,91 +79,429 @@ public class LockManager {
         this.lockDirectory = lockDirectory;
     }
 
-    private Path getLockFile(String key) {
-        return lockDirectory.resolve("_" + HashingUtil.sha1(key) + ".lock");
+    private Path getLockFile(String hash) {
+        return getShardDirectory(hash.substring(0, 2)).resolve("_" + hash + ".lock");
+    }
+
+    /**
+     * Older versions only lock files directly in the lock directory. Such a lock file exists if one of them locked
+     * the key, and until maintenance deletes it, it is locked in addition to the current lock file, before it.
+     * Since it is never created by this version, it stops being used once the older versions are no longer used.
+     */
+    private Path getLegacyLockFile(String hash) {
+        return lockDirectory.resolve("_" + hash + ".lock");
     }
 
+    private Path getShardDirectory(String shard) {
+        return lockDirectory.resolve("locks").resolve(shard);
+    }
+
+    /**
+     * Acquires the exclusive lock for the given key, waiting for other holders of the lock in this or other
+     * processes to release it.
+     */
     public Lock lock(String key) {
-        var lockFile = getLockFile(key);
+        try (var ignored = Tracer.span("lock", "Lock " + key)) {
+            return acquireLock(key, false);
+        }
+    }
+
+    /**
+     * Acquires a shared lock for the given key, which can be held by any number of threads and processes at the
+     * same time, but not while the {@linkplain #lock(String) exclusive lock} is held.
+     * Use it to read state that is only modified under the exclusive lock.
+     */
+    public Lock lockShared(String key) {
+        try (var ignored = Tracer.span("lock", "Shared lock " + key)) {
+            return acquireLock(key, true);
+        }
+    }
+
+    private Lock acquireLock(String key, boolean shared) {
+        var hash = HashingUtil.sha1(key);
+        var legacyLock = acquireLockFile(key, getLegacyLockFile(hash), shared, false);
+        Lock lock;
+        try {
+            lock = Objects.requireNonNull(acquireLockFile(key, getLockFile(hash), shared, true));
+        } catch (RuntimeException | Error e) {
+            if (legacyLock != null) {
+                legacyLock.close();
+            }
+            throw e;
+        }
+
+        if (verbose) {
+            LOG.println(AnsiColor.MUTED + " Acquired " + (shared ? "shared " : "") + "lock for " + key + AnsiColor.RESET);
+        }
+        return combine(lock, legacyLock);
+    }
+
+    /**
+     * @param create If false, null is returned instead of creating the lock file if it does not exist.
+     */
+    @Nullable
+    private static Lock acquireLockFile(String key, Path lockFile, boolean shared, boolean create) {
+        if (!create && !Files.exists(lockFile)) {
+            return null;
+        }
+        var inProcessLock = acquireInProcessLock(key, lockFile, shared);
+        boolean locked;
+        try {
+            locked = acquireFileLock(key, lockFile, inProcessLock, shared, create);
+        } catch (RuntimeException | Error e) {
+            releaseInProcessLock(lockFile, inProcessLock, shared);
+            throw e;
+        }
+        if (!locked) {
+            releaseInProcessLock(lockFile, inProcessLock, shared);
+            return null;
+        }
+        return new Lock(() -> {
+            releaseFileLock(inProcessLock);
+            releaseInProcessLock(lockFile, inProcessLock, shared);
+        });
+    }
+
+    private static Lock combine(Lock lock, @Nullable Lock legacyLock) {
+        if (legacyLock == null) {
+            return lock;
+        }
+        return new Lock(() -> {
+            lock.close();
+            legacyLock.close();
+        });
+    }
+
+    private static InProcessLock acquireInProcessLock(String key, Path lockFile, boolean shared) {
+        var inProcessLock = retainInProcessLock(lockFile);
+        if (inProcessLock.lock.isWriteLockedByCurrentThread() || inProcessLock.lock.getReadHoldCount() > 0) {
+            forgetInProcessLock(lockFile, inProcessLock);
+            throw new IllegalStateException("A lock on " + key + " is already held by this thread");
+        }
+        var lock = shared ? inProcessLock.lock.readLock() : inProcessLock.lock.writeLock();
+        if (lock.tryLock()) {
+            return inProcessLock;
+        }
+
+        var spinner = LOG.spinner("Waiting for lock on " + key);
+        try {
+            while (!lock.tryLock(1, TimeUnit.SECONDS)) {
+                spinner.tick();
+            }
+        } catch (InterruptedException e) {
+            forgetInProcessLock(lockFile, inProcessLock);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            spinner.end();
+        }
+        return inProcessLock;
+    }
+
+    private static InProcessLock retainInProcessLock(Path lockFile) {
+        return IN_PROCESS_LOCKS.compute(lockFile.toAbsolutePath(), (ignored, inProcessLock) -> {
+            if (inProcessLock == null) {
+                inProcessLock = new InProcessLock();
+            }
+            inProcessLock.users++;
+            return inProcessLock;
+        });
+    }
+
+    private static void releaseInProcessLock(Path lockFile, InProcessLock inProcessLock, boolean shared) {
+        if (shared) {
+            inProcessLock.lock.readLock().unlock();
+        } else {
+            inProcessLock.lock.writeLock().unlock();
+        }
+        forgetInProcessLock(lockFile, inProcessLock);
+    }
+
+    private static void forgetInProcessLock(Path lockFile, InProcessLock inProcessLock) {
+        IN_PROCESS_LOCKS.computeIfPresent(lockFile.toAbsolutePath(), (ignored, current) -> {
+            if (current == inProcessLock && --current.users == 0) {
+                return null;
+            }
+            return current;
+        });
+    }
+
+    private static void releaseFileLock(InProcessLock inProcessLock) {
+        inProcessLock.fileLockGuard.lock();
+        try {
+            if (--inProcessLock.fileLockHolders > 0 || inProcessLock.fileLock == null) {
+                return;
+            }
+            var fileLock = inProcessLock.fileLock;
+            inProcessLock.fileLock = null;
+            release(fileLock);
+        } finally {
+            inProcessLock.fileLockGuard.unlock();
+        }
+    }
 
-        // We need an open FileChannel to actually get an exclusive lock on the file,
-        // So we create/open the existing one here. Opening the same file by two processes will itself not
-        // cause blocking.
+    /**
+     * Acquires the lock on the lock file, or joins the file lock that other threads of this process hold along with
+     * a shared lock. If another process holds the lock, we retry endlessly with an exponentially growing delay.
+     * The random jitter keeps processes that are waiting for the same lock from retrying in lockstep.
+     * Each attempt only holds the guard of the file lock briefly, and it is never held while sleeping.
+     *
+     * @return False if the lock file does not exist, and {@code create} is false.
+     */
+    private static boolean acquireFileLock(String key, Path lockFile, InProcessLock inProcessLock, boolean shared, boolean create) {
         FileChannel channel = null;
+        Logger.IndeterminateSpinner spinner = null;
+        long retryDelay = MIN_RETRY_DELAY_MILLIS;
+        long nextTick = 0;
+        try {
+            while (true) {
+                if (channel == null) {
+                    channel = openLockFileWithRetries(lockFile, create);
+                    if (channel == null) {
+                        return false;
+                    }
+                }
+
+                inProcessLock.fileLockGuard.lock();
+                try {
+                    if (inProcessLock.fileLockHolders > 0) {
+                        inProcessLock.fileLockHolders++;
+                        return true;
+                    }
+                    var fileLock = tryLockChannel(channel, shared);
+                    if (fileLock != null) {
+                        channel = null;
+                        if (!isDeleted(fileLock)) {
+                            inProcessLock.fileLock = fileLock;
+                            inProcessLock.fileLockHolders = 1;
+                            return true;
+                        }
+                        // Maintenance deleted the lock file after we opened it, so it no longer excludes anyone
+                        release(fileLock);
+                        continue;
+                    }
+                } finally {
+                    inProcessLock.fileLockGuard.unlock();
+                }
+
+                var now = System.nanoTime();
+                if (spinner == null) {
+                    spinner = LOG.spinner("Waiting for lock on " + key);
+                    nextTick = now + TimeUnit.SECONDS.toNanos(1);
+                } else if (now - nextTick >= 0) {
+                    spinner.tick();
+                    nextTick = now + TimeUnit.SECONDS.toNanos(1);
+                }
+
+                sleep(retryDelay / 2 + ThreadLocalRandom.current().nextLong(retryDelay / 2 + 1));
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+            }
+        } finally {
+            if (spinner != null) {
+                spinner.end();
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Null if another process holds the lock.
+     */
+    @Nullable
+    private static FileLock tryLockChannel(FileChannel channel, boolean shared) {
+        try {
+            return channel.tryLock(0L, Long.MAX_VALUE, shared);
+        } catch (OverlappingFileLockException ignored) {
+            // This VM holds the lock through a channel that does not go through the in-process locks
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * We need an open FileChannel to actually get a lock on the file, so we create/open the existing one here.
+     * Opening the same file by two processes will itself not cause blocking.
+     *
+     * @return Null if the lock file does not exist, and {@code create} is false.
+     */
+    @Nullable
+    private static FileChannel openLockFileWithRetries(Path lockFile, boolean create) {
         int attempt = 0;
-        while (channel == null) {
+        while (true) {
             try {
                 attempt++;
-                channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                return openLockFile(lockFile, create);
+            } catch (NoSuchFileException e) {
+                if (create) {
+                    throw new RuntimeException("Failed to create lock-file " + lockFile + ": " + e.getMessage(), e);
+                }
+                return null;
             } catch (AccessDeniedException e) {
                 if (attempt > 5) {
                     throw new RuntimeException("Failed to create lock-file " + lockFile + ": " + e.getMessage(), e);
                 }
-                try {
-                    Thread.sleep(1000L);
-                } catch (InterruptedException ignored) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException(e);
-                }
+                sleep(1000L);
             } catch (IOException e) {
                 throw new RuntimeException("Failed to create lock-file " + lockFile + ": " + e.getMessage(), e);
             }
         }
+    }
 
-        // Now that we have an open file handle (in form of a FileChannel)
-        // We try to get an exclusive lock on it. If that fails, we wait 1s and try again endlessly
-        Logger.IndeterminateSpinner spinner = null;
-        FileLock fileLock;
-        while (true) {
-            try {
-                fileLock = channel.tryLock();
-                if (fileLock != null) {
-                    break;
-                }
-            } catch (OverlappingFileLockException ignored) {
-                // This VM currently holds the lock in another thread
-            } catch (IOException e) {
-                try {
-                    channel.close();
-                } catch (IOException ignored) {
-                }
-                throw new RuntimeException(e);
-            }
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
 
-            if (spinner == null) {
-                spinner = LOG.spinner("Waiting for lock on " + key);
-            } else {
-                spinner.tick();
+    /**
+     * Opens the lock file for reading and writing, since shared locks require a readable channel
+     * and exclusive locks a writable one.
+     *
+     * @throws NoSuchFileException If the lock file does not exist, and {@code create} is false.
+     */
+    private static FileChannel openLockFile(Path lockFile, boolean create) throws IOException {
+        if (!create) {
+            return FileChannel.open(lockFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        try {
+            return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (NoSuchFileException ignored) {
+            Files.createDirectories(lockFile.getParent());
+            return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * Lock files are always empty, except when maintenance is about to delete them. It marks them while holding
+     * the exclusive lock, so anyone who opened the file before it was deleted notices once they get the lock.
+     */
+    private static boolean isDeleted(FileLock fileLock) {
+        try {
+            return fileLock.channel().size() > 0;
+        } catch (IOException e) {
+            release(fileLock);
+            throw new RuntimeException("Failed to check lock-file: " + e.getMessage(), e);
+        }
+    }
+
+    private static void release(FileLock fileLock) {
+        try {
+            fileLock.release();
+        } catch (IOException ignored) {
+            System.err.println("Failed to release lock on " + fileLock.channel().toString());
+        }
+        try {
+            fileLock.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Tries to acquire the exclusive lock for the given key without waiting.
+     *
+     * @return Null if the lock, or a shared lock, is currently held by this or another process.
+     */
+    @Nullable
+    public Lock tryLock(String key) {
+        var hash = HashingUtil.sha1(key);
+        var legacyLockFile = getLegacyLockFile(hash);
+        Lock legacyLock = null;
+        if (Files.exists(legacyLockFile)) {
+            legacyLock = tryLockFile(legacyLockFile, false);
+            if (legacyLock == null) {
+                return null;
+            }
+        }
+        var lock = tryLockFile(getLockFile(hash), true);
+        if (lock == null) {
+            if (legacyLock != null) {
+                legacyLock.close();
             }
+            return null;
+        }
+        return combine(lock, legacyLock);
+    }
 
+    /**
+     * @return Null if the lock is held, or the lock file does not exist and {@code create} is false.
+     */
+    @Nullable
+    private static Lock tryLockFile(Path lockFile, boolean create) {
+        var inProcessLock = retainInProcessLock(lockFile);
+        if (inProcessLock.lock.isWriteLockedByCurrentThread() || !inProcessLock.lock.writeLock().tryLock()) {
+            forgetInProcessLock(lockFile, inProcessLock);
+            return null;
+        }
+
+        FileLock fileLock = null;
+        try {
+            var channel = openLockFile(lockFile, create);
             try {
-                Thread.sleep(1000L);
-            } catch (InterruptedException e) {
-                if (spinner != null) {
-                    spinner.end();
-                }
-                Thread.currentThread().interrupt();
-                throw new RuntimeException(e);
+                fileLock = channel.tryLock();
+            } catch (OverlappingFileLockException | IOException ignored) {
             }
+            if (fileLock == null) {
+                channel.close();
+            } else if (isDeleted(fileLock)) {
+                release(fileLock);
+                fileLock = null;
+            }
+        } catch (IOException | RuntimeException ignored) {
         }
-        if (spinner != null) {
-            spinner.end();
+        if (fileLock == null) {
+            releaseInProcessLock(lockFile, inProcessLock, false);
+            return null;
         }
-
-        if (verbose) {
-            LOG.println(AnsiColor.MUTED + " Acquired lock for " + key + AnsiColor.RESET);
+        inProcessLock.fileLockGuard.lock();
+        try {
+            inProcessLock.fileLock = fileLock;
+            inProcessLock.fileLockHolders = 1;
+        } finally {
+            inProcessLock.fileLockGuard.unlock();
         }
-        return new Lock(fileLock);
+        return new Lock(() -> {
+            releaseFileLock(inProcessLock);
+            releaseInProcessLock(lockFile, inProcessLock, false);
+        });
     }
 
     /**
-     * Removes old outdated lock files.
+     * Removes old outdated lock files. Each call only cleans up some of the lock file subdirectories,
+     * starting at a random one, so repeated calls eventually cover all of them.
      */
     public void performMaintenance() {
+        performMaintenance(ThreadLocalRandom.current().nextInt(SHARD_COUNT), SHARDS_PER_MAINTENANCE);
+    }
+
+    void performMaintenance(int firstShard, int shardCount) {
         FileTime newestToDelete = FileTime.from(Instant.now().minus(24, ChronoUnit.HOURS));
 
         var lockFilesDeleted = new AtomicInteger();
-        try (var stream = Files.list(lockDirectory)) {
+        // Lock files used to be stored directly in the lock directory. Older versions waiting for such a lock file
+        // do not notice that it was deleted, but that was already the case when they deleted lock files themselves.
+        deleteOutdatedLockFiles(lockDirectory, newestToDelete, lockFilesDeleted, this::deleteUnusedLockFile);
+        for (var i = 0; i < shardCount; i++) {
+            var shard = String.format(Locale.ROOT, "%02x", (firstShard + i) % SHARD_COUNT);
+            deleteOutdatedLockFiles(getShardDirectory(shard), newestToDelete, lockFilesDeleted, this::deleteUnusedLockFile);
+        }
+
+        if (lockFilesDeleted.get() > 0) {
+            LOG.println(AnsiColor.MUTED + " Deleted " + lockFilesDeleted.get() + " outdated lock files");
+        }
+    }
+
+    private static void deleteOutdatedLockFiles(Path directory, FileTime newestToDelete, AtomicInteger lockFilesDeleted,
+                                                FileDeleter deleter) {
+        try (var stream = Files.list(directory)) {
             stream.filter(f -> {
                 var filename = f.getFileName().toString();
                 return filename.startsWith("_") && filename.endsWith(".lock");
@@ -127,37 +515,65 @@ public class LockManager {
                 }
             }).forEach(f -> {
                 try {
-                    Files.delete(f);
+                    deleter.delete(f);
                     lockFilesDeleted.incrementAndGet();
                 } catch (IOException ignored) {
                 }
             });
         } catch (IOException ignored) {
         }
+    }
 
-        if (lockFilesDeleted.get() > 0) {
-            LOG.println(AnsiColor.MUTED + " Deleted " + lockFilesDeleted.get() + " outdated lock files");
+    @FunctionalInterface
+    private interface FileDeleter {
+        void delete(Path file) throws IOException;
+    }
+
+    /**
+     * Deletes a lock file while holding its exclusive lock, after marking it as deleted for processes that
+     * opened it in the meantime and are waiting for the lock.
+     *
+     * @throws IOException If the lock file is in use, or could not be deleted.
+     */
+    private void deleteUnusedLockFile(Path lockFile) throws IOException {
+        var inProcessLock = retainInProcessLock(lockFile);
+        if (!inProcessLock.lock.writeLock().tryLock()) {
+            forgetInProcessLock(lockFile, inProcessLock);
+            throw new IOException("Lock-file is in use: " + lockFile);
+        }
+        try (var channel = FileChannel.open(lockFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock fileLock;
+            try {
+                fileLock = channel.tryLock();
+            } catch (OverlappingFileLockException ignored) {
+                fileLock = null;
+            }
+            if (fileLock == null) {
+                throw new IOException("Lock-file is in use: " + lockFile);
+            }
+            channel.write(ByteBuffer.wrap(new byte[]{1}));
+            try {
+                Files.delete(lockFile);
+            } catch (IOException e) {
+                // The lock file is still there, so it must keep working
+                channel.truncate(0);
+                throw e;
+            }
+        } finally {
+            releaseInProcessLock(lockFile, inProcessLock, false);
         }
     }
 
     public static class Lock implements AutoCloseable {
-        private final FileLock fileLock;
+        private final Runnable release;
 
-        public Lock(FileLock fileLock) {
-            this.fileLock = fileLock;
+        Lock(Runnable release) {
+            this.release = release;
         }
 
         @Override
         public void close() {
-            try {
-                fileLock.release();
-            } catch (IOException ignored) {
-                System.err.println("Failed to release lock on " + fileLock.channel().toString());
-            }
-            try {
-                fileLock.channel().close();
-            } catch (IOException ignored) {
-            }
+            release.run();
         }
     }
 
@@ -2,8 +2,11 @@ package net.neoforged.neoform.runtime.cli;
 
 import net.neoforged.neoform.runtime.artifacts.ArtifactManager;
 import net.neoforged.neoform.runtime.cache.CacheManager;
+import net.neoforged.neoform.runtime.cache.FileHashIndex;
+import net.neoforged.neoform.runtime.cache.HttpCacheBackend;
 import net.neoforged.neoform.runtime.cache.LauncherInstallations;
 import net.neoforged.neoform.runtime.downloads.DownloadManager;
+import net.neoforged.neoform.runtime.engine.ExecutionHistory;
 import net.neoforged.neoform.runtime.utils.Logger;
 import net.neoforged.neoform.runtime.utils.OsUtil;
 import org.jetbrains.annotations.Nullable;
@@ -21,7 +24,7 @@ import static picocli.CommandLine.Command;
 import static picocli.CommandLine.Option;
 import static picocli.CommandLine.ScopeType;
 
-@Command(name = "neoform-runtime", subcommands = {CommandLine.HelpCommand.class, RunNeoFormCommand.class, DownloadAssetsCommand.class, DownloadArtifactsCommand.class, CleanCacheCommand.class, CacheMaintenance.class}, mixinStandardHelpOptions = true)
+@Command(name = "neoform-runtime", subcommands = {CommandLine.HelpCommand.class, RunNeoFormCommand.class, DownloadAssetsCommand.class, DownloadArtifactsCommand.class, CleanCacheCommand.class, CacheMaintenance.class, StatsCommand.class, CacheStatsCommand.class}, mixinStandardHelpOptions = true)
 public class Main {
     @Option(names = "--home-dir", scope = ScopeType.INHERIT, description = "Where NFRT should store caches.")
     Path homeDir = getDefaultHomeDir();
@@ -59,6 +62,32 @@ public class Main {
     @Option(names = "--launcher-meta-uri", scope = ScopeType.INHERIT)
     URI launcherManifestUrl = URI.create("https://launchermeta.mojang.com/mc/game/version_manifest_v2.json");
 
+    @Option(names = "--cache-max-size", scope = ScopeType.INHERIT, converter = ByteSizeConverter.class, description = "Maximum size of the cache of intermediate results (i.e. 10G). Least-recently-used entries are evicted when it is exceeded.")
+    @Nullable
+    Long cacheMaxSize;
+
+    @Option(names = "--cache-compress-after-days", scope = ScopeType.INHERIT, description = "Compress cached intermediate results that have not been used for this many days. 0 disables compression.")
+    int cacheCompressAfterDays = 14;
+
+    @Option(names = "--remote-cache", scope = ScopeType.INHERIT, description = "URL of a shared HTTP cache for intermediate results (GET/PUT by cache key). Credentials can be given as part of the URL.")
+    @Nullable
+    URI remoteCacheUrl;
+
+    @Option(
+            names = "--remote-cache-push",
+            description = "Upload intermediate results that are not yet in the remote cache.",
+            scope = ScopeType.INHERIT,
+            negatable = true,
+            fallbackValue = "true"
+    )
+    boolean remoteCachePush;
+
+    @Option(names = "--cache-fallback-dir", arity = "*", scope = ScopeType.INHERIT, description = "Home directory of a read-only NFRT cache that is consulted after the primary cache, i.e. one baked into a CI image. Can be given multiple times.")
+    List<Path> cacheFallbackDirs = new ArrayList<>();
+
+    @Option(names = "--cache-fallback-import", scope = ScopeType.INHERIT, description = "Add entries found in a fallback cache to the primary cache (hardlinked where possible) instead of using them in place.")
+    boolean cacheFallbackImport;
+
     @Option(
             names = "--verbose",
             description = "Enable verbose output",
@@ -119,6 +148,7 @@ public class Main {
     public static void main(String... args) {
         var baseCommand = new Main();
         var commandLine = new CommandLine(baseCommand);
+        commandLine.setCaseInsensitiveEnumValuesAllowed(true);
         commandLine.parseArgs(args);
         Logger.NO_COLOR = !baseCommand.color;
         Logger.NO_EMOJIS = !baseCommand.emojis;
@@ -136,9 +166,26 @@ public class Main {
     public CacheManager createCacheManager() throws IOException {
         var cacheManager = new CacheManager(homeDir, assetsDir, getWorkDir());
         cacheManager.setVerbose(verbose);
+        if (cacheMaxSize != null) {
+            cacheManager.setMaxSize(cacheMaxSize);
+        }
+        cacheManager.setCompressAfterDays(cacheCompressAfterDays);
+        cacheManager.setLockManager(createLockManager());
+        cacheManager.setFallbackDirs(cacheFallbackDirs, cacheFallbackImport);
+        if (remoteCacheUrl != null) {
+            cacheManager.setRemoteBackend(new HttpCacheBackend(remoteCacheUrl), remoteCachePush);
+        }
         return cacheManager;
     }
 
+    public FileHashIndex createFileHashIndex() {
+        return FileHashIndex.load(homeDir.resolve("file_hashes.idx"));
+    }
+
+    public ExecutionHistory createExecutionHistory() {
+        return ExecutionHistory.load(homeDir.resolve("execution_history.log"));
+    }
+
     public LauncherInstallations createLauncherInstallations() throws IOException {
         var installations = new LauncherInstallations(launcherDirs);
         installations.setVerbose(verbose);
@@ -1,9 +1,11 @@
 package net.neoforged.neoform.runtime.cli;
 
 import net.neoforged.neoform.runtime.artifacts.ClasspathItem;
+import net.neoforged.neoform.runtime.cache.CacheMetrics;
 import net.neoforged.neoform.runtime.downloads.DownloadManager;
 import net.neoforged.neoform.runtime.engine.NeoFormEngine;
 import net.neoforged.neoform.runtime.utils.Logger;
+import net.neoforged.neoform.runtime.utils.Tracer;
 import net.neoforged.problems.FileProblemReporter;
 import org.jetbrains.annotations.Nullable;
 import picocli.CommandLine;
@@ -43,6 +45,9 @@ public abstract class NeoFormEngineCommand implements Callable<Integer> {
     @CommandLine.Option(names = "--analyze-cache-misses")
     boolean analyzeCacheMisses;
 
+    @CommandLine.Option(names = "--verify-cache", description = "Verify outputs restored from the cache against the hashes recorded when they were saved, and quarantine corrupt entries")
+    boolean verifyCache;
+
     @CommandLine.Option(names = "--disable-cache-maintenance", description = "Skip automatically running cache maintenance from time to time")
     boolean disableCacheMaintenance;
 
@@ -58,11 +63,30 @@ public abstract class NeoFormEngineCommand implements Callable<Integer> {
     @Nullable
     Path problemReport;
 
+    @CommandLine.Option(names = "--max-workers", description = "The maximum number of CPU cores used by concurrently running steps. Defaults to the number of available processors.")
+    @Nullable
+    Integer maxWorkers;
+
+    @CommandLine.Option(names = "--trace-output", description = "Writes a trace of where time was spent during execution to this file, in the Chrome trace event format (viewable with chrome://tracing or Perfetto)")
+    @Nullable
+    Path traceOutput;
+
+    @CommandLine.Option(names = "--metrics-output", description = "Writes cache hits, misses, transferred bytes and time spent hashing per node to this JSON file")
+    @Nullable
+    Path metricsOutput;
+
+    @CommandLine.Option(names = "--max-memory", converter = ByteSizeConverter.class, description = "The maximum amount of memory used by concurrently running steps, i.e. 6g. Steps that would exceed it are queued. Defaults to the physical memory of the machine.")
+    @Nullable
+    Long maxMemory;
+
     protected abstract void runWithNeoFormEngine(NeoFormEngine engine, List<AutoCloseable> closables) throws IOException, InterruptedException;
 
     @Override
     public final Integer call() throws Exception {
         var start = System.currentTimeMillis();
+        if (traceOutput != null) {
+            Tracer.start();
+        }
 
         var closables = new ArrayList<AutoCloseable>();
 
@@ -74,15 +98,23 @@ public abstract class NeoFormEngineCommand implements Callable<Integer> {
 
         var launcherInstallations = commonOptions.createLauncherInstallations();
 
+        CacheMetrics cacheMetrics = null;
         try (var cacheManager = commonOptions.createCacheManager();
-             var downloadManager = new DownloadManager()) {
+             var downloadManager = new DownloadManager();
+             var fileHashIndex = commonOptions.createFileHashIndex();
+             var executionHistory = commonOptions.createExecutionHistory()) {
             var lockManager = commonOptions.createLockManager();
             cacheManager.setDisabled(disableCache);
             cacheManager.setAnalyzeMisses(analyzeCacheMisses);
+            cacheManager.setVerifyOutputs(verifyCache);
+            cacheMetrics = cacheManager.getMetrics();
+            if (!disableCacheMaintenance) {
+                cacheManager.startBackgroundEviction(lockManager);
+            }
 
             var artifactManager = commonOptions.createArtifactManager(cacheManager, downloadManager, lockManager, launcherInstallations);
 
-            var fileHashService = new FileHashService();
+            var fileHashService = new FileHashService(fileHashIndex);
             try (var engine = new NeoFormEngine(artifactManager, fileHashService, cacheManager, lockManager)) {
                 if (problemReporter != null) {
                     engine.setProblemReporter(problemReporter);
@@ -95,6 +127,13 @@ public abstract class NeoFormEngineCommand implements Callable<Integer> {
                 }
 
                 engine.setVerbose(commonOptions.verbose);
+                engine.setExecutionHistory(executionHistory);
+                if (maxWorkers != null) {
+                    engine.setMaxWorkers(maxWorkers);
+                }
+                if (maxMemory != null) {
+                    engine.setMaxMemory(maxMemory);
+                }
                 applyBuildOptions(engine);
 
                 runWithNeoFormEngine(engine, closables);
@@ -113,6 +152,22 @@ public abstract class NeoFormEngineCommand implements Callable<Integer> {
                 }
             }
 
+            if (traceOutput != null) {
+                try {
+                    Tracer.stopAndWrite(traceOutput);
+                } catch (IOException e) {
+                    System.err.println("Failed to write trace to " + traceOutput + ": " + e);
+                }
+            }
+
+            if (metricsOutput != null && cacheMetrics != null) {
+                try {
+                    cacheMetrics.createReport().write(metricsOutput);
+                } catch (IOException e) {
+                    System.err.println("Failed to write cache metrics to " + metricsOutput + ": " + e);
+                }
+            }
+
             var elapsed = System.currentTimeMillis() - start;
             LOG.println(String.format(Locale.ROOT, "Total runtime: %.02fs\n", elapsed / 1000.0));
         }
@@ -0,0 +1,180 @@
+package net.neoforged.neoform.runtime.cli;
+
+import net.neoforged.neoform.runtime.utils.FileUtil;
+import net.neoforged.neoform.runtime.utils.Logger;
+import net.neoforged.neoform.runtime.utils.OsUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * How results requested with {@code --write-result} are written to their destination.
+ * <p>
+ * All modes write the destination atomically. Modes that link to the result share its content with the cache,
+ * so the destination must not be modified in place.
+ */
+enum ResultWriteMode {
+    /**
+     * Copies the result to the destination.
+     */
+    COPY {
+        @Override
+        void write(Path result, Path destination) throws IOException {
+            copy(result, destination);
+        }
+    },
+    /**
+     * Creates a hardlink to the result, which avoids copying its content. If the destination is on a different
+     * file system than the cache, the result is copied instead.
+     * <p>
+     * The destination is the same file as the content stored in the cache, which is shared by every cache entry
+     * with the same content. Writing to the destination in place therefore corrupts all of these entries, and
+     * every result that links to them. Tools must replace the destination instead, i.e. by writing a new file and
+     * moving it over the destination.
+     */
+    HARDLINK {
+        @Override
+        boolean isUpToDate(Path result, Path destination, FileHashService fileHashService) throws IOException {
+            try {
+                return !Files.isSymbolicLink(destination) && Files.isSameFile(result, destination);
+            } catch (NoSuchFileException ignored) {
+                return false;
+            }
+        }
+
+        @Override
+        void write(Path result, Path destination) throws IOException {
+            try {
+                Files.createLink(destination, result);
+            } catch (FileSystemException | UnsupportedOperationException e) {
+                if (FALLBACK_WARNED.compareAndSet(false, true)) {
+                    LOG.println("Copying results since they cannot be hardlinked: " + e);
+                }
+                copy(result, destination);
+            }
+        }
+    },
+    /**
+     * Creates a symbolic link to the result.
+     * <p>
+     * The link is only valid while the result is stored uncompressed in the cache. It breaks when the cache entry
+     * is compressed, because it has not been used for {@code --cache-compress-after-days}, or when it is evicted.
+     * Since the result is restored to the same path, running the command again makes the link valid again.
+     */
+    SYMLINK {
+        @Override
+        boolean isUpToDate(Path result, Path destination, FileHashService fileHashService) throws IOException {
+            return Files.isSymbolicLink(destination) && Files.readSymbolicLink(destination).equals(result.toAbsolutePath());
+        }
+
+        @Override
+        void write(Path result, Path destination) throws IOException {
+            Files.createSymbolicLink(destination, result);
+        }
+    },
+    /**
+     * Creates a copy-on-write clone of the result on file systems that support it (i.e. Btrfs, XFS or APFS),
+     * which shares the content with the result until either of them is modified. Otherwise, the result is copied.
+     */
+    REFLINK {
+        @Override
+        void write(Path result, Path destination) throws IOException {
+            var error = reflink(result, destination);
+            if (error != null) {
+                if (FALLBACK_WARNED.compareAndSet(false, true)) {
+                    LOG.println("Copying results since they cannot be cloned: " + error);
+                }
+                Files.deleteIfExists(destination);
+                copy(result, destination);
+            }
+        }
+    };
+
+    private static final Logger LOG = Logger.create();
+
+    private static final AtomicBoolean FALLBACK_WARNED = new AtomicBoolean();
+
+    /**
+     * {@return true if the destination already has the content of the result}
+     * Unless the mode can tell this from the destination itself, this compares the hashes of both files, which are
+     * usually already known from the cache and the file hash index.
+     */
+    boolean isUpToDate(Path result, Path destination, FileHashService fileHashService) throws IOException {
+        try {
+            return fileHashService.getHashValue(destination).equals(fileHashService.getHashValue(result));
+        } catch (NoSuchFileException ignored) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the result to the destination, which does not exist.
+     */
+    abstract void write(Path result, Path destination) throws IOException;
+
+    /**
+     * Atomically replaces the destination with the result.
+     */
+    void materialize(Path result, Path destination) throws IOException {
+        var tmpFile = destination.resolveSibling(destination.getFileName() + ".tmp");
+        Files.deleteIfExists(tmpFile);
+        try {
+            write(result.toAbsolutePath(), tmpFile);
+            FileUtil.atomicMove(tmpFile, destination);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Copies the file. The copy gets a new modification time, rather than the one of the result, so that
+     * the file hash index notices when it is modified again right after being written.
+     */
+    private static void copy(Path result, Path destination) throws IOException {
+        Files.copy(result, destination);
+    }
+
+    /**
+     * The JDK has no API for cloning files, so we let {@code cp} issue the {@code FICLONE} ioctl on Linux,
+     * or {@code clonefile} on macOS.
+     *
+     * @return Null if the file was cloned, otherwise the reason why it was not.
+     */
+    @Nullable
+    private static String reflink(Path result, Path destination) throws IOException {
+        List<String> command;
+        if (OsUtil.isLinux()) {
+            command = List.of("cp", "--reflink=always", "--", result.toString(), destination.toString());
+        } else if (OsUtil.isMac()) {
+            command = List.of("cp", "-c", result.toString(), destination.toString());
+        } else {
+            return "not supported on this operating system";
+        }
+
+        Process process;
+        try {
+            process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        } catch (IOException e) {
+            return e.toString();
+        }
+        try {
+            process.getOutputStream().close();
+            var output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (process.waitFor() != 0) {
+                return output.isEmpty() ? "cp exited with code " + process.exitValue() : output;
+            }
+            return null;
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while cloning " + result, e);
+        }
+    }
+}
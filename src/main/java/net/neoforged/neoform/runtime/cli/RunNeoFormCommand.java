@@ -23,8 +23,6 @@ import net.neoforged.neoform.runtime.graph.NodeOutputType;
 import net.neoforged.neoform.runtime.graph.transforms.ModifyAction;
 import net.neoforged.neoform.runtime.graph.transforms.ReplaceNodeInput;
 import net.neoforged.neoform.runtime.graph.transforms.ReplaceNodeOutput;
-import net.neoforged.neoform.runtime.utils.FileUtil;
-import net.neoforged.neoform.runtime.utils.HashingUtil;
 import net.neoforged.neoform.runtime.utils.Logger;
 import net.neoforged.neoform.runtime.utils.MavenCoordinate;
 import net.neoforged.neoform.runtime.utils.ToolCoordinate;
@@ -35,11 +33,8 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collections;
@@ -65,6 +60,9 @@ public class RunNeoFormCommand extends NeoFormEngineCommand {
     @CommandLine.Option(names = "--write-result", arity = "*")
     List<String> writeResults = new ArrayList<>();
 
+    @CommandLine.Option(names = "--write-result-mode", defaultValue = "copy", description = "how results are written: ${COMPLETION-CANDIDATES}. Linked results share their content with the cache and must not be modified in place. Writing to a hardlinked result corrupts every cache entry with the same content. Symbolic links break when the cache entry is compressed or evicted, until the results are written again.")
+    ResultWriteMode writeResultMode = ResultWriteMode.COPY;
+
     @CommandLine.Option(names = "--access-transformer", arity = "*", description = "path to an access transformer file, which widens the access modifiers of classes/methods/fields")
     List<String> additionalAccessTransformers = new ArrayList<>();
 
@@ -464,22 +462,23 @@ public class RunNeoFormCommand extends NeoFormEngineCommand {
 
         var results = engine.createResults(neededResults.keySet().toArray(new String[0]));
 
+        var fileHashService = engine.getFileHashingService();
         for (var entry : neededResults.entrySet()) {
             var result = results.get(entry.getKey());
             if (result == null) {
                 throw new IllegalStateException("Result " + entry.getKey() + " was requested but not produced");
             }
-            var resultFileHash = HashingUtil.hashFile(result, "SHA-1");
-            try {
-                if (HashingUtil.hashFile(entry.getValue(), "SHA-1").equals(resultFileHash)) {
-                    continue; // Nothing to do the file already matches
-                }
-            } catch (NoSuchFileException ignored) {
+            var destination = entry.getValue();
+            if (writeResultMode.isUpToDate(result, destination, fileHashService)) {
+                continue; // Nothing to do the file already matches
             }
 
-            var tmpFile = Paths.get(entry.getValue() + ".tmp");
-            Files.copy(result, tmpFile, StandardCopyOption.REPLACE_EXISTING);
-            FileUtil.atomicMove(tmpFile, entry.getValue());
+            writeResultMode.materialize(result, destination);
+            if (writeResultMode == ResultWriteMode.COPY || writeResultMode == ResultWriteMode.REFLINK) {
+                // The copy has the hash of the result, so it does not have to be read again in this run. The file
+                // hash index does not persist hashes of files that were just modified, so the next run reads it once.
+                fileHashService.putHashValue(destination, fileHashService.getHashValue(result));
+            }
         }
     }
 
@@ -0,0 +1,59 @@
+package net.neoforged.neoform.runtime.cli;
+
+import net.neoforged.neoform.runtime.engine.ExecutionHistory;
+import net.neoforged.neoform.runtime.utils.Logger;
+import net.neoforged.neoform.runtime.utils.StringUtil;
+import picocli.CommandLine;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Summarizes the execution history recorded by previous runs.
+ *
+ * @see ExecutionHistory
+ */
+@CommandLine.Command(name = "stats", description = "Summarize the execution time and resource usage of nodes across previous runs")
+public class StatsCommand implements Callable<Integer> {
+    private static final Logger LOG = Logger.create();
+
+    @CommandLine.ParentCommand
+    Main commonOptions;
+
+    @Override
+    public Integer call() {
+        try (var history = commonOptions.createExecutionHistory()) {
+            var statistics = history.getStatistics();
+            if (statistics.isEmpty()) {
+                LOG.println("No executions have been recorded yet.");
+                return 0;
+            }
+
+            var format = "%-30s %-30s %6s %6s %10s %10s %10s %10s %10s %10s";
+            LOG.println(String.format(Locale.ROOT, format, "Node", "Action", "Runs", "Hits", "p50", "p95", "p50 Hit", "Input", "Output", "p95 RSS"));
+            for (var stats : statistics) {
+                LOG.println(String.format(Locale.ROOT, format,
+                        stats.nodeId(),
+                        stats.actionType(),
+                        stats.executions(),
+                        stats.cacheHits(),
+                        formatMillis(stats.p50ElapsedMs()),
+                        formatMillis(stats.p95ElapsedMs()),
+                        formatMillis(stats.p50CacheHitMs()),
+                        formatBytes(stats.p50InputBytes()),
+                        formatBytes(stats.p50OutputBytes()),
+                        formatBytes(stats.p95PeakRssBytes())));
+            }
+        }
+
+        return 0;
+    }
+
+    private static String formatMillis(long millis) {
+        return millis < 0 ? "-" : String.format(Locale.ROOT, "%.02fs", millis / 1000.0);
+    }
+
+    private static String formatBytes(long bytes) {
+        return bytes < 0 ? "-" : StringUtil.formatBytes(bytes);
+    }
+}
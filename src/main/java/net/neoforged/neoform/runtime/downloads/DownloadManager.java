@@ -3,6 +3,7 @@ package net.neoforged.neoform.runtime.downloads;
 import net.neoforged.neoform.runtime.utils.FileUtil;
 import net.neoforged.neoform.runtime.utils.HashingUtil;
 import net.neoforged.neoform.runtime.utils.Logger;
+import net.neoforged.neoform.runtime.utils.Tracer;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -53,6 +54,14 @@ public class DownloadManager implements AutoCloseable {
     }
 
     public boolean download(DownloadSpec spec, Path finalLocation, boolean silent) throws IOException {
+        try (var span = Tracer.span("download", "Download " + spec.uri())) {
+            var downloaded = downloadFile(spec, finalLocation, silent);
+            span.arg("downloaded", downloaded);
+            return downloaded;
+        }
+    }
+
+    private boolean downloadFile(DownloadSpec spec, Path finalLocation, boolean silent) throws IOException {
         var url = spec.uri();
         if (!silent) {
             LOG.println("  ↓ " + url);
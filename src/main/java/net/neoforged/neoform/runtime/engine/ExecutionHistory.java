@@ -0,0 +1,298 @@
+package net.neoforged.neoform.runtime.engine;
+
+import net.neoforged.neoform.runtime.graph.ExecutionNode;
+import net.neoforged.neoform.runtime.graph.NodeInput;
+import net.neoforged.neoform.runtime.utils.AppendOnlyLog;
+import net.neoforged.neoform.runtime.utils.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Records how nodes performed across runs of NFRT: how long they took, whether they were restored from the cache,
+ * the size of their inputs and outputs, and the peak memory usage of external processes they started.
+ * This is used to estimate the duration of nodes when deciding which nodes to schedule first, and to summarize
+ * the performance of nodes using the {@code stats} command.
+ */
+public class ExecutionHistory implements AutoCloseable {
+    private static final Logger LOG = Logger.create();
+
+    private static final String RECORD_VERSION_1 = "1";
+    private static final String RECORD_VERSION = "2";
+
+    /**
+     * How many recent samples per node we use to estimate its duration.
+     */
+    private static final int MAX_ESTIMATE_SAMPLES_PER_NODE = 20;
+
+    /**
+     * How many samples per node we keep when the history is compacted.
+     */
+    private static final int MAX_SAMPLES_PER_NODE = 200;
+
+    /**
+     * Rewrite the history file once it has grown beyond this number of records.
+     */
+    private static final int COMPACTION_THRESHOLD = 10000;
+
+    private final AppendOnlyLog log;
+    private final Map<String, Deque<Sample>> samples = new HashMap<>();
+    private final List<List<String>> pendingRecords = new ArrayList<>();
+
+    /**
+     * A single execution of a node. Sizes and memory usage are -1 if they are unknown.
+     */
+    private record Sample(long timestamp,
+                          String nodeId,
+                          String actionType,
+                          long elapsedMs,
+                          boolean fromCache,
+                          long inputBytes,
+                          long outputBytes,
+                          long peakRssBytes) {
+        List<String> toRecord() {
+            return List.of(
+                    RECORD_VERSION,
+                    String.valueOf(timestamp),
+                    nodeId,
+                    actionType,
+                    String.valueOf(elapsedMs),
+                    fromCache ? "hit" : "miss",
+                    String.valueOf(inputBytes),
+                    String.valueOf(outputBytes),
+                    String.valueOf(peakRssBytes)
+            );
+        }
+    }
+
+    /**
+     * Summarizes the recorded executions of a node.
+     *
+     * @param nodeId           The id of the node.
+     * @param actionType       The type of action the node ran the last time it was recorded.
+     * @param executions       How many executions were recorded, including cache hits.
+     * @param cacheHits        How many of those executions were restored from the cache.
+     * @param p50ElapsedMs     Median duration of executions that were not restored from the cache, or -1.
+     * @param p95ElapsedMs     95th percentile of the duration of executions that were not restored from the cache, or -1.
+     * @param p50CacheHitMs    Median duration of executions that were restored from the cache, or -1.
+     * @param p50InputBytes    Median total size of the node inputs, or -1.
+     * @param p50OutputBytes   Median total size of the node outputs, or -1.
+     * @param p95PeakRssBytes  95th percentile of the peak resident set size of external processes, or -1.
+     */
+    public record NodeStatistics(String nodeId,
+                                 String actionType,
+                                 int executions,
+                                 int cacheHits,
+                                 long p50ElapsedMs,
+                                 long p95ElapsedMs,
+                                 long p50CacheHitMs,
+                                 long p50InputBytes,
+                                 long p50OutputBytes,
+                                 long p95PeakRssBytes) {
+    }
+
+    private ExecutionHistory(Path historyFile) {
+        this.log = new AppendOnlyLog(historyFile);
+    }
+
+    public static ExecutionHistory load(Path historyFile) {
+        var history = new ExecutionHistory(historyFile);
+        try {
+            var lines = history.log.read(history::loadRecord);
+            if (lines > COMPACTION_THRESHOLD) {
+                history.compact();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to read execution history " + historyFile + ": " + e);
+        }
+        return history;
+    }
+
+    private void loadRecord(List<String> record) {
+        try {
+            if (record.size() == 5 && RECORD_VERSION_1.equals(record.get(0))) {
+                addSample(new Sample(Long.parseLong(record.get(1)), record.get(2), "", Long.parseLong(record.get(3)), "hit".equals(record.get(4)), -1, -1, -1));
+            } else if (record.size() == 9 && RECORD_VERSION.equals(record.get(0))) {
+                addSample(new Sample(
+                        Long.parseLong(record.get(1)),
+                        record.get(2),
+                        record.get(3),
+                        Long.parseLong(record.get(4)),
+                        "hit".equals(record.get(5)),
+                        Long.parseLong(record.get(6)),
+                        Long.parseLong(record.get(7)),
+                        Long.parseLong(record.get(8))
+                ));
+            }
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    private void addSample(Sample sample) {
+        var nodeSamples = samples.computeIfAbsent(sample.nodeId, ignored -> new ArrayDeque<>());
+        nodeSamples.addLast(sample);
+        while (nodeSamples.size() > MAX_SAMPLES_PER_NODE) {
+            nodeSamples.removeFirst();
+        }
+    }
+
+    /**
+     * Records the execution of a node that has completed.
+     */
+    public void record(ExecutionNode node) {
+        var sample = new Sample(
+                System.currentTimeMillis(),
+                node.id(),
+                getActionType(node),
+                node.getElapsedMs(),
+                node.isFromCache(),
+                getInputSize(node),
+                getOutputSize(node),
+                node.getPeakChildProcessRss()
+        );
+        synchronized (this) {
+            addSample(sample);
+            pendingRecords.add(sample.toRecord());
+        }
+    }
+
+    private static String getActionType(ExecutionNode node) {
+        var actionClass = node.action().getClass();
+        var name = actionClass.getSimpleName();
+        return name.isEmpty() ? actionClass.getName() : name;
+    }
+
+    private static long getInputSize(ExecutionNode node) {
+        long total = 0;
+        for (var input : node.inputs().values()) {
+            if (input instanceof NodeInput.NodeInputForOutput outputInput) {
+                var size = getFileSize(outputInput.getOutput().getResultPath());
+                if (size < 0) {
+                    return -1;
+                }
+                total += size;
+            }
+        }
+        return total;
+    }
+
+    private static long getOutputSize(ExecutionNode node) {
+        long total = 0;
+        for (var output : node.outputs().values()) {
+            var size = getFileSize(output.getResultPath());
+            if (size < 0) {
+                return -1;
+            }
+            total += size;
+        }
+        return total;
+    }
+
+    private static long getFileSize(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).size();
+        } catch (IOException ignored) {
+            return -1;
+        }
+    }
+
+    /**
+     * Estimates how long a node will take if it has to be executed (i.e. it is not found in the cache).
+     * The estimate is the median of recent executions of a node with the same id.
+     */
+    public synchronized OptionalLong estimateDuration(String nodeId) {
+        var nodeSamples = samples.get(nodeId);
+        if (nodeSamples == null) {
+            return OptionalLong.empty();
+        }
+        var durations = nodeSamples.reversed().stream()
+                .filter(s -> !s.fromCache)
+                .limit(MAX_ESTIMATE_SAMPLES_PER_NODE)
+                .mapToLong(Sample::elapsedMs)
+                .sorted()
+                .toArray();
+        if (durations.length == 0) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(durations[durations.length / 2]);
+    }
+
+    /**
+     * Summarizes the recorded executions of all nodes, sorted by node id.
+     */
+    public synchronized List<NodeStatistics> getStatistics() {
+        var result = new ArrayList<NodeStatistics>(samples.size());
+        for (var entry : samples.entrySet()) {
+            var nodeSamples = entry.getValue();
+            var misses = nodeSamples.stream().filter(s -> !s.fromCache).toList();
+            var hits = nodeSamples.stream().filter(s -> s.fromCache).toList();
+            var actionType = nodeSamples.reversed().stream().map(Sample::actionType).filter(s -> !s.isEmpty()).findFirst().orElse("");
+            result.add(new NodeStatistics(
+                    entry.getKey(),
+                    actionType,
+                    nodeSamples.size(),
+                    hits.size(),
+                    percentile(misses, Sample::elapsedMs, 50),
+                    percentile(misses, Sample::elapsedMs, 95),
+                    percentile(hits, Sample::elapsedMs, 50),
+                    percentile(nodeSamples, Sample::inputBytes, 50),
+                    percentile(nodeSamples, Sample::outputBytes, 50),
+                    percentile(misses, Sample::peakRssBytes, 95)
+            ));
+        }
+        result.sort(Comparator.comparing(NodeStatistics::nodeId));
+        return result;
+    }
+
+    /**
+     * Computes a percentile of the known (non-negative) values using the nearest-rank method.
+     *
+     * @return -1 if no values are known.
+     */
+    private static long percentile(Iterable<Sample> samples, ToLongFunction<Sample> property, int percentile) {
+        var values = new ArrayList<Long>();
+        for (var sample : samples) {
+            var value = property.applyAsLong(sample);
+            if (value >= 0) {
+                values.add(value);
+            }
+        }
+        if (values.isEmpty()) {
+            return -1;
+        }
+        values.sort(null);
+        var rank = (int) Math.ceil(percentile / 100.0 * values.size());
+        return values.get(Math.max(0, rank - 1));
+    }
+
+    private void compact() throws IOException {
+        var records = new ArrayList<List<String>>();
+        for (var nodeSamples : samples.values()) {
+            for (var sample : nodeSamples) {
+                records.add(sample.toRecord());
+            }
+        }
+        log.rewrite(records);
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            log.append(pendingRecords);
+            pendingRecords.clear();
+        } catch (IOException e) {
+            LOG.warn("Failed to update execution history " + log.getFile() + ": " + e);
+        }
+    }
+}
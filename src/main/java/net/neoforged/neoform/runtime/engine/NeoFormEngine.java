@@ -17,8 +17,11 @@ import net.neoforged.neoform.runtime.actions.RemapSrgClassesAction;
 import net.neoforged.neoform.runtime.actions.RemapSrgSourcesAction;
 import net.neoforged.neoform.runtime.actions.SplitResourcesFromClassesAction;
 import net.neoforged.neoform.runtime.artifacts.ArtifactManager;
+import net.neoforged.neoform.runtime.cache.CacheKey;
 import net.neoforged.neoform.runtime.cache.CacheKeyBuilder;
 import net.neoforged.neoform.runtime.cache.CacheManager;
+import net.neoforged.neoform.runtime.cache.CachedNodeOutputs;
+import net.neoforged.neoform.runtime.cache.CachedResults;
 import net.neoforged.neoform.runtime.cli.FileHashService;
 import net.neoforged.neoform.runtime.cli.LockManager;
 import net.neoforged.neoform.runtime.cli.ResultIds;
@@ -30,9 +33,12 @@ import net.neoforged.neoform.runtime.graph.ExecutionGraph;
 import net.neoforged.neoform.runtime.graph.ExecutionNode;
 import net.neoforged.neoform.runtime.graph.ExecutionNodeBuilder;
 import net.neoforged.neoform.runtime.graph.NodeExecutionException;
+import net.neoforged.neoform.runtime.graph.NodeInput;
 import net.neoforged.neoform.runtime.graph.NodeOutput;
 import net.neoforged.neoform.runtime.graph.NodeOutputType;
+import net.neoforged.neoform.runtime.graph.NodeState;
 import net.neoforged.neoform.runtime.graph.ResultRepresentation;
+import net.neoforged.neoform.runtime.graph.TopologicalSort;
 import net.neoforged.neoform.runtime.graph.transforms.GraphTransform;
 import net.neoforged.neoform.runtime.graph.transforms.ReplaceNodeOutput;
 import net.neoforged.neoform.runtime.utils.AnsiColor;
@@ -41,6 +47,7 @@ import net.neoforged.neoform.runtime.utils.Logger;
 import net.neoforged.neoform.runtime.utils.MavenCoordinate;
 import net.neoforged.neoform.runtime.utils.OsUtil;
 import net.neoforged.neoform.runtime.utils.StringUtil;
+import net.neoforged.neoform.runtime.utils.Tracer;
 import net.neoforged.problems.ProblemReporter;
 import org.jetbrains.annotations.Nullable;
 
@@ -48,9 +55,12 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
@@ -59,9 +69,11 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
@@ -70,15 +82,44 @@ import java.util.zip.ZipFile;
 public class NeoFormEngine implements AutoCloseable {
     private static final Logger LOG = Logger.create();
 
+    /**
+     * Duration assumed for nodes that we have no execution history for, in milliseconds.
+     */
+    private static final long DEFAULT_DURATION_ESTIMATE = 1000;
+
+    /**
+     * How often the memory usage of external processes started by nodes is sampled, in milliseconds.
+     */
+    private static final long PROCESS_SAMPLING_INTERVAL = 250;
+
     private final ArtifactManager artifactManager;
     private final FileHashService fileHashService;
     private final CacheManager cacheManager;
     private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
-    private final Map<ExecutionNode, CompletableFuture<Void>> executingNodes = new IdentityHashMap<>();
+    /**
+     * Cache key components contributed by node actions, which are computed ahead of time.
+     */
+    private final Map<ExecutionNode, CompletableFuture<CacheKeyBuilder>> precomputedActionCacheKeys = new ConcurrentHashMap<>();
+    /**
+     * Cache keys of nodes whose predecessors have completed, so they are computed only once to prefetch, restore
+     * and run the node.
+     */
+    private final Map<ExecutionNode, CacheKey> cacheKeys = new ConcurrentHashMap<>();
     private final LockManager lockManager;
     private final ExecutionGraph graph = new ExecutionGraph();
     private final BuildOptions buildOptions = new BuildOptions();
     private boolean verbose;
+    /**
+     * The maximum number of CPU cores that running nodes may use. Most nodes use a single core.
+     */
+    private int maxWorkers = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /**
+     * The maximum amount of memory that running nodes may use, which primarily limits how many
+     * external tools with large heaps run concurrently.
+     */
+    private long maxMemory = OsUtil.getTotalMemory() > 0 ? OsUtil.getTotalMemory() : Long.MAX_VALUE;
+    @Nullable
+    private ExecutionHistory executionHistory;
     private ProcessGeneration processGeneration;
 
     /**
@@ -532,86 +573,537 @@ public class NeoFormEngine implements AutoCloseable {
         builder.action(new DownloadFromVersionManifestAction(artifactManager, manifestEntry));
     }
 
-    private void triggerAndWait(Collection<ExecutionNode> nodes) throws InterruptedException {
-        record Pair(ExecutionNode node, CompletableFuture<Void> future) {
-        }
-        var pairs = nodes.stream().map(node -> new Pair(node, getWaitCondition(node))).toList();
-        for (var pair : pairs) {
+    /**
+     * Runs a single node. All of its predecessors must have completed already.
+     */
+    public void runNode(ExecutionNode node) throws InterruptedException {
+        try (var nodeSpan = Tracer.span("node", node.id())) {
+            var cacheKey = computeCacheKey(node);
+
+            // Nodes have already been started if restoring them failed before they were scheduled to run
+            if (node.getState() == NodeState.NOT_STARTED) {
+                node.start();
+            }
+
             try {
-                pair.future.get();
-            } catch (ExecutionException e) {
-                if (e.getCause() instanceof RuntimeException runtimeException) {
-                    throw runtimeException;
-                } else {
-                    throw new NodeExecutionException(pair.node, e.getCause());
+                // Restoring an entry that is ready to use only reads the cache, so readers of the same entry in
+                // this and other processes don't block each other. Everything else requires the exclusive lock.
+                try (var lock = lockManager.lockShared(cacheKey.toString())) {
+                    if (cacheManager.canRestoreInPlace(node, cacheKey) && restoreFromCache(node, cacheKey, nodeSpan, false)) {
+                        return;
+                    }
+                }
+
+                try (var lock = lockManager.lock(cacheKey.toString())) {
+                    if (restoreFromCache(node, cacheKey, nodeSpan, true)) {
+                        return;
+                    }
+
+                    var outputValues = new HashMap<String, Path>();
+                    var workspace = cacheManager.createWorkspace(node.id());
+                    node.action().run(new NodeProcessingEnvironment(workspace, node, outputValues));
+
+                    // Only cache if all outputs are in the workdir, otherwise
+                    // we assume some of them are artifacts and will always come from the
+                    // artifact cache
+                    if (outputValues.values().stream().allMatch(p -> p.startsWith(workspace))) {
+                        try (var ignored = Tracer.span("cache", "Save " + node.id())) {
+                            saveOutputs(node, cacheKey, outputValues);
+                        }
+                    }
+                    recordNodeOutputs(cacheKey, outputValues);
+                    node.complete(outputValues, false);
                 }
+            } catch (Throwable t) {
+                node.fail();
+                nodeSpan.arg("failed", true);
+                throw new NodeExecutionException(node, t);
             }
         }
     }
 
-    private synchronized CompletableFuture<Void> getWaitCondition(ExecutionNode node) {
-        var future = executingNodes.get(node);
-        if (future == null) {
-            future = CompletableFuture.runAsync(() -> {
-                var originalName = Thread.currentThread().getName();
-                try {
-                    Thread.currentThread().setName("run-" + node.id());
-                    runNode(node);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                } finally {
-                    Thread.currentThread().setName(originalName);
+    /**
+     * Completes a node from the cache, if its outputs can be restored as-is. This happens before resources are
+     * reserved to run the node, so it only takes the shared lock of the cache key, and never decompresses, imports
+     * or downloads the outputs. All of its predecessors must have completed already.
+     *
+     * @return False if the node has to be run.
+     */
+    public boolean tryRestoreNode(ExecutionNode node) throws InterruptedException {
+        var cacheKey = computeCacheKey(node);
+        if (!cacheManager.canRestoreInPlace(node, cacheKey)) {
+            return false;
+        }
+
+        try (var nodeSpan = Tracer.span("node", node.id())) {
+            node.start();
+            try (var lock = lockManager.lockShared(cacheKey.toString())) {
+                if (cacheManager.canRestoreInPlace(node, cacheKey) && restoreFromCache(node, cacheKey, nodeSpan, false)) {
+                    return true;
                 }
-            }, executor);
-            executingNodes.put(node, future);
+            } catch (Throwable t) {
+                node.fail();
+                nodeSpan.arg("failed", true);
+                throw new NodeExecutionException(node, t);
+            }
         }
-        return future;
+        return false;
     }
 
-    public void runNode(ExecutionNode node) throws InterruptedException {
-        // Wait for pre-requisites
-        Set<ExecutionNode> dependencies = Collections.newSetFromMap(new IdentityHashMap<>());
-        for (var input : node.inputs().values()) {
-            dependencies.addAll(input.getNodeDependencies());
+    /**
+     * Computes the cache key of a node, or returns the key computed before. All of its predecessors must have
+     * completed already.
+     */
+    private CacheKey computeCacheKey(ExecutionNode node) throws InterruptedException {
+        var cacheKey = cacheKeys.get(node);
+        if (cacheKey != null) {
+            return cacheKey;
         }
-        triggerAndWait(dependencies);
 
-        // Prep node output cache
-        var ck = createCacheKeyBuilder(node.id());
-        for (var entry : node.inputs().entrySet()) {
-            entry.getValue().collectCacheKeyComponent(ck);
+        var hashingStart = System.nanoTime();
+        try (var ignored = Tracer.span("cache-key", "Cache key of " + node.id())) {
+            var inputsCacheKey = createCacheKeyBuilder(node.id());
+            for (var entry : node.inputs().entrySet()) {
+                entry.getValue().collectCacheKeyComponent(inputsCacheKey);
+            }
+            var actionCacheKey = takePrecomputedActionCacheKey(node);
+            if (actionCacheKey == null) {
+                actionCacheKey = createCacheKeyBuilder(node.id());
+                node.action().computeCacheKey(actionCacheKey);
+            }
+            cacheKey = buildCacheKey(node, inputsCacheKey, actionCacheKey);
         }
-        node.action().computeCacheKey(ck);
+        cacheManager.getMetrics().recordHashing(node.id(), System.nanoTime() - hashingStart);
 
-        node.start();
-        var cacheKey = ck.build();
+        var existing = cacheKeys.putIfAbsent(node, cacheKey);
+        if (existing != null) {
+            return existing; // Computed concurrently to prefetch the outputs of the node
+        }
         if (verbose) {
-            LOG.println(" Cache Key: " + cacheKey);
+            LOG.println(" Cache Key of " + node.id() + ": " + cacheKey);
             LOG.println(AnsiColor.MUTED + StringUtil.indent(cacheKey.describe(), 2) + AnsiColor.RESET);
         }
+        return cacheKey;
+    }
 
-        try (var lock = lockManager.lock(cacheKey.toString())) {
-            var outputValues = new HashMap<String, Path>();
+    /**
+     * Completes the node with its outputs from the cache, if they are cached.
+     *
+     * @param exclusive If the exclusive lock for the cache key is held. Otherwise, corrupt outputs are not
+     *                  quarantined, and the caller has to retry with the exclusive lock.
+     */
+    private boolean restoreFromCache(ExecutionNode node, CacheKey cacheKey, Tracer.Span nodeSpan, boolean exclusive) throws IOException {
+        var outputValues = new HashMap<String, Path>();
+
+        boolean restored;
+        try (var ignored = Tracer.span("cache", "Restore " + node.id())) {
+            restored = cacheManager.restoreOutputsFromCache(node, cacheKey, outputValues);
+        }
+        if (restored && cacheManager.isVerifyOutputs()) {
+            try (var ignored = Tracer.span("cache", "Verify " + node.id())) {
+                restored = verifyRestoredOutputs(cacheKey, outputValues, exclusive);
+            }
+        }
+        if (!restored) {
+            return false;
+        }
+
+        seedRecordedOutputHashes(cacheKey, outputValues);
+        recordNodeOutputs(cacheKey, outputValues);
+        node.complete(outputValues, true);
+        nodeSpan.arg("fromCache", true);
+        return true;
+    }
+
+    /**
+     * Moves the outputs of a node into the cache. Their hashes are computed beforehand, so the cache can store them
+     * by content, and carried over to the paths in the cache, so they don't need to be hashed again.
+     */
+    private void saveOutputs(ExecutionNode node, CacheKey cacheKey, HashMap<String, Path> outputValues) throws IOException {
+        if (cacheManager.isDisabled()) {
+            return;
+        }
+
+        var outputHashes = new HashMap<String, String>(outputValues.size());
+        var hashingStart = System.nanoTime();
+        for (var entry : outputValues.entrySet()) {
+            if (Files.isRegularFile(entry.getValue())) {
+                outputHashes.put(entry.getKey(), fileHashService.getHashValue(entry.getValue()));
+            }
+        }
+        cacheManager.getMetrics().recordHashing(cacheKey.type(), System.nanoTime() - hashingStart);
+        cacheManager.saveOutputs(node, cacheKey, outputValues, outputHashes);
+        for (var entry : outputHashes.entrySet()) {
+            fileHashService.setHashValue(outputValues.get(entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * Verifies the content of outputs restored from the cache against the hashes recorded when they were saved,
+     * in parallel. Outputs with their recorded size and modification time are not read again, and for others the
+     * file hash index is consulted first, so only outputs that changed since they were last hashed are read.
+     * If any output is corrupt, the cache entry is quarantined, unless {@code quarantine} is false. Entries that are
+     * used in place from a read-only fallback cache are never quarantined, but treated as a cache miss instead.
+     *
+     * @return False if the restored outputs cannot be used.
+     */
+    private boolean verifyRestoredOutputs(CacheKey cacheKey, Map<String, Path> outputValues, boolean quarantine) throws IOException {
+        var recordedOutputs = cacheManager.getCachedNodeOutputs(cacheKey);
+        if (recordedOutputs == null) {
+            return true; // Nothing to verify against
+        }
+
+        var corruptOutputs = outputValues.entrySet().parallelStream()
+                .filter(entry -> {
+                    var recordedOutput = recordedOutputs.outputs().get(entry.getKey());
+                    if (recordedOutput == null
+                        || !Path.of(recordedOutput.path()).equals(entry.getValue().toAbsolutePath())
+                        || recordedOutput.isUnmodified()) {
+                        return false;
+                    }
+                    try {
+                        return !fileHashService.getHashValue(entry.getValue()).equals(recordedOutput.hash());
+                    } catch (IOException e) {
+                        return true;
+                    }
+                })
+                .map(Map.Entry::getKey)
+                .toList();
+        if (corruptOutputs.isEmpty()) {
+            return true;
+        } else if (!quarantine) {
+            outputValues.clear();
+            return false;
+        }
+
+        if (!outputValues.values().stream().allMatch(cacheManager::isIntermediateResult)) {
+            LOG.println("Outputs " + corruptOutputs + " of " + cacheKey + " in a fallback cache do not match their recorded hashes");
+            outputValues.clear();
+            return false;
+        }
+
+        LOG.println("Outputs " + corruptOutputs + " of " + cacheKey + " in the cache do not match their recorded hashes");
+        var corruptHashes = corruptOutputs.stream().map(id -> recordedOutputs.outputs().get(id).hash()).toList();
+        cacheManager.quarantine(cacheKey, outputValues.values(), corruptHashes);
+        outputValues.clear();
+        return false;
+    }
 
-            if (cacheManager.restoreOutputsFromCache(node, cacheKey, outputValues)) {
-                node.complete(outputValues, true);
+    /**
+     * Uses the recorded hashes of outputs restored from the cache, if they are unchanged, to avoid hashing them again.
+     */
+    private void seedRecordedOutputHashes(CacheKey cacheKey, Map<String, Path> outputValues) {
+        try {
+            var recordedOutputs = cacheManager.getCachedNodeOutputs(cacheKey);
+            if (recordedOutputs == null) {
                 return;
             }
+            for (var entry : outputValues.entrySet()) {
+                var recordedOutput = recordedOutputs.outputs().get(entry.getKey());
+                if (recordedOutput != null
+                    && Path.of(recordedOutput.path()).equals(entry.getValue().toAbsolutePath())
+                    && recordedOutput.isUnmodified()) {
+                    fileHashService.setHashValue(entry.getValue(), recordedOutput.hash());
+                }
+            }
+        } catch (IOException e) {
+            LOG.println("Failed to read recorded outputs of " + cacheKey + ": " + e);
+        }
+    }
+
+    /**
+     * Records the outputs of a node along with their hashes, which allows {@link #completeFromCache} to compute
+     * the cache keys of downstream nodes in later runs without running or restoring this node.
+     */
+    private void recordNodeOutputs(CacheKey cacheKey, Map<String, Path> outputValues) {
+        if (cacheManager.hasCachedNodeOutputs(cacheKey) || cacheManager.isDisabled()) {
+            return;
+        }
+        try {
+            var outputs = new HashMap<String, CachedNodeOutputs.Output>(outputValues.size());
+            for (var entry : outputValues.entrySet()) {
+                var path = entry.getValue();
+                outputs.put(entry.getKey(), CachedNodeOutputs.Output.of(path, fileHashService.getHashValue(path)));
+            }
+            cacheManager.saveNodeOutputs(cacheKey, new CachedNodeOutputs(outputs));
+        } catch (IOException e) {
+            LOG.println("Failed to record outputs of " + cacheKey + ": " + e);
+        }
+    }
 
-            var workspace = cacheManager.createWorkspace(node.id());
-            node.action().run(new NodeProcessingEnvironment(workspace, node, outputValues));
+    /**
+     * Evaluates the graph top-down, starting at the given nodes: if the cache key of a node can be computed from the
+     * recorded outputs of its (transitive) dependencies, and outputs for that key have been recorded, the node is
+     * completed using them. Only for nodes where this is not possible, we descend into their dependencies.
+     * <p>
+     * On a fully warm cache, this only touches the outputs of the requested nodes. The outputs of their dependencies
+     * are not needed, since their recorded hashes are sufficient to compute the cache keys.
+     *
+     * @return The recorded outputs of all nodes that were resolved, including nodes that were not completed.
+     */
+    private Map<ExecutionNode, ResolvedNode> completeFromCache(Collection<ExecutionNode> targets) throws InterruptedException {
+        var resolvedOutputs = new IdentityHashMap<ExecutionNode, ResolvedNode>();
+
+        Set<ExecutionNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        var queue = new ArrayDeque<>(targets);
+        while (!queue.isEmpty()) {
+            var node = queue.poll();
+            if (node.getState() != NodeState.NOT_STARTED || !visited.add(node)) {
+                continue;
+            }
 
-            // Only cache if all outputs are in the workdir, otherwise
-            // we assume some of them are artifacts and will always come from the
-            // artifact cache
-            if (outputValues.values().stream().allMatch(p -> p.startsWith(workspace))) {
-                cacheManager.saveOutputs(node, cacheKey, outputValues);
+            ResolvedNode resolved;
+            boolean unchanged;
+            try (var ignored = Tracer.span("cache", "Resolve " + node.id())) {
+                resolved = resolveFromCache(node, resolvedOutputs);
+                if (resolved != null) {
+                    // Mark it as used before checking the outputs, so they are not evicted afterward
+                    try {
+                        cacheManager.markNodeOutputsUsed(resolved.cacheKey);
+                    } catch (IOException e) {
+                        LOG.println("Failed to mark " + resolved.cacheKey + " as used: " + e);
+                    }
+                }
+                unchanged = resolved != null && isRecordedOutputUnchanged(node, resolved);
+            }
+            if (!unchanged) {
+                queue.addAll(node.getPredecessors());
+                continue;
+            }
+
+            var outputValues = new HashMap<String, Path>();
+            for (var entry : resolved.outputs.entrySet()) {
+                outputValues.put(entry.getKey(), Path.of(entry.getValue().path()));
+            }
+            node.start();
+            node.complete(outputValues, true);
+        }
+        return resolvedOutputs;
+    }
+
+    /**
+     * Checks that the recorded outputs of a node still exist and are unchanged. Files whose size or timestamp have
+     * changed are hashed again to check if their content is still the same.
+     */
+    private boolean isRecordedOutputUnchanged(ExecutionNode node, ResolvedNode resolved) {
+        for (var output : resolved.outputs.values()) {
+            if (!isRecordedOutputUnchanged(node, output)) {
+                return false;
             }
-            node.complete(outputValues, false);
-        } catch (Throwable t) {
-            node.fail();
-            throw new NodeExecutionException(node, t);
         }
+        return true;
+    }
+
+    private boolean isRecordedOutputUnchanged(ExecutionNode node, CachedNodeOutputs.Output output) {
+        var path = Path.of(output.path());
+        try {
+            if (!output.isUnmodified() && (!Files.exists(path) || !fileHashService.getHashValue(path).equals(output.hash()))) {
+                if (verbose) {
+                    LOG.println("Recorded output " + path + " of " + node.id() + " has changed");
+                }
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        fileHashService.setHashValue(path, output.hash());
+        return true;
+    }
+
+    /**
+     * Combines the cache key components of the inputs of a node with the ones contributed by its action. The outputs
+     * of nodes are found in the cache by keys built this way, whether the input components are computed from
+     * the actual inputs, or from outputs recorded for the predecessors.
+     */
+    private CacheKey buildCacheKey(ExecutionNode node, CacheKeyBuilder inputsCacheKey, CacheKeyBuilder actionCacheKey) {
+        var ck = createCacheKeyBuilder(node.id());
+        ck.addAll(inputsCacheKey);
+        ck.addAll(actionCacheKey);
+        return ck.build();
+    }
+
+    private record ResolvedNode(CacheKey cacheKey, Map<String, CachedNodeOutputs.Output> outputs) {
+    }
+
+    /**
+     * Tries to compute the cache key of a node and find recorded outputs for it, without running any nodes.
+     *
+     * @return Null if the cache key cannot be computed, or no valid outputs have been recorded for it.
+     */
+    @Nullable
+    private ResolvedNode resolveFromCache(ExecutionNode node, Map<ExecutionNode, ResolvedNode> resolvedNodes) throws InterruptedException {
+        if (resolvedNodes.containsKey(node)) {
+            return resolvedNodes.get(node);
+        }
+        var resolved = resolveFromCacheUncached(node, resolvedNodes);
+        resolvedNodes.put(node, resolved);
+        return resolved;
+    }
+
+    @Nullable
+    private ResolvedNode resolveFromCacheUncached(ExecutionNode node, Map<ExecutionNode, ResolvedNode> resolvedNodes) throws InterruptedException {
+        var actionCacheKey = precomputedActionCacheKeys.get(node);
+        if (actionCacheKey == null) {
+            return null;
+        }
+
+        var inputsCacheKey = createCacheKeyBuilder(node.id());
+        for (var entry : node.inputs().entrySet()) {
+            if (!(entry.getValue() instanceof NodeInput.NodeInputForOutput inputForOutput)) {
+                return null;
+            }
+            var output = inputForOutput.getOutput();
+            var upstream = output.getNode();
+
+            Path path;
+            String hash;
+            try {
+                if (upstream.getState() == NodeState.COMPLETED) {
+                    path = output.getResultPath();
+                    hash = fileHashService.getHashValue(path);
+                } else {
+                    var resolvedUpstream = resolveFromCache(upstream, resolvedNodes);
+                    if (resolvedUpstream == null) {
+                        return null;
+                    }
+                    // The recorded hash is only trustworthy while the output it was recorded for is unchanged.
+                    // Otherwise, the upstream node has to run again, and this node is evaluated bottom-up.
+                    var recordedOutput = resolvedUpstream.outputs.get(output.id());
+                    if (recordedOutput == null || !isRecordedOutputUnchanged(upstream, recordedOutput)) {
+                        return null;
+                    }
+                    path = Path.of(recordedOutput.path());
+                    hash = recordedOutput.hash();
+                }
+            } catch (IOException e) {
+                return null;
+            }
+            inputsCacheKey.add(entry.getKey(), hash, CacheKeyBuilder.prettifyPath(path));
+        }
+        CacheKey cacheKey;
+        try {
+            cacheKey = buildCacheKey(node, inputsCacheKey, actionCacheKey.get());
+        } catch (ExecutionException e) {
+            return null;
+        }
+
+        CachedNodeOutputs cachedOutputs;
+        try {
+            cachedOutputs = cacheManager.getCachedNodeOutputs(cacheKey);
+        } catch (IOException e) {
+            LOG.println("Failed to read recorded outputs of " + cacheKey + ": " + e);
+            return null;
+        }
+        if (cachedOutputs == null || !cachedOutputs.outputs().keySet().equals(node.outputs().keySet())) {
+            return null;
+        }
+
+        return new ResolvedNode(cacheKey, cachedOutputs.outputs());
+    }
+
+    /**
+     * The part of a node's cache key that is contributed by its action does not depend on the outputs of other nodes.
+     * It often requires hashing files (i.e. classpaths, access transformers) though, so we compute it for all nodes
+     * in parallel before they run, while the nodes they depend on are still running.
+     */
+    private void precomputeActionCacheKeys(Collection<ExecutionNode> nodes) {
+        for (var node : nodes) {
+            precomputedActionCacheKeys.computeIfAbsent(node, ignored -> CompletableFuture.supplyAsync(() -> {
+                var ck = createCacheKeyBuilder(node.id());
+                node.action().computeCacheKey(ck);
+                return ck;
+            }, executor));
+        }
+    }
+
+    /**
+     * Starts downloading the outputs of nodes from the remote cache, if all nodes they depend on have completed,
+     * so their cache keys are known. This overlaps the downloads with running other nodes, which then reuse the
+     * cache keys computed here.
+     */
+    private void prefetchFromRemoteCache(Collection<ExecutionNode> nodes) {
+        if (!cacheManager.hasRemoteBackend()) {
+            return;
+        }
+        for (var node : nodes) {
+            if (node.getState() != NodeState.NOT_STARTED
+                || !node.getPredecessors().stream().allMatch(p -> p.getState() == NodeState.COMPLETED)) {
+                continue;
+            }
+            var actionCacheKey = precomputedActionCacheKeys.get(node);
+            if (actionCacheKey == null) {
+                continue;
+            }
+            actionCacheKey.thenRunAsync(() -> {
+                try {
+                    cacheManager.prefetch(node, computeCacheKey(node));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, executor).exceptionally(e -> {
+                if (verbose) {
+                    LOG.println("Failed to prefetch " + node.id() + " from remote cache: " + e);
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @return Null if the cache key of the action was not precomputed, or computing it failed.
+     * In that case, it is computed again to report errors in the context of the node.
+     */
+    @Nullable
+    private CacheKeyBuilder takePrecomputedActionCacheKey(ExecutionNode node) throws InterruptedException {
+        var future = precomputedActionCacheKeys.remove(node);
+        if (future == null) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private NodeScheduler createScheduler(Map<ExecutionNode, Set<ExecutionNode>> successors) {
+        var budget = new ResourceBudget(maxMemory, maxWorkers);
+        return new NodeScheduler(executor, budget, this::estimateDuration, new NodeScheduler.NodeRunner() {
+            @Override
+            public void run(ExecutionNode node) throws InterruptedException {
+                runNode(node);
+                onNodeCompleted(node);
+            }
+
+            @Override
+            public boolean tryComplete(ExecutionNode node) throws InterruptedException {
+                if (!tryRestoreNode(node)) {
+                    return false;
+                }
+                onNodeCompleted(node);
+                return true;
+            }
+
+            private void onNodeCompleted(ExecutionNode node) {
+                prefetchFromRemoteCache(successors.getOrDefault(node, Set.of()));
+                if (executionHistory != null) {
+                    executionHistory.record(node);
+                }
+            }
+        });
+    }
+
+    /**
+     * Estimates how long a node will take to run, based on previous runs, in milliseconds.
+     */
+    private long estimateDuration(ExecutionNode node) {
+        if (executionHistory != null) {
+            var estimate = executionHistory.estimateDuration(node.id());
+            if (estimate.isPresent()) {
+                return estimate.getAsLong();
+            }
+        }
+        return DEFAULT_DURATION_ESTIMATE;
     }
 
     public ArtifactManager getArtifactManager() {
@@ -629,16 +1121,194 @@ public class NeoFormEngine implements AutoCloseable {
             nodes.add(nodeOutput.getNode());
         }
 
-        triggerAndWait(nodes);
+        var requiredNodes = NodeScheduler.collectDependencies(nodes, true);
+        precomputeActionCacheKeys(NodeScheduler.collectDependencies(nodes, false));
+        try {
+            // The result cache can only be used if none of the required nodes have run yet
+            CacheKey resultsCacheKey = null;
+            if (!cacheManager.isDisabled() && requiredNodes.stream().allMatch(node -> node.getState() == NodeState.NOT_STARTED)) {
+                Map<String, Path> cachedResults = null;
+                try (var ignored = Tracer.span("cache", "Restore results")) {
+                    resultsCacheKey = computeResultsCacheKey(requiredNodes, ids);
+                    if (resultsCacheKey != null) {
+                        cachedResults = restoreResultsFromCache(resultsCacheKey);
+                    }
+                }
+                if (cachedResults != null) {
+                    LOG.println("All requested results are up-to-date");
+                    return cachedResults;
+                }
+            }
 
-        // Collect results paths
-        var results = new HashMap<String, Path>();
-        for (String id : ids) {
-            var nodeOutput = graph.getResult(id);
-            results.put(id, nodeOutput.getResultPath());
-            // TODO: move to actual result cache
+            Map<ExecutionNode, ResolvedNode> resolvedNodes = Map.of();
+            if (!cacheManager.isDisabled()) {
+                resolvedNodes = completeFromCache(nodes);
+            }
+
+            prefetchFromRemoteCache(requiredNodes);
+            createScheduler(TopologicalSort.getSuccessors(requiredNodes)).run(nodes);
+
+            // Collect results paths
+            var results = new HashMap<String, Path>();
+            for (String id : ids) {
+                var nodeOutput = graph.getResult(id);
+                results.put(id, nodeOutput.getResultPath());
+            }
+
+            if (resultsCacheKey != null) {
+                saveResultsToCache(resultsCacheKey, requiredNodes, resolvedNodes, results);
+            }
+            return results;
+        } finally {
+            precomputedActionCacheKeys.clear();
+            cacheKeys.clear();
+        }
+    }
+
+    /**
+     * Computes a cache key for the requested results that covers all inputs of the graph, without running any nodes.
+     * Since the outputs of nodes are fully determined by their cache keys, this includes the cache key components of
+     * all node actions and how nodes are connected. Outputs of nodes that are not stored in the cache of intermediate
+     * results cannot be covered by the key and are checked separately in {@link #restoreResultsFromCache}.
+     *
+     * @return Null if a cache key could not be computed.
+     */
+    @Nullable
+    private CacheKey computeResultsCacheKey(Collection<ExecutionNode> requiredNodes, String[] ids) throws InterruptedException {
+        var ck = createCacheKeyBuilder("results");
+        var sortedNodes = requiredNodes.stream().sorted(Comparator.comparing(ExecutionNode::id)).toList();
+        for (var node : sortedNodes) {
+            CacheKeyBuilder actionCacheKey;
+            try {
+                actionCacheKey = precomputedActionCacheKeys.get(node).get();
+            } catch (ExecutionException e) {
+                actionCacheKey = computeActionCacheKeyReferencingNodeOutputs(node);
+                if (actionCacheKey == null) {
+                    return null;
+                }
+            }
+            ck.addAll(node.id() + " ", actionCacheKey);
+            for (var entry : node.inputs().entrySet()) {
+                if (!(entry.getValue() instanceof NodeInput.NodeInputForOutput inputForOutput)) {
+                    return null;
+                }
+                var output = inputForOutput.getOutput();
+                ck.add(node.id() + " input " + entry.getKey(), output.getNode().id() + "." + output.id());
+            }
+        }
+        for (var id : Arrays.stream(ids).sorted().toList()) {
+            var output = graph.getResult(id);
+            ck.add("result " + id, output.getNode().id() + "." + output.id());
+        }
+        ck.add("java version", javaExecutableInformation != null ? String.valueOf(javaExecutableInformation.majorVersion()) : "unknown");
+        return ck.build();
+    }
+
+    /**
+     * Precomputing the cache key of an action fails if it references outputs of other nodes that have not run yet,
+     * i.e. on a classpath. For the results cache key, it is sufficient to reference which outputs these are, since
+     * an action can only use outputs of its (transitive) dependencies, which are covered by the key as well.
+     *
+     * @return Null if the cache key of the action cannot be computed without running other nodes.
+     */
+    @Nullable
+    private CacheKeyBuilder computeActionCacheKeyReferencingNodeOutputs(ExecutionNode node) {
+        var ck = createCacheKeyBuilder(node.id());
+        ck.setReferenceNodeOutputs(true);
+        try {
+            node.action().computeCacheKey(ck);
+        } catch (RuntimeException e) {
+            if (verbose) {
+                LOG.println("Failed to compute the cache key of " + node.id() + " for the results cache: " + e);
+            }
+            return null;
+        }
+        return ck;
+    }
+
+    @Nullable
+    private Map<String, Path> restoreResultsFromCache(CacheKey cacheKey) {
+        try {
+            var cachedResults = cacheManager.restoreResultsFromCache(cacheKey);
+            if (cachedResults == null) {
+                return null;
+            }
+
+            for (var entry : cachedResults.externalFiles().entrySet()) {
+                var path = Path.of(entry.getKey());
+                if (!Files.exists(path) || !fileHashService.getHashValue(path).equals(entry.getValue())) {
+                    if (verbose) {
+                        LOG.println("Not using cached results since " + path + " has changed");
+                    }
+                    return null;
+                }
+            }
+
+            var results = new HashMap<String, Path>();
+            for (var entry : cachedResults.results().entrySet()) {
+                var path = Path.of(entry.getValue());
+                if (!Files.exists(path)) {
+                    if (verbose) {
+                        LOG.println("Not using cached results since " + path + " no longer exists");
+                    }
+                    return null;
+                }
+                results.put(entry.getKey(), path);
+            }
+
+            cacheManager.markResultsUsed(cacheKey, results.values());
+            return results;
+        } catch (IOException e) {
+            LOG.println("Failed to restore cached results for " + cacheKey + ": " + e);
+            return null;
+        }
+    }
+
+    private void saveResultsToCache(CacheKey cacheKey,
+                                    Collection<ExecutionNode> requiredNodes,
+                                    Map<ExecutionNode, ResolvedNode> resolvedNodes,
+                                    Map<String, Path> results) {
+        try {
+            var externalFiles = new HashMap<String, String>();
+            for (var node : requiredNodes) {
+                // Nodes may not have run if the nodes depending on them were completed from the cache,
+                // but their recorded outputs were used to compute the cache keys of those nodes
+                if (node.getState() != NodeState.COMPLETED) {
+                    var resolved = resolvedNodes.get(node);
+                    if (resolved == null) {
+                        if (verbose) {
+                            LOG.println("Not caching results since the outputs of " + node.id() + " are unknown");
+                        }
+                        return;
+                    }
+                    for (var output : resolved.outputs.values()) {
+                        if (!cacheManager.isIntermediateResult(Path.of(output.path()))) {
+                            externalFiles.put(output.path(), output.hash());
+                        }
+                    }
+                    continue;
+                }
+                for (var output : node.outputs().values()) {
+                    var path = output.getResultPath();
+                    if (!cacheManager.isIntermediateResult(path)) {
+                        externalFiles.put(path.toAbsolutePath().toString(), fileHashService.getHashValue(path));
+                    }
+                }
+            }
+            for (var path : results.values()) {
+                if (!cacheManager.isIntermediateResult(path)) {
+                    externalFiles.put(path.toAbsolutePath().toString(), fileHashService.getHashValue(path));
+                }
+            }
+
+            var resultPaths = new HashMap<String, String>();
+            for (var entry : results.entrySet()) {
+                resultPaths.put(entry.getKey(), entry.getValue().toAbsolutePath().toString());
+            }
+            cacheManager.saveResults(cacheKey, new CachedResults(resultPaths, externalFiles));
+        } catch (IOException e) {
+            LOG.println("Failed to save results " + cacheKey + " to the cache: " + e);
         }
-        return results;
     }
 
     public void dumpGraph(PrintWriter printWriter) {
@@ -671,6 +1341,28 @@ public class NeoFormEngine implements AutoCloseable {
         this.verbose = verbose;
     }
 
+    public void setMaxWorkers(int maxWorkers) {
+        if (maxWorkers < 1) {
+            throw new IllegalArgumentException("maxWorkers must be at least 1: " + maxWorkers);
+        }
+        this.maxWorkers = maxWorkers;
+    }
+
+    public void setMaxMemory(long maxMemory) {
+        if (maxMemory <= 0) {
+            throw new IllegalArgumentException("maxMemory must be positive: " + maxMemory);
+        }
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Sets the history of previous node executions, which is used to prioritize nodes on the critical path.
+     * Nodes executed by this engine are recorded in the history.
+     */
+    public void setExecutionHistory(@Nullable ExecutionHistory executionHistory) {
+        this.executionHistory = executionHistory;
+    }
+
     public CacheManager getCacheManager() {
         return cacheManager;
     }
@@ -878,6 +1570,15 @@ public class NeoFormEngine implements AutoCloseable {
             return verbose;
         }
 
+        @Override
+        public int waitForProcess(Process process) throws InterruptedException {
+            // The peak RSS is a high-water mark, so the last sample taken before the process exits is the highest
+            do {
+                node.recordChildProcessPeakRss(OsUtil.getPeakResidentSetSize(process.pid()));
+            } while (!process.waitFor(PROCESS_SAMPLING_INTERVAL, TimeUnit.MILLISECONDS));
+            return process.exitValue();
+        }
+
         @Override
         public ProblemReporter getProblemReporter() {
             return problemReporter;
@@ -0,0 +1,266 @@
+package net.neoforged.neoform.runtime.engine;
+
+import net.neoforged.neoform.runtime.graph.ExecutionNode;
+import net.neoforged.neoform.runtime.graph.ExecutionNodeAction;
+import net.neoforged.neoform.runtime.graph.NodeExecutionException;
+import net.neoforged.neoform.runtime.graph.NodeResources;
+import net.neoforged.neoform.runtime.graph.NodeState;
+import net.neoforged.neoform.runtime.graph.TopologicalSort;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * Runs a set of nodes along with all of their transitive dependencies.
+ * <p>
+ * A node is started once all of its predecessors have completed. When more nodes are ready than are allowed
+ * to run concurrently, the node with the longest estimated remaining path through the graph is started first.
+ * This ensures that long chains of nodes (i.e. decompile, patch and recompile) are started as early as
+ * possible, while short independent nodes fill in the gaps.
+ * <p>
+ * Nodes are only started if the {@linkplain ExecutionNodeAction#getResources() resources} they declare
+ * fit into the {@link ResourceBudget}. Nodes that do not fit stay queued until enough running nodes have
+ * completed, while lower priority nodes that do fit may be started in the meantime.
+ * <p>
+ * Before a ready node is queued, the runner is given the chance to {@linkplain NodeRunner#tryComplete complete}
+ * it without reserving any resources, which is used to restore nodes from the cache, since that only needs I/O.
+ * Queued nodes are only started once no such attempt is pending, so they are still started in order of priority.
+ */
+final class NodeScheduler {
+    /**
+     * Callback to actually run a single node, once all of its predecessors have completed.
+     */
+    @FunctionalInterface
+    interface NodeRunner {
+        void run(ExecutionNode node) throws InterruptedException;
+
+        /**
+         * Completes a node without running it, if that is possible without using significant resources.
+         *
+         * @return true if the node was completed
+         */
+        default boolean tryComplete(ExecutionNode node) throws InterruptedException {
+            return false;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final ResourceBudget budget;
+    private final ToLongFunction<ExecutionNode> durationEstimator;
+    private final NodeRunner runner;
+
+    /**
+     * @param completed False if the runner could not complete the node without running it.
+     */
+    private record Completion(ExecutionNode node, boolean completed, Throwable error) {
+    }
+
+    NodeScheduler(ExecutorService executor,
+                  ResourceBudget budget,
+                  ToLongFunction<ExecutionNode> durationEstimator,
+                  NodeRunner runner) {
+        this.executor = executor;
+        this.budget = budget;
+        this.durationEstimator = durationEstimator;
+        this.runner = runner;
+    }
+
+    /**
+     * Runs the given nodes and all of their dependencies that have not been completed yet.
+     * Returns once all of them have completed, or after the first failure once all nodes that were already
+     * running at that point have finished.
+     */
+    public void run(Collection<ExecutionNode> targets) throws InterruptedException {
+        var nodes = collectDependencies(targets, false);
+        if (nodes.isEmpty()) {
+            return;
+        }
+
+        var sortedNodes = TopologicalSort.topologicalSort(nodes);
+        var successors = TopologicalSort.getSuccessors(sortedNodes);
+        var priorities = computePriorities(sortedNodes, successors);
+
+        // Count the predecessors that still have to complete before a node can start
+        BlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
+        var remainingPredecessors = new IdentityHashMap<ExecutionNode, Integer>();
+        var pendingAttempts = 0;
+        for (var node : sortedNodes) {
+            var count = (int) node.getPredecessors().stream().filter(successors::containsKey).count();
+            if (count == 0) {
+                dispatchAttempt(node, completions);
+                pendingAttempts++;
+            } else {
+                remainingPredecessors.put(node, count);
+            }
+        }
+
+        var readyNodes = new PriorityQueue<ExecutionNode>(
+                Comparator.<ExecutionNode>comparingLong(priorities::get).reversed()
+        );
+        Map<ExecutionNode, NodeResources> reservedResources = new IdentityHashMap<>();
+        var remaining = sortedNodes.size();
+        Completion failure = null;
+
+        while (remaining > 0) {
+            // Stop dispatching new nodes after the first failure
+            if (failure == null && pendingAttempts == 0) {
+                dispatchReadyNodes(readyNodes, reservedResources, completions);
+            }
+
+            if (pendingAttempts == 0 && reservedResources.isEmpty()) {
+                break;
+            }
+
+            var completion = completions.take();
+            var resources = reservedResources.remove(completion.node);
+            if (resources != null) {
+                budget.release(resources);
+            } else {
+                pendingAttempts--;
+            }
+
+            if (completion.error == null && !completion.completed) {
+                readyNodes.add(completion.node);
+                continue;
+            }
+
+            remaining--;
+
+            if (completion.error != null) {
+                if (failure == null) {
+                    failure = completion;
+                }
+                continue;
+            }
+
+            for (var successor : successors.get(completion.node)) {
+                if (remainingPredecessors.merge(successor, -1, Integer::sum) == 0) {
+                    remainingPredecessors.remove(successor);
+                    if (failure == null) {
+                        dispatchAttempt(successor, completions);
+                        pendingAttempts++;
+                    }
+                }
+            }
+        }
+
+        if (failure != null) {
+            if (failure.error instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (failure.error instanceof Error error) {
+                throw error;
+            } else {
+                throw new NodeExecutionException(failure.node, failure.error);
+            }
+        } else if (remaining > 0) {
+            throw new IllegalStateException("Failed to run " + remaining + " nodes since their dependencies never completed.");
+        }
+    }
+
+    /**
+     * Starts ready nodes in order of their priority, as long as their resources fit into the budget.
+     */
+    private void dispatchReadyNodes(PriorityQueue<ExecutionNode> readyNodes,
+                                    Map<ExecutionNode, NodeResources> reservedResources,
+                                    BlockingQueue<Completion> completions) {
+        var deferredNodes = new ArrayList<ExecutionNode>();
+        ExecutionNode node;
+        while ((node = readyNodes.poll()) != null) {
+            var resources = node.action().getResources();
+            if (budget.tryAcquire(resources)) {
+                reservedResources.put(node, resources);
+                dispatch(node, completions);
+            } else {
+                deferredNodes.add(node);
+            }
+        }
+        readyNodes.addAll(deferredNodes);
+    }
+
+    private void dispatch(ExecutionNode node, BlockingQueue<Completion> completions) {
+        execute(node, completions, () -> {
+            runner.run(node);
+            return true;
+        });
+    }
+
+    /**
+     * Lets the runner try to complete a ready node without reserving resources for it.
+     */
+    private void dispatchAttempt(ExecutionNode node, BlockingQueue<Completion> completions) {
+        execute(node, completions, () -> runner.tryComplete(node));
+    }
+
+    @FunctionalInterface
+    private interface NodeTask {
+        boolean run() throws InterruptedException;
+    }
+
+    private void execute(ExecutionNode node, BlockingQueue<Completion> completions, NodeTask task) {
+        executor.execute(() -> {
+            var originalName = Thread.currentThread().getName();
+            var completed = false;
+            Throwable error = null;
+            try {
+                Thread.currentThread().setName("run-" + node.id());
+                completed = task.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = e;
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                Thread.currentThread().setName(originalName);
+            }
+            completions.add(new Completion(node, completed, error));
+        });
+    }
+
+    /**
+     * Collects the given nodes and their transitive predecessors.
+     *
+     * @param includeCompleted If false, nodes that have already completed and their predecessors are skipped.
+     */
+    static Set<ExecutionNode> collectDependencies(Collection<ExecutionNode> targets, boolean includeCompleted) {
+        Set<ExecutionNode> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        var queue = new ArrayDeque<>(targets);
+        while (!queue.isEmpty()) {
+            var node = queue.poll();
+            if (!includeCompleted && node.getState() == NodeState.COMPLETED || !result.add(node)) {
+                continue;
+            }
+            queue.addAll(node.getPredecessors());
+        }
+        return result;
+    }
+
+    /**
+     * The priority of a node is the estimated duration of the longest path from the start of the node
+     * to the end of the last node depending on it.
+     */
+    private Map<ExecutionNode, Long> computePriorities(List<ExecutionNode> sortedNodes,
+                                                       Map<ExecutionNode, Set<ExecutionNode>> successors) {
+        var priorities = new IdentityHashMap<ExecutionNode, Long>(sortedNodes.size());
+        for (var i = sortedNodes.size() - 1; i >= 0; i--) {
+            var node = sortedNodes.get(i);
+            long longestSuccessorPath = 0;
+            for (var successor : successors.get(node)) {
+                longestSuccessorPath = Math.max(longestSuccessorPath, priorities.get(successor));
+            }
+            priorities.put(node, durationEstimator.applyAsLong(node) + longestSuccessorPath);
+        }
+        return priorities;
+    }
+}
@@ -74,6 +74,14 @@ public interface ProcessingEnvironment {
 
     boolean isVerbose();
 
+    /**
+     * Waits for an external process started by the action to exit, while tracking its peak memory usage
+     * for the execution history.
+     *
+     * @return The exit code of the process.
+     */
+    int waitForProcess(Process process) throws InterruptedException;
+
     /**
      * Get a reporter for reporting problems that occurred during execution of this action.
      */
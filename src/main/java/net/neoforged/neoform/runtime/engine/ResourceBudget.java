@@ -0,0 +1,53 @@
+package net.neoforged.neoform.runtime.engine;
+
+import net.neoforged.neoform.runtime.graph.NodeResources;
+
+/**
+ * Tracks the machine resources used by the nodes that are currently running, and decides whether
+ * additional nodes can be started without exceeding the configured budget.
+ * <p>
+ * A node that on its own exceeds the budget is still started once nothing else is running,
+ * since it could otherwise never run at all.
+ * <p>
+ * This class is not thread-safe and is only used from the thread dispatching nodes.
+ */
+final class ResourceBudget {
+    private final long maxHeapBytes;
+    private final int maxCpuCores;
+    private long usedHeapBytes;
+    private int usedCpuCores;
+    private int running;
+
+    ResourceBudget(long maxHeapBytes, int maxCpuCores) {
+        if (maxHeapBytes < 0) {
+            throw new IllegalArgumentException("maxHeapBytes must not be negative: " + maxHeapBytes);
+        }
+        if (maxCpuCores < 1) {
+            throw new IllegalArgumentException("maxCpuCores must be at least 1: " + maxCpuCores);
+        }
+        this.maxHeapBytes = maxHeapBytes;
+        this.maxCpuCores = maxCpuCores;
+    }
+
+    /**
+     * Reserves the given resources if they fit into the remaining budget.
+     *
+     * @return true if the resources were reserved
+     */
+    boolean tryAcquire(NodeResources resources) {
+        if (running > 0 && (usedHeapBytes + resources.heapBytes() > maxHeapBytes
+                            || usedCpuCores + resources.cpuCores() > maxCpuCores)) {
+            return false;
+        }
+        usedHeapBytes += resources.heapBytes();
+        usedCpuCores += resources.cpuCores();
+        running++;
+        return true;
+    }
+
+    void release(NodeResources resources) {
+        usedHeapBytes -= resources.heapBytes();
+        usedCpuCores -= resources.cpuCores();
+        running--;
+    }
+}
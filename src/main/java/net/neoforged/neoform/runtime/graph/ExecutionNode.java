@@ -22,6 +22,8 @@ public final class ExecutionNode {
     private Set<ExecutionNode> predecessors = Set.of();
     private Long started;
     private long elapsedMs;
+    private boolean fromCache;
+    private volatile long peakChildProcessRss = -1;
     private NodeState state = NodeState.NOT_STARTED;
 
     public ExecutionNode(String id, Map<String, NodeInput> inputs, Map<String, NodeOutput> outputs, ExecutionNodeAction action) {
@@ -91,6 +93,7 @@ public final class ExecutionNode {
         }
 
         state = NodeState.COMPLETED;
+        this.fromCache = fromCache;
         elapsedMs = System.currentTimeMillis() - started;
         var elapsedStr = String.format(Locale.ROOT, "%.02f", elapsedMs / 1000.0) + "s";
         var underlinedId = AnsiColor.UNDERLINE + id() + AnsiColor.RESET;
@@ -105,6 +108,34 @@ public final class ExecutionNode {
         return state;
     }
 
+    /**
+     * {@return the time spent on this node, once it has completed or failed}
+     */
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    /**
+     * {@return true if the node was completed by restoring its outputs from the cache}
+     */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    /**
+     * {@return the highest peak resident set size in bytes of the external processes started by this node, or -1 if unknown}
+     */
+    public long getPeakChildProcessRss() {
+        return peakChildProcessRss;
+    }
+
+    /**
+     * Records the peak resident set size of an external process started by this node.
+     */
+    public void recordChildProcessPeakRss(long bytes) {
+        peakChildProcessRss = Math.max(peakChildProcessRss, bytes);
+    }
+
     public String id() {
         return id;
     }
@@ -15,4 +15,12 @@ public interface ExecutionNodeAction {
     default void computeCacheKey(CacheKeyBuilder ck) {
         ck.add("node action class", getClass().getName());
     }
+
+    /**
+     * Describes the resources this action needs while running, which is used to avoid overcommitting
+     * the machine when running multiple nodes concurrently.
+     */
+    default NodeResources getResources() {
+        return NodeResources.DEFAULT;
+    }
 }
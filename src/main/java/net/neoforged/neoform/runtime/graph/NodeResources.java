@@ -0,0 +1,30 @@
+package net.neoforged.neoform.runtime.graph;
+
+/**
+ * Describes the machine resources an action is expected to need while it is running.
+ * The engine uses these to avoid running too many resource-hungry nodes concurrently.
+ *
+ * @param heapBytes The amount of memory the action is expected to allocate, in bytes.
+ *                  For actions that spawn external processes, this is the memory used by that process.
+ * @param cpuCores  The number of CPU cores the action is expected to keep busy. Actions that mostly wait for I/O
+ *                  use none, so they can run alongside the actions that do.
+ */
+public record NodeResources(long heapBytes, int cpuCores) {
+    /**
+     * The resources of a lightweight action, which is the default for all actions.
+     */
+    public static final NodeResources DEFAULT = new NodeResources(0, 1);
+    /**
+     * The resources of an action that only downloads files, which does not count against the CPU budget.
+     */
+    public static final NodeResources IO_ONLY = new NodeResources(0, 0);
+
+    public NodeResources {
+        if (heapBytes < 0) {
+            throw new IllegalArgumentException("heapBytes must not be negative: " + heapBytes);
+        }
+        if (cpuCores < 0) {
+            throw new IllegalArgumentException("cpuCores must not be negative: " + cpuCores);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import net.neoforged.neoform.runtime.utils.Logger;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
@@ -13,33 +14,34 @@ import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
 
-final class TopologicalSort {
+public final class TopologicalSort {
     private static final Logger LOG = Logger.create();
 
     private TopologicalSort() {
     }
 
     /**
-     * Simplifies topological sort used only for debugging purposes.
+     * Sorts all nodes of the graph topologically.
      * This is just a implementation of <a href="https://en.wikipedia.org/wiki/Topological_sorting">Kahn's algorithm</a>.
      */
     public static List<ExecutionNode> topologicalSort(ExecutionGraph graph) throws IllegalArgumentException {
+        return topologicalSort(graph.getNodes());
+    }
+
+    /**
+     * Sorts a subset of the nodes of a graph. Edges to predecessors that are not part of the given nodes are ignored.
+     */
+    public static List<ExecutionNode> topologicalSort(Collection<ExecutionNode> nodes) throws IllegalArgumentException {
         final Queue<ExecutionNode> queue = new ArrayDeque<>();
         final Map<ExecutionNode, Integer> degrees = new HashMap<>();
         final List<ExecutionNode> results = new ArrayList<>();
 
         // We only know about incoming edges, so we compute the succesors first to quickly have access to those edges from the predecessor
-        Map<ExecutionNode, Set<ExecutionNode>> successors = new IdentityHashMap<>();
-        for (var node : graph.getNodes()) {
-            successors.putIfAbsent(node, Collections.newSetFromMap(new IdentityHashMap<>()));
-            for (var predecessor : node.getPredecessors()) {
-                successors.computeIfAbsent(predecessor, ignored -> Collections.newSetFromMap(new IdentityHashMap<>())).add(node);
-            }
-        }
+        Map<ExecutionNode, Set<ExecutionNode>> successors = getSuccessors(nodes);
 
-        for (var node : graph.getNodes()) {
+        for (var node : nodes) {
             // degree: number of incoming edges
-            final int degree = node.getPredecessors().size();
+            final int degree = (int) node.getPredecessors().stream().filter(successors::containsKey).count();
             if (degree == 0) {
                 queue.add(node);
             } else {
@@ -66,4 +68,23 @@ final class TopologicalSort {
 
         return results;
     }
+
+    /**
+     * Computes the successors of the given nodes, only considering edges between the given nodes.
+     */
+    public static Map<ExecutionNode, Set<ExecutionNode>> getSuccessors(Collection<ExecutionNode> nodes) {
+        Map<ExecutionNode, Set<ExecutionNode>> successors = new IdentityHashMap<>();
+        for (var node : nodes) {
+            successors.putIfAbsent(node, Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+        for (var node : nodes) {
+            for (var predecessor : node.getPredecessors()) {
+                var predecessorSuccessors = successors.get(predecessor);
+                if (predecessorSuccessors != null) {
+                    predecessorSuccessors.add(node);
+                }
+            }
+        }
+        return successors;
+    }
 }
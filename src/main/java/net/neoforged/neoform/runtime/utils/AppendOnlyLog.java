@@ -0,0 +1,238 @@
+package net.neoforged.neoform.runtime.utils;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * A simple, crash-safe, line-based file of records that can be shared between multiple processes.
+ * <p>
+ * Each record is a list of string fields, which is written as a single line, prefixed by a CRC32 checksum of its content.
+ * Records that were only partially written (i.e. because the writing process was killed) fail the checksum test
+ * and are ignored while reading. Readers do not need to take any locks, while writers will lock the log
+ * for the duration of the append or rewrite.
+ * <p>
+ * The lock is taken on a separate {@code .lock} file next to the log, since rewriting the log replaces the log file.
+ */
+public final class AppendOnlyLog {
+    private static final char FIELD_SEPARATOR = '\t';
+
+    /**
+     * A JVM can only hold one lock on a file, so threads of this process wait for each other on these first.
+     */
+    private static final Map<Path, ReentrantLock> IN_PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path file;
+
+    public AppendOnlyLog(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Reads all intact records from the log. Corrupted or incomplete records are skipped.
+     *
+     * @return The number of lines that were found in the file, including corrupted lines.
+     */
+    public int read(Consumer<List<String>> consumer) throws IOException {
+        int lines = 0;
+        try (var reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                var record = decodeRecord(line);
+                if (record != null) {
+                    consumer.accept(record);
+                }
+            }
+        } catch (NoSuchFileException ignored) {
+        }
+        return lines;
+    }
+
+    /**
+     * Appends the given records to the log while holding an exclusive lock on the log.
+     */
+    public void append(Collection<? extends List<String>> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        var content = new StringBuilder();
+        for (var record : records) {
+            content.append(encodeRecord(record)).append('\n');
+        }
+
+        withLock(() -> {
+            appendLocked(content);
+            return null;
+        });
+    }
+
+    private void appendLocked(StringBuilder content) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var position = channel.size();
+            // If a previous writer died mid-record, start on a new line so that only the broken record is lost
+            if (position > 0) {
+                var lastByte = ByteBuffer.allocate(1);
+                channel.read(lastByte, position - 1);
+                if (lastByte.get(0) != '\n') {
+                    content.insert(0, '\n');
+                }
+            }
+            var buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    /**
+     * Replaces the content of the log with the given records. This is used to compact logs that contain
+     * superseded records. Records appended by other processes after the caller read the log are lost.
+     * Use {@link #rewrite(Function)} if that is not acceptable.
+     */
+    public void rewrite(Collection<? extends List<String>> records) throws IOException {
+        withLock(() -> {
+            replaceLocked(records);
+            return null;
+        });
+    }
+
+    /**
+     * Replaces the content of the log with records computed from its current content. The current content is read
+     * while holding the exclusive lock on the log, so no records can be appended concurrently and get lost.
+     *
+     * @param rewriter Receives the intact records currently in the log, and returns the records to replace them
+     *                 with, or null to leave the log unchanged.
+     * @return True if the log was rewritten.
+     */
+    public boolean rewrite(Function<List<List<String>>, Collection<? extends List<String>>> rewriter) throws IOException {
+        return withLock(() -> {
+            var currentRecords = new ArrayList<List<String>>();
+            read(currentRecords::add);
+            var records = rewriter.apply(currentRecords);
+            if (records == null) {
+                return false;
+            }
+            replaceLocked(records);
+            return true;
+        });
+    }
+
+    private void replaceLocked(Collection<? extends List<String>> records) throws IOException {
+        var content = new StringBuilder();
+        for (var record : records) {
+            content.append(encodeRecord(record)).append('\n');
+        }
+
+        var tempFile = file.resolveSibling(file.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        Files.writeString(tempFile, content, StandardCharsets.UTF_8);
+        FileUtil.atomicMove(tempFile, file);
+    }
+
+    private <T> T withLock(LockedAction<T> action) throws IOException {
+        var lockFile = file.toAbsolutePath().resolveSibling(file.getFileName() + ".lock");
+        Files.createDirectories(lockFile.getParent());
+        var inProcessLock = IN_PROCESS_LOCKS.computeIfAbsent(lockFile.normalize(), ignored -> new ReentrantLock());
+        inProcessLock.lock();
+        try (var channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             var ignored = channel.lock()) {
+            return action.run();
+        } finally {
+            inProcessLock.unlock();
+        }
+    }
+
+    @FunctionalInterface
+    private interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    static String encodeRecord(List<String> fields) {
+        var payload = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                payload.append(FIELD_SEPARATOR);
+            }
+            escape(fields.get(i), payload);
+        }
+        var payloadText = payload.toString();
+        return checksum(payloadText) + " " + payloadText;
+    }
+
+    @Nullable
+    static List<String> decodeRecord(String line) {
+        var separator = line.indexOf(' ');
+        if (separator == -1) {
+            return null;
+        }
+        var payload = line.substring(separator + 1);
+        if (!line.substring(0, separator).equals(checksum(payload))) {
+            return null;
+        }
+
+        var fields = new ArrayList<String>();
+        var field = new StringBuilder();
+        for (int i = 0; i < payload.length(); i++) {
+            var ch = payload.charAt(i);
+            if (ch == FIELD_SEPARATOR) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (ch == '\\' && i + 1 < payload.length()) {
+                var escaped = payload.charAt(++i);
+                field.append(switch (escaped) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> escaped;
+                });
+            } else {
+                field.append(ch);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static void escape(String text, StringBuilder result) {
+        for (int i = 0; i < text.length(); i++) {
+            var ch = text.charAt(i);
+            switch (ch) {
+                case '\\' -> result.append("\\\\");
+                case '\t' -> result.append("\\t");
+                case '\n' -> result.append("\\n");
+                case '\r' -> result.append("\\r");
+                default -> result.append(ch);
+            }
+        }
+    }
+
+    private static String checksum(String payload) {
+        var crc = new CRC32();
+        crc.update(payload.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().toHexDigits((int) crc.getValue());
+    }
+}
@@ -2,16 +2,37 @@ package net.neoforged.neoform.runtime.utils;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.DigestInputStream;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public final class HashingUtil {
+    /**
+     * Files are read in chunks of this size, which is large enough to keep the number of reads low
+     * for the jar files we usually hash.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+    /**
+     * The maximum number of buffers and digests per algorithm that are kept for reuse. Since hashing runs on
+     * virtual threads, thread-locals would allocate a buffer for every task instead.
+     */
+    private static final int MAX_POOLED = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final Queue<ByteBuffer> BUFFERS = new ArrayBlockingQueue<>(MAX_POOLED);
+    private static final Map<String, Queue<MessageDigest>> DIGESTS = new ConcurrentHashMap<>();
+
     private HashingUtil() {
     }
 
@@ -24,49 +45,92 @@ public final class HashingUtil {
     }
 
     public static String sha1(byte[] value) {
-        MessageDigest digest;
+        var digest = acquireDigest("SHA1");
         try {
-            digest = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+            digest.update(value);
+            return HexFormat.of().formatHex(digest.digest());
+        } finally {
+            releaseDigest("SHA1", digest);
         }
-
-        digest.update(value);
-        return HexFormat.of().formatHex(digest.digest());
     }
 
     public static String hashFile(Path path, String algorithm) throws IOException {
-        MessageDigest digest;
+        var digest = acquireDigest(algorithm);
+        var buffer = acquireBuffer();
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } finally {
+            buffer.clear();
+            BUFFERS.offer(buffer);
+            releaseDigest(algorithm, digest);
+        }
+    }
+
+    private static ByteBuffer acquireBuffer() {
+        var buffer = BUFFERS.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private static MessageDigest acquireDigest(String algorithm) {
+        var pool = DIGESTS.computeIfAbsent(algorithm, ignored -> new ArrayBlockingQueue<>(MAX_POOLED));
+        var digest = pool.poll();
+        if (digest != null) {
+            return digest;
+        }
         try {
-            digest = MessageDigest.getInstance(algorithm);
+            return MessageDigest.getInstance(algorithm);
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
+    }
 
-        try (var in = Files.newInputStream(path);
-             var din = new DigestInputStream(in, digest)) {
-            byte[] buffer = new byte[8192];
-            while (din.read(buffer) != -1) {
-            }
-        }
-
-        return HexFormat.of().formatHex(digest.digest());
+    private static void releaseDigest(String algorithm, MessageDigest digest) {
+        digest.reset();
+        DIGESTS.get(algorithm).offer(digest);
     }
 
     public static String hashDirectory(Path path, String algorithm) throws IOException {
+        return hashDirectory(path, file -> hashFile(file, algorithm));
+    }
+
+    /**
+     * Hashes a manifest of all regular files in a directory, with one line per file consisting of its path relative
+     * to the directory, using {@code /} as the separator, and its hash. Lines are sorted by path, so the result
+     * does not depend on the platform or the order in which the file system lists files.
+     * The files themselves are hashed in parallel using the given function.
+     */
+    public static String hashDirectory(Path path, FileHasher fileHasher) throws IOException {
+        List<String> relativePaths;
         try (var stream = Files.walk(path)) {
-            var fileListing = stream.map(p -> p.relativize(path))
-                    .filter(Files::isRegularFile)
+            relativePaths = stream.filter(Files::isRegularFile)
+                    .map(p -> path.relativize(p).toString().replace('\\', '/'))
                     .sorted()
-                    .map(p -> {
+                    .toList();
+        }
+
+        try {
+            var fileListing = relativePaths.parallelStream()
+                    .map(relativePath -> {
                         try {
-                            return p + " " + HashingUtil.hashFile(p, algorithm);
+                            return relativePath + " " + fileHasher.hash(path.resolve(relativePath));
                         } catch (IOException e) {
                             throw new UncheckedIOException(e);
                         }
                     })
                     .collect(Collectors.joining("\n"));
             return sha1(fileListing);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     }
+
+    @FunctionalInterface
+    public interface FileHasher {
+        String hash(Path file) throws IOException;
+    }
 }
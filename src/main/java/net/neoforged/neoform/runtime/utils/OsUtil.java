@@ -1,5 +1,10 @@
 package net.neoforged.neoform.runtime.utils;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 public final class OsUtil {
     private OsUtil() {
     }
@@ -15,4 +20,36 @@ public final class OsUtil {
     public static boolean isMac() {
         return OsType.current() == OsType.MAC;
     }
+
+    /**
+     * {@return the total amount of physical memory of this machine in bytes, or -1 if it cannot be determined}
+     */
+    public static long getTotalMemory() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean osBean) {
+            return osBean.getTotalMemorySize();
+        }
+        return -1;
+    }
+
+    /**
+     * {@return the peak resident set size of a running process in bytes, or -1 if it cannot be determined}
+     * This is only supported on Linux, where it is read from {@code VmHWM} in {@code /proc/<pid>/status}.
+     */
+    public static long getPeakResidentSetSize(long pid) {
+        if (!isLinux()) {
+            return -1;
+        }
+        try {
+            for (var line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    var value = line.substring("VmHWM:".length()).trim();
+                    if (value.endsWith(" kB")) {
+                        return Long.parseLong(value.substring(0, value.length() - 3).trim()) * 1024;
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+        }
+        return -1;
+    }
 }
@@ -48,6 +48,27 @@ public final class StringUtil {
         return size * 1024 + " " + FILE_SIZE_SUFFIXES[FILE_SIZE_SUFFIXES.length - 1];
     }
 
+    /**
+     * Parses a memory size in the format used by JVM options such as {@code -Xmx}, i.e. {@code 512m} or {@code 4g}.
+     * Sizes without a unit are in bytes.
+     *
+     * @throws NumberFormatException If the size is not in the expected format.
+     */
+    public static long parseBytes(String size) {
+        if (size.isEmpty()) {
+            throw new NumberFormatException("Empty memory size");
+        }
+        var multiplier = switch (Character.toLowerCase(size.charAt(size.length() - 1))) {
+            case 'k' -> 1024L;
+            case 'm' -> 1024L * 1024;
+            case 'g' -> 1024L * 1024 * 1024;
+            case 't' -> 1024L * 1024 * 1024 * 1024;
+            default -> 1L;
+        };
+        var number = multiplier == 1 ? size : size.substring(0, size.length() - 1);
+        return Math.multiplyExact(Long.parseLong(number), multiplier);
+    }
+
     /**
      * Format a java.time duration in a human-readable format.
      */
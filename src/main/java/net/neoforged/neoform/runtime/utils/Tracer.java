@@ -0,0 +1,149 @@
+package net.neoforged.neoform.runtime.utils;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records timed spans of work (running nodes, computing cache keys, waiting for locks, downloads, external processes)
+ * and writes them in the Chrome trace event format, which can be viewed in {@code chrome://tracing} or
+ * <a href="https://ui.perfetto.dev">Perfetto</a>.
+ * <p>
+ * Tracing is disabled by default, in which case spans are not recorded.
+ */
+public final class Tracer {
+    private static final Span DISABLED_SPAN = new Span(null, null);
+
+    private static volatile boolean enabled;
+    private static long startNanos;
+    private static final ConcurrentLinkedQueue<Event> events = new ConcurrentLinkedQueue<>();
+
+    private Tracer() {
+    }
+
+    private record Event(String category,
+                         String name,
+                         long startMicros,
+                         long durationMicros,
+                         long threadId,
+                         String threadName,
+                         Map<String, String> args) {
+    }
+
+    /**
+     * Starts recording spans. Timestamps in the trace are relative to this point in time.
+     */
+    public static synchronized void start() {
+        events.clear();
+        startNanos = System.nanoTime();
+        enabled = true;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a span on the current thread, which ends when the returned span is closed.
+     */
+    public static Span span(String category, String name) {
+        if (!enabled) {
+            return DISABLED_SPAN;
+        }
+        return new Span(category, name);
+    }
+
+    /**
+     * Stops recording spans and writes the spans recorded so far to the given file.
+     */
+    public static synchronized void stopAndWrite(Path file) throws IOException {
+        enabled = false;
+
+        var threadNames = new HashMap<Long, String>();
+        var parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (var writer = new JsonWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            writer.beginObject();
+            writer.name("displayTimeUnit").value("ms");
+            writer.name("traceEvents").beginArray();
+            var pid = ProcessHandle.current().pid();
+            for (var event : events) {
+                threadNames.putIfAbsent(event.threadId, event.threadName);
+                writer.beginObject();
+                writer.name("name").value(event.name);
+                writer.name("cat").value(event.category);
+                writer.name("ph").value("X");
+                writer.name("ts").value(event.startMicros);
+                writer.name("dur").value(event.durationMicros);
+                writer.name("pid").value(pid);
+                writer.name("tid").value(event.threadId);
+                if (!event.args.isEmpty()) {
+                    writer.name("args").beginObject();
+                    for (var entry : event.args.entrySet()) {
+                        writer.name(entry.getKey()).value(entry.getValue());
+                    }
+                    writer.endObject();
+                }
+                writer.endObject();
+            }
+            for (var entry : threadNames.entrySet()) {
+                writer.beginObject();
+                writer.name("name").value("thread_name");
+                writer.name("ph").value("M");
+                writer.name("pid").value(pid);
+                writer.name("tid").value(entry.getKey());
+                writer.name("args").beginObject().name("name").value(entry.getValue()).endObject();
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        events.clear();
+    }
+
+    public static final class Span implements AutoCloseable {
+        private final String category;
+        private final String name;
+        private final long start;
+        private Map<String, String> args = Map.of();
+
+        private Span(String category, String name) {
+            this.category = category;
+            this.name = name;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Adds additional information to the span, which is shown when it is selected in the trace viewer.
+         */
+        public Span arg(String key, Object value) {
+            if (name != null) {
+                if (args.isEmpty()) {
+                    args = new LinkedHashMap<>();
+                }
+                args.put(key, String.valueOf(value));
+            }
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (name == null || !enabled) {
+                return;
+            }
+            var end = System.nanoTime();
+            var thread = Thread.currentThread();
+            var threadName = thread.getName().isEmpty() ? "thread-" + thread.threadId() : thread.getName();
+            events.add(new Event(category, name, (start - startNanos) / 1000, (end - start) / 1000, thread.threadId(), threadName, args));
+        }
+    }
+}
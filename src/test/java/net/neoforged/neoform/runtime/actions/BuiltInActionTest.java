@@ -0,0 +1,157 @@
+package net.neoforged.neoform.runtime.actions;
+
+import net.neoforged.neoform.runtime.cache.CacheKey;
+import net.neoforged.neoform.runtime.cache.CacheKeyBuilder;
+import net.neoforged.neoform.runtime.cli.FileHashService;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class BuiltInActionTest {
+    private static final String EMBEDDED_FINGERPRINT = "0123456789abcdef0123456789abcdef01234567";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testEmbeddedFingerprintIsUsedWhenRunningFromJar() throws IOException {
+        var jar = tempDir.resolve("neoform-runtime.jar");
+        Files.writeString(jar, "jar content");
+
+        var value = computeImplementationFingerprint(jar, EMBEDDED_FINGERPRINT);
+
+        assertThat(value.value()).isEqualTo(EMBEDDED_FINGERPRINT);
+        assertThat(value.annotation()).isEqualTo(CacheKeyBuilder.prettifyPath(jar));
+    }
+
+    @Test
+    void testJarIsHashedWithoutEmbeddedFingerprint() throws IOException {
+        var jar = tempDir.resolve("neoform-runtime.jar");
+        Files.writeString(jar, "jar content");
+
+        var value = computeImplementationFingerprint(jar, null);
+
+        assertThat(value.value()).isEqualTo(new FileHashService().getHashValue(jar));
+    }
+
+    @Test
+    void testClassDirectoriesAreHashedInsteadOfUsingEmbeddedFingerprint() throws IOException {
+        var classesDir = tempDir.resolve("classes");
+        var classFile = classesDir.resolve("net/neoforged/neoform/runtime/actions/SomeAction.class");
+        Files.createDirectories(classFile.getParent());
+        Files.writeString(classFile, "original");
+
+        var original = computeImplementationFingerprint(classesDir, EMBEDDED_FINGERPRINT);
+        assertThat(original.value()).isNotEqualTo(EMBEDDED_FINGERPRINT);
+
+        Files.writeString(classFile, "changed");
+        var changed = computeImplementationFingerprint(classesDir, EMBEDDED_FINGERPRINT);
+        assertThat(changed.value()).isNotEqualTo(original.value());
+    }
+
+    /**
+     * The build passes the inputs of the fingerprint to the tests, so that we can verify that the embedded
+     * fingerprint is up-to-date, and that it changes along with the built-in action classes.
+     */
+    @Test
+    void testEmbeddedFingerprintMatchesImplementationClasses() throws Exception {
+        var classesDirsProperty = System.getProperty("nfrt.test.classesDirs");
+        var runtimeClasspathProperty = System.getProperty("nfrt.test.runtimeClasspath");
+        assumeTrue(classesDirsProperty != null && runtimeClasspathProperty != null);
+        var classesDirs = splitPath(classesDirsProperty);
+        var runtimeClasspath = splitPath(runtimeClasspathProperty);
+
+        var embeddedFingerprint = BuiltInAction.readEmbeddedFingerprint();
+        assertThat(embeddedFingerprint).isEqualTo(computeBuildFingerprint(classesDirs, runtimeClasspath));
+
+        // Change a built-in action class in a copy of the classes
+        var changedClassesDirs = new ArrayList<Path>();
+        for (var i = 0; i < classesDirs.size(); i++) {
+            var copy = tempDir.resolve("classes" + i);
+            copyRecursively(classesDirs.get(i), copy);
+            changedClassesDirs.add(copy);
+        }
+        var changedClass = changedClassesDirs.stream()
+                .map(dir -> dir.resolve("net/neoforged/neoform/runtime/actions/BuiltInAction.class"))
+                .filter(Files::isRegularFile)
+                .findFirst()
+                .orElseThrow();
+        Files.write(changedClass, new byte[]{0}, StandardOpenOption.APPEND);
+
+        assertThat(computeBuildFingerprint(changedClassesDirs, runtimeClasspath)).isNotEqualTo(embeddedFingerprint);
+    }
+
+    private static CacheKey.AnnotatedValue computeImplementationFingerprint(Path location, @Nullable String embeddedFingerprint) {
+        var ck = new CacheKeyBuilder("test", new FileHashService(), Map.of());
+        BuiltInAction.addImplementationFingerprint(ck, location, embeddedFingerprint);
+        return ck.build().components().get("action implementation");
+    }
+
+    /**
+     * Computes the fingerprint the same way as the generateImplementationFingerprint task in build.gradle.
+     */
+    private static String computeBuildFingerprint(List<Path> classesDirs, List<Path> runtimeClasspath) throws IOException, NoSuchAlgorithmException {
+        var digest = MessageDigest.getInstance("SHA-1");
+        var classFiles = new TreeMap<String, Path>();
+        for (var classesDir : classesDirs) {
+            if (!Files.isDirectory(classesDir)) {
+                continue;
+            }
+            try (var stream = Files.walk(classesDir)) {
+                for (var file : stream.filter(Files::isRegularFile).toList()) {
+                    classFiles.put(classesDir.relativize(file).toString().replace('\\', '/'), file);
+                }
+            }
+        }
+        for (var entry : classFiles.entrySet()) {
+            digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(entry.getValue()));
+        }
+        for (var file : runtimeClasspath) {
+            digest.update(file.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(file));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static List<Path> splitPath(String path) {
+        if (path.isEmpty()) {
+            return List.of();
+        }
+        return Arrays.stream(path.split(File.pathSeparator)).map(Path::of).toList();
+    }
+
+    private static void copyRecursively(Path source, Path target) throws IOException {
+        if (!Files.isDirectory(source)) {
+            return;
+        }
+        try (var stream = Files.walk(source)) {
+            for (var file : stream.toList()) {
+                var targetFile = target.resolve(source.relativize(file).toString());
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(targetFile);
+                } else {
+                    Files.copy(file, targetFile);
+                }
+            }
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package net.neoforged.neoform.runtime.actions;
 
 import net.neoforged.neoform.runtime.artifacts.ClasspathItem;
+import net.neoforged.neoform.runtime.cache.CacheKey;
+import net.neoforged.neoform.runtime.cache.CacheKeyBuilder;
+import net.neoforged.neoform.runtime.cli.FileHashService;
 import net.neoforged.neoform.runtime.manifests.MinecraftDownload;
 import net.neoforged.neoform.runtime.manifests.MinecraftLibrary;
 import net.neoforged.neoform.runtime.utils.MavenCoordinate;
@@ -47,4 +50,57 @@ class ExtensibleClasspathTest {
         assertThat(classpath.getEffectiveClasspath())
                 .containsExactly(ClasspathItem.of(MAVEN_LIB), ClasspathItem.of(MAVEN_LIB_WITH_CLASSIFIER));
     }
+
+    @Test
+    void testCacheKeyContainsSingleDigest() {
+        var classpath = new ExtensibleClasspath();
+        classpath.addMinecraftLibraries(List.of(MC_LIB));
+        classpath.addMavenLibraries(List.of(MAVEN_LIB_WITH_CLASSIFIER));
+
+        var components = computeCacheKey(classpath, new FileHashService()).components();
+        assertThat(components).containsOnlyKeys("additional classpath");
+        var value = components.get("additional classpath");
+        assertThat(value.annotation()).isEqualTo("2 entries");
+        assertThat(value.details()).containsOnlyKeys("[000]", "[001]");
+    }
+
+    @Test
+    void testDigestIsReusedUntilClasspathChanges() {
+        var fileHashService = new FileHashService();
+        var classpath = new ExtensibleClasspath();
+        classpath.addMavenLibraries(List.of(MAVEN_LIB));
+
+        var first = computeCacheKey(classpath, fileHashService);
+        var copy = classpath.copy();
+        assertThat(computeCacheKey(classpath, fileHashService).components().get("additional classpath"))
+                .isSameAs(first.components().get("additional classpath"));
+        assertThat(computeCacheKey(copy, fileHashService).components().get("additional classpath"))
+                .isSameAs(first.components().get("additional classpath"));
+
+        copy.addMavenLibraries(List.of(MAVEN_LIB_WITH_CLASSIFIER));
+        assertThat(computeCacheKey(copy, fileHashService).hashValue()).isNotEqualTo(first.hashValue());
+        assertThat(computeCacheKey(classpath, fileHashService).hashValue()).isEqualTo(first.hashValue());
+    }
+
+    @Test
+    void testCacheMissesAreExplainedPerEntry() {
+        var fileHashService = new FileHashService();
+        var classpath = new ExtensibleClasspath();
+        classpath.addMavenLibraries(List.of(MAVEN_LIB));
+        var oldKey = computeCacheKey(classpath, fileHashService);
+        classpath.addMavenLibraries(List.of(MAVEN_LIB_WITH_CLASSIFIER));
+        var newKey = computeCacheKey(classpath, fileHashService);
+
+        var diff = newKey.getDiff(oldKey);
+        assertThat(diff).hasSize(1);
+        assertThat(diff.get(0).key()).isEqualTo("additional classpath[001]");
+        assertThat(diff.get(0).ours().value()).isEqualTo(MAVEN_LIB_WITH_CLASSIFIER.toString());
+        assertThat(diff.get(0).theirs()).isNull();
+    }
+
+    private static CacheKey computeCacheKey(ExtensibleClasspath classpath, FileHashService fileHashService) {
+        var ck = new CacheKeyBuilder("test", fileHashService, Map.of());
+        classpath.computeCacheKey("classpath", ck);
+        return ck.build();
+    }
 }
@@ -0,0 +1,166 @@
+package net.neoforged.neoform.runtime.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheIndexTest {
+    private static final int WRITER_ENTRIES = 300;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCompactionDoesNotLoseConcurrentAppends() throws Exception {
+        var indexFile = tempDir.resolve("index.idx");
+        var writer = new CacheIndex(indexFile);
+        var compactor = new CacheIndex(indexFile);
+
+        var done = new AtomicBoolean();
+        var failure = new AtomicReference<Throwable>();
+        var compactorThread = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    compactor.compact();
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        compactorThread.start();
+        try {
+            for (var i = 0; i < WRITER_ENTRIES; i++) {
+                writer.recordSaved("key_" + i, i, List.of(file("key_" + i)));
+            }
+        } finally {
+            done.set(true);
+            compactorThread.join();
+        }
+
+        assertNull(failure.get());
+        var snapshot = writer.read();
+        for (var i = 0; i < WRITER_ENTRIES; i++) {
+            assertTrue(snapshot.entries().containsKey("key_" + i), "key_" + i + " is missing");
+        }
+    }
+
+    @Test
+    void testRebuildDoesNotLoseConcurrentAppends() throws Exception {
+        var indexFile = tempDir.resolve("index.idx");
+        var writer = new CacheIndex(indexFile);
+        var rebuilder = new CacheIndex(indexFile);
+
+        var done = new AtomicBoolean();
+        var failure = new AtomicReference<Throwable>();
+        var rebuilderThread = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    // Simulates a scan that finds everything saved before it started, but none of the entries
+                    // saved while it runs
+                    var before = rebuilder.read();
+                    var scannedEntries = new ArrayList<>(before.entries().values());
+                    scannedEntries.add(entry("scanned"));
+                    assertNotNull(rebuilder.rebuild(before, System.currentTimeMillis(), scannedEntries));
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        rebuilderThread.start();
+        try {
+            for (var i = 0; i < WRITER_ENTRIES; i++) {
+                writer.recordSaved("key_" + i, i, List.of(file("key_" + i)));
+            }
+        } finally {
+            done.set(true);
+            rebuilderThread.join();
+        }
+
+        assertNull(failure.get());
+        var snapshot = writer.read();
+        assertTrue(snapshot.complete());
+        assertTrue(snapshot.entries().containsKey("scanned"));
+        for (var i = 0; i < WRITER_ENTRIES; i++) {
+            assertTrue(snapshot.entries().containsKey("key_" + i), "key_" + i + " is missing");
+        }
+    }
+
+    @Test
+    void testChangesDuringScanAreAppliedToRebuiltIndex() throws Exception {
+        var index = new CacheIndex(tempDir.resolve("index.idx"));
+        index.recordSaved("deleted", 1, List.of(file("deleted")));
+
+        var before = index.read();
+        // Changes made by another process while the cache is scanned
+        index.recordSaved("added", 2, List.of(file("added")));
+        index.recordDeleted(List.of("deleted"));
+
+        var entries = index.rebuild(before, System.currentTimeMillis(), List.of(entry("scanned"), entry("deleted")));
+
+        assertNotNull(entries);
+        var snapshot = index.read();
+        assertTrue(snapshot.complete());
+        assertEquals(Set.of("scanned", "added"), snapshot.entries().keySet());
+    }
+
+    @Test
+    void testRebuildIsSkippedIfIndexWasRewrittenConcurrently() throws Exception {
+        var index = new CacheIndex(tempDir.resolve("index.idx"));
+        index.recordSaved("existing", 1, List.of(file("existing")));
+
+        var before = index.read();
+        index.compact();
+
+        assertNull(index.rebuild(before, System.currentTimeMillis(), List.of(entry("scanned"))));
+        var snapshot = index.read();
+        assertFalse(snapshot.complete());
+        assertEquals(Set.of("existing"), snapshot.entries().keySet());
+    }
+
+    @Test
+    void testIndexIsIncompleteAfterFailedAppend() throws Exception {
+        var indexFile = tempDir.resolve("index.idx");
+        var index = new CacheIndex(indexFile);
+        var scanStartedAt = System.currentTimeMillis() - 1;
+        assertNotNull(index.rebuild(index.read(), scanStartedAt, List.of(entry("scanned"))));
+        assertTrue(index.read().complete());
+
+        // Appending fails while the lock file cannot be created
+        var lockFile = tempDir.resolve("index.idx.lock");
+        Files.delete(lockFile);
+        Files.createDirectory(lockFile);
+        index.recordSaved("lost", 1, List.of(file("lost")));
+        assertFalse(index.read().complete());
+        // Other processes did not notice the failure
+        assertTrue(new CacheIndex(indexFile).read().complete());
+
+        // Only a scan that started after the failure completes the index again
+        Files.delete(lockFile);
+        assertNotNull(index.rebuild(index.read(), scanStartedAt, List.of(entry("scanned"))));
+        assertFalse(index.read().complete());
+        assertNotNull(index.rebuild(index.read(), System.currentTimeMillis() + 1, List.of(entry("scanned"), entry("lost"))));
+        assertTrue(index.read().complete());
+    }
+
+    private static CacheIndex.IndexedFile file(String cacheKey) {
+        return new CacheIndex.IndexedFile(cacheKey + "_output.jar", 10, null);
+    }
+
+    private static CacheIndex.Entry entry(String cacheKey) {
+        return new CacheIndex.Entry(cacheKey, 0, Map.of(cacheKey + "_output.jar", file(cacheKey)));
+    }
+}
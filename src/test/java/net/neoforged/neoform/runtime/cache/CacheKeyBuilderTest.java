@@ -219,6 +219,23 @@ class CacheKeyBuilderTest {
         }
     }
 
+    @Test
+    void addAllProducesSameKeyRegardlessOfOrder() {
+        var precomputed = new CacheKeyBuilder("test", new FileHashService(), Map.of());
+        precomputed.add("action", "value");
+        var combined = new CacheKeyBuilder("test", new FileHashService(), Map.of());
+        combined.add("input", "hash");
+        combined.addAll(precomputed);
+
+        var direct = new CacheKeyBuilder("test", new FileHashService(), Map.of());
+        direct.add("action", "value");
+        direct.add("input", "hash");
+
+        assertThat(combined.build().hashValue()).isEqualTo(direct.build().hashValue());
+        assertThatThrownBy(() -> combined.addAll(precomputed))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     private static CacheKey cacheKeyForDataSource(DataSource dataSource) {
         return cacheKeyForDataSource("data[" + dataSource.id() + "]", dataSource);
     }
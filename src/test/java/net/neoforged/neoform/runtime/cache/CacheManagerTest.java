@@ -0,0 +1,561 @@
+package net.neoforged.neoform.runtime.cache;
+
+import net.neoforged.neoform.runtime.cli.LockManager;
+import net.neoforged.neoform.runtime.graph.ExecutionNode;
+import net.neoforged.neoform.runtime.utils.HashingUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static net.neoforged.neoform.runtime.cache.CacheTestFixtures.cacheKey;
+import static net.neoforged.neoform.runtime.cache.CacheTestFixtures.createNode;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CacheManagerTest {
+    @TempDir
+    Path tempDir;
+
+    private CacheManager cacheManager;
+    private ExecutionNode node;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cacheManager = new CacheManager(tempDir.resolve("home"), null, tempDir.resolve("work"));
+        node = createNode();
+    }
+
+    @Test
+    void testIdenticalOutputsAreStoredOnce() throws IOException {
+        var entryA = saveOutput("a", "content");
+        var entryB = saveOutput("b", "content");
+        var blobStore = new BlobStore(tempDir.resolve("home/intermediate_results/blobs"));
+        assumeTrue(blobStore.isSupported());
+
+        assertThat(entryA).hasContent("content");
+        assertThat(fileKey(entryA)).isEqualTo(fileKey(entryB));
+        assertThat(blobStore.listBlobs()).hasSize(1);
+    }
+
+    @Test
+    void testBlobIsDeletedWithItsLastEntry() throws IOException {
+        var entryA = saveOutput("a", "content");
+        var entryB = saveOutput("b", "content");
+        var blobStore = new BlobStore(tempDir.resolve("home/intermediate_results/blobs"));
+        assumeTrue(blobStore.isSupported());
+
+        expire(entryA);
+        cacheManager.cleanUpIntermediateResults();
+        assertThat(entryA).doesNotExist();
+        assertThat(entryB).hasContent("content");
+        assertThat(blobStore.listBlobs()).hasSize(1);
+
+        expire(entryB);
+        cacheManager.cleanUpIntermediateResults();
+        assertThat(entryB).doesNotExist();
+        assertThat(blobStore.listBlobs()).isEmpty();
+    }
+
+    @Test
+    void testSavedEntriesAreIndexed() throws IOException {
+        var entry = saveOutput("a", "content");
+
+        var snapshot = cacheIndex().read();
+        assertThat(snapshot.complete()).isFalse();
+        var cacheKey = entry.getFileName().toString().replace("_output.jar", "");
+        assertThat(snapshot.entries()).containsOnlyKeys(cacheKey);
+        assertThat(snapshot.entries().get(cacheKey).files()).containsOnlyKeys(cacheKey + "_output.jar", cacheKey + ".txt");
+        assertThat(snapshot.entries().get(cacheKey).files().get(cacheKey + "_output.jar").size()).isEqualTo(7);
+    }
+
+    @Test
+    void testCleanUpRebuildsIncompleteIndex() throws IOException {
+        var entryA = saveOutput("a", "content a");
+        // Simulate an entry written without updating the index
+        Files.delete(cacheIndex().getFile());
+        var entryB = saveOutput("b", "content b");
+        expire(entryA);
+
+        cacheManager.cleanUpIntermediateResults();
+
+        assertThat(entryA).doesNotExist();
+        assertThat(entryB).exists();
+        var snapshot = cacheIndex().read();
+        assertThat(snapshot.complete()).isTrue();
+        assertThat(snapshot.entries()).hasSize(1);
+    }
+
+    @Test
+    void testCleanUpUsesIndex() throws IOException {
+        var entryA = saveOutput("a", "content a");
+        cacheManager.cleanUpIntermediateResults();
+        // Entries that the index does not know about are left alone until the next rescan
+        var unindexed = entryA.resolveSibling("strip_0000000000000000000000000000000000000000.txt");
+        Files.writeString(unindexed, "{}");
+        Files.setLastModifiedTime(unindexed, FileTime.from(Instant.now().minus(Duration.ofDays(60))));
+        expire(entryA);
+
+        cacheManager.cleanUpIntermediateResults();
+        assertThat(entryA).doesNotExist();
+        assertThat(unindexed).exists();
+
+        cacheManager.cleanUpAll();
+        assertThat(unindexed).doesNotExist();
+        assertThat(cacheIndex().read().entries()).isEmpty();
+    }
+
+    @Test
+    void testIndexIsRebuiltPeriodically() throws IOException {
+        var entryA = saveOutput("a", "content a");
+        cacheManager.cleanUpIntermediateResults();
+        // Simulates an entry written by an older version, which does not update the index
+        var unindexed = entryA.resolveSibling("strip_0000000000000000000000000000000000000000.txt");
+        Files.writeString(unindexed, "{}");
+        Files.setLastModifiedTime(unindexed, FileTime.from(Instant.now().minus(Duration.ofDays(60))));
+
+        cacheManager.cleanUpIntermediateResults();
+        assertThat(unindexed).exists();
+
+        var snapshot = cacheIndex().read();
+        var lastScan = Instant.now().minus(Duration.ofDays(8)).toEpochMilli();
+        assertThat(cacheIndex().rebuild(snapshot, lastScan, snapshot.entries().values())).isNotNull();
+        cacheManager.cleanUpIntermediateResults();
+        assertThat(unindexed).doesNotExist();
+        assertThat(entryA).exists();
+        assertThat(Duration.between(Instant.ofEpochMilli(cacheIndex().read().lastScan()), Instant.now()).toHours()).isLessThan(1);
+    }
+
+    @Test
+    void testEvictionRemovesLeastRecentlyUsedEntries() throws Exception {
+        var entryA = saveOutput("a", "a".repeat(1000));
+        var entryB = saveOutput("b", "b".repeat(1000));
+        var entryC = saveOutput("c", "c".repeat(1000));
+        cacheManager.cleanUpAll();
+        markUsed(entryA, Duration.ofHours(4));
+        markUsed(entryB, Duration.ofHours(3));
+        markUsed(entryC, Duration.ofHours(2));
+
+        try (var otherProcess = new CacheManager(tempDir.resolve("home"), null, tempDir.resolve("work"))) {
+            otherProcess.setMaxSize(3000);
+            otherProcess.evictLeastRecentlyUsed();
+        }
+
+        assertThat(entryA).doesNotExist();
+        assertThat(entryB).exists();
+        assertThat(entryC).exists();
+        assertThat(cacheIndex().read().entries()).hasSize(2);
+    }
+
+    @Test
+    void testEvictionSkipsEntriesInUse() throws Exception {
+        var entryA = saveOutput("a", "a".repeat(1000));
+        var entryB = saveOutput("b", "b".repeat(1000));
+        var entryC = saveOutput("c", "c".repeat(1000));
+        cacheManager.cleanUpAll();
+        markUsed(entryB, Duration.ofHours(3));
+        markUsed(entryC, Duration.ofHours(2));
+
+        var lockManager = new LockManager(tempDir.resolve("locks"));
+        try (var otherProcess = new CacheManager(tempDir.resolve("home"), null, tempDir.resolve("work"));
+             var ignored = lockManager.lock(cacheKeyOf(entryB))) {
+            otherProcess.setMaxSize(1000);
+            otherProcess.startBackgroundEviction(lockManager);
+            while (otherProcess.isEvicting()) {
+                Thread.sleep(10);
+            }
+        }
+
+        // A was used recently, and B is locked
+        assertThat(entryA).exists();
+        assertThat(entryB).exists();
+        assertThat(entryC).doesNotExist();
+    }
+
+    @Test
+    void testPeriodicMaintenanceSkipsEntriesInUse() throws Exception {
+        var entryA = saveOutput("a", "content a");
+        var entryB = saveOutput("b", "content b");
+        expire(entryA);
+        expire(entryB);
+        var maintenanceState = tempDir.resolve("home/nfrt_cache_cleanup.state");
+        Files.writeString(maintenanceState, "");
+        Files.setLastModifiedTime(maintenanceState, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+
+        var lockManager = new LockManager(tempDir.resolve("locks"));
+        try (var otherProcess = new CacheManager(tempDir.resolve("home"), null, tempDir.resolve("work"));
+             var ignored = lockManager.lock(cacheKeyOf(entryB))) {
+            otherProcess.setLockManager(lockManager);
+            otherProcess.performMaintenance();
+        }
+
+        // B is locked
+        assertThat(entryA).doesNotExist();
+        assertThat(entryB).exists();
+        assertThat(Duration.between(Files.getLastModifiedTime(maintenanceState).toInstant(), Instant.now()).toHours()).isLessThan(1);
+    }
+
+    @Test
+    void testInterruptedScanIsContinued() throws Exception {
+        var intermediateResults = tempDir.resolve("home/intermediate_results");
+        Files.createDirectories(intermediateResults);
+        for (var i = 0; i < 1500; i++) {
+            Files.writeString(intermediateResults.resolve(String.format(Locale.ROOT, "strip_%040x.txt", i)), "{}");
+        }
+
+        try (var interrupted = new CacheManager(tempDir.resolve("home"), null, tempDir.resolve("work"))) {
+            interrupted.close();
+            interrupted.cleanUpIntermediateResults();
+        }
+        assertThat(cacheIndex().read().complete()).isFalse();
+        var checkpoint = cacheIndex().readScanCheckpoint();
+        assertThat(checkpoint).isNotNull();
+        assertThat(checkpoint.entries()).hasSize(1000);
+
+        // Entries that were already scanned are not scanned again
+        var lastScanned = String.format(Locale.ROOT, "strip_%040x", 999);
+        var lastUsed = Instant.now().minus(Duration.ofDays(1)).toEpochMilli();
+        cacheIndex().recordScanned(List.of(new CacheIndex.Entry(lastScanned, lastUsed, checkpoint.entries().get(lastScanned).files())));
+        cacheManager.cleanUpIntermediateResults();
+
+        var snapshot = cacheIndex().read();
+        assertThat(snapshot.complete()).isTrue();
+        assertThat(snapshot.entries()).hasSize(1500);
+        assertThat(snapshot.entries().get(lastScanned).lastUsed()).isEqualTo(lastUsed);
+        assertThat(cacheIndex().readScanCheckpoint()).isNull();
+    }
+
+    @Test
+    void testUnusedEntriesAreCompressedAndRestored() throws Exception {
+        var content = "net/minecraft/world/level/Level func_123456_a m_123456_ methodName\n".repeat(5000);
+        var entry = saveOutput("a", content);
+        var compressedEntry = entry.resolveSibling(entry.getFileName() + ".gz");
+        cacheManager.cleanUpAll();
+        markUsed(entry, Duration.ofDays(20));
+
+        try (var otherProcess = new CacheManager(tempDir.resolve("home"), null, tempDir.resolve("work"))) {
+            otherProcess.cleanUpIntermediateResults();
+        }
+        assertThat(entry).doesNotExist();
+        assertThat(compressedEntry).exists();
+        assertThat(Files.size(compressedEntry)).isLessThan(content.length() / 10);
+
+        var outputValues = new HashMap<String, Path>();
+        assertThat(cacheManager.restoreOutputsFromCache(node, cacheKey("a"), outputValues)).isTrue();
+        assertThat(outputValues.get("output")).isEqualTo(entry);
+        assertThat(entry).hasContent(content);
+        assertThat(compressedEntry).doesNotExist();
+        var blobStore = new BlobStore(tempDir.resolve("home/intermediate_results/blobs"));
+        if (blobStore.isSupported()) {
+            assertThat(blobStore.listBlobs()).hasSize(1);
+        }
+        assertThat(cacheIndex().read().entries().get(cacheKeyOf(entry)).files()).containsOnlyKeys(entry.getFileName().toString(), cacheKeyOf(entry) + ".txt");
+    }
+
+    @Test
+    void testIncompressibleEntriesAreNotCompressed() throws Exception {
+        var random = new byte[256 * 1024];
+        new Random(1).nextBytes(random);
+        var entry = saveOutput("a", new String(random, StandardCharsets.ISO_8859_1));
+        cacheManager.cleanUpAll();
+        markUsed(entry, Duration.ofDays(20));
+
+        try (var otherProcess = new CacheManager(tempDir.resolve("home"), null, tempDir.resolve("work"))) {
+            otherProcess.cleanUpIntermediateResults();
+        }
+        assertThat(entry).exists();
+        assertThat(entry.resolveSibling(entry.getFileName() + ".gz")).doesNotExist();
+    }
+
+    @Test
+    void testMetricsCountHitsMissesAndBytes() throws IOException {
+        var entry = saveOutput("a", "content");
+        var outputValues = new HashMap<String, Path>();
+        assertThat(cacheManager.restoreOutputsFromCache(node, cacheKey("a"), outputValues)).isTrue();
+        assertThat(cacheManager.restoreOutputsFromCache(node, cacheKey("b"), new HashMap<>())).isFalse();
+        expire(entry);
+        cacheManager.cleanUpIntermediateResults();
+
+        var report = cacheManager.getMetrics().createReport();
+        assertThat(report.types()).containsOnlyKeys("strip");
+        var counts = report.types().get("strip");
+        assertThat(counts.hits()).isEqualTo(1);
+        assertThat(counts.misses()).isEqualTo(1);
+        assertThat(counts.bytesRestored()).isEqualTo(7);
+        assertThat(counts.bytesWritten()).isGreaterThanOrEqualTo(7);
+        assertThat(counts.bytesEvicted()).isGreaterThanOrEqualTo(7);
+        assertThat(report.total()).isEqualTo(counts);
+    }
+
+    @Test
+    void testStatisticsSummarizeIndex() throws IOException {
+        saveOutput("a", "content");
+        saveOutput("b", "content");
+        cacheManager.cleanUpAll();
+
+        var statistics = cacheManager.getStatistics();
+        assertThat(statistics.complete()).isTrue();
+        assertThat(statistics.entries()).isEqualTo(2);
+        assertThat(statistics.types()).hasSize(1);
+        var stats = statistics.types().get(0);
+        assertThat(stats.type()).isEqualTo("strip");
+        assertThat(stats.entries()).isEqualTo(2);
+        assertThat(stats.size()).isEqualTo(statistics.size());
+        if (new BlobStore(tempDir.resolve("home/intermediate_results/blobs")).isSupported()) {
+            // The identical outputs are only stored once
+            assertThat(statistics.storedSize()).isEqualTo(statistics.size() - 7);
+        }
+    }
+
+    @Test
+    void testQuarantinedEntriesAreNoLongerUsed() throws IOException {
+        var entry = saveOutput("a", "content");
+        var hash = HashingUtil.sha1(entry);
+        var blob = tempDir.resolve("home/intermediate_results/blobs").resolve(hash.substring(0, 2)).resolve(hash);
+
+        cacheManager.quarantine(cacheKey("a"), List.of(entry), List.of(hash));
+
+        assertThat(entry).doesNotExist();
+        assertThat(blob).doesNotExist();
+        assertThat(tempDir.resolve("home/quarantine").resolve(entry.getFileName())).hasContent("content");
+        assertThat(cacheIndex().read().entries()).isEmpty();
+        assertThat(cacheManager.restoreOutputsFromCache(node, cacheKey("a"), new HashMap<>())).isFalse();
+
+        // Saving the outputs again must not link to the quarantined content
+        var newEntry = saveOutput("a", "content");
+        assertThat(newEntry).hasContent("content");
+        assertThat(fileKey(newEntry)).isNotEqualTo(fileKey(tempDir.resolve("home/quarantine").resolve(entry.getFileName())));
+    }
+
+    @Test
+    void testNodeOutputsAreRecordedConcurrently() throws Exception {
+        var output = saveOutput("a", "content");
+        var outputs = new CachedNodeOutputs(Map.of("output", CachedNodeOutputs.Output.of(output, HashingUtil.sha1(output))));
+        var recordFile = tempDir.resolve("home/intermediate_results/outputs.json");
+
+        // Processes restoring the same entry under the shared lock may record its outputs at the same time
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            var writes = new ArrayList<Future<?>>();
+            for (var i = 0; i < 200; i++) {
+                writes.add(executor.submit(() -> {
+                    outputs.write(recordFile);
+                    return null;
+                }));
+            }
+            for (var write : writes) {
+                write.get();
+            }
+        }
+
+        assertThat(CachedNodeOutputs.read(recordFile)).isEqualTo(outputs);
+        try (var stream = Files.list(recordFile.getParent())) {
+            assertThat(stream.filter(f -> f.getFileName().toString().endsWith(".tmp")).toList()).isEmpty();
+        }
+    }
+
+    @Test
+    void testFallbackEntriesAreUsedInPlace() throws Exception {
+        var fallbackEntry = saveFallbackOutput("a", "content");
+        var fallbackLastModified = Files.getLastModifiedTime(fallbackEntry);
+        cacheManager.setFallbackDirs(List.of(tempDir.resolve("image")), false);
+
+        var outputValues = new HashMap<String, Path>();
+        assertThat(cacheManager.restoreOutputsFromCache(node, cacheKey("a"), outputValues)).isTrue();
+        assertThat(outputValues.get("output")).isEqualTo(fallbackEntry);
+        assertThat(Files.getLastModifiedTime(fallbackEntry.resolveSibling(cacheKeyOf(fallbackEntry) + ".txt"))).isEqualTo(fallbackLastModified);
+        assertThat(tempDir.resolve("home/intermediate_results").resolve(fallbackEntry.getFileName())).doesNotExist();
+
+        assertThat(cacheManager.restoreOutputsFromCache(node, cacheKey("b"), new HashMap<>())).isFalse();
+    }
+
+    @Test
+    void testFallbackEntriesAreNotQuarantined() throws Exception {
+        var fallbackEntry = saveFallbackOutput("a", "content");
+        cacheManager.setFallbackDirs(List.of(tempDir.resolve("image")), false);
+
+        cacheManager.quarantine(cacheKey("a"), List.of(fallbackEntry), List.of(HashingUtil.sha1(fallbackEntry)));
+
+        assertThat(fallbackEntry).hasContent("content");
+        assertThat(fallbackEntry.resolveSibling(cacheKeyOf(fallbackEntry) + ".txt")).exists();
+        assertThat(tempDir.resolve("home/quarantine").resolve(fallbackEntry.getFileName())).doesNotExist();
+    }
+
+    @Test
+    void testFallbackEntriesAreImported() throws Exception {
+        var fallbackEntry = saveFallbackOutput("a", "content");
+        var fallbackMarker = fallbackEntry.resolveSibling(cacheKeyOf(fallbackEntry) + ".txt");
+        var fallbackLastModified = Files.getLastModifiedTime(fallbackMarker);
+        cacheManager.setFallbackDirs(List.of(tempDir.resolve("image")), true);
+
+        var outputValues = new HashMap<String, Path>();
+        assertThat(cacheManager.restoreOutputsFromCache(node, cacheKey("a"), outputValues)).isTrue();
+        var importedEntry = tempDir.resolve("home/intermediate_results").resolve(fallbackEntry.getFileName());
+        assertThat(outputValues.get("output")).isEqualTo(importedEntry);
+        assertThat(importedEntry).hasContent("content");
+        assertThat(Files.getLastModifiedTime(fallbackMarker)).isEqualTo(fallbackLastModified);
+        assertThat(cacheIndex().read().entries()).containsOnlyKeys(cacheKeyOf(fallbackEntry));
+
+        // Deleting the imported entry leaves the fallback cache alone
+        expire(importedEntry);
+        cacheManager.cleanUpIntermediateResults();
+        assertThat(importedEntry).doesNotExist();
+        assertThat(fallbackEntry).hasContent("content");
+    }
+
+    @Test
+    void testRemoteEntriesAreAddedWhenRestored() throws Exception {
+        cacheManager.setRemoteBackend(new ArchiveBackend("remote content", new CountDownLatch(0)), false);
+
+        cacheManager.prefetch(node, cacheKey("a"));
+        var outputValues = new HashMap<String, Path>();
+        assertThat(cacheManager.restoreOutputsFromCache(node, cacheKey("a"), outputValues)).isTrue();
+        assertThat(outputValues.get("output")).hasContent("remote content");
+        assertThat(cacheIndex().read().entries()).containsOnlyKeys(cacheKey("a").toString());
+    }
+
+    @Test
+    void testPrefetchDoesNotReplaceEntriesAddedDuringTheDownload() throws Exception {
+        var proceed = new CountDownLatch(1);
+        var backend = new ArchiveBackend("remote content", proceed);
+        cacheManager.setRemoteBackend(backend, false);
+
+        var download = cacheManager.prefetch(node, cacheKey("a"));
+        assertThat(backend.loading.await(5, TimeUnit.SECONDS)).isTrue();
+        // Another process adds the entry while it is being downloaded
+        var entry = saveOutput("a", "local content");
+        proceed.countDown();
+        download.get(5, TimeUnit.SECONDS);
+        cacheManager.close();
+
+        assertThat(entry).hasContent("local content");
+        try (var stream = Files.list(tempDir.resolve("home/remote_transfers"))) {
+            assertThat(stream.toList()).isEmpty();
+        }
+    }
+
+    @Test
+    void testAbandonedRemoteTransfersAreDeleted() throws Exception {
+        var remoteTransfersDir = Files.createDirectories(tempDir.resolve("home/remote_transfers"));
+        var abandoned = Files.writeString(remoteTransfersDir.resolve("remote1.tmp"), "archive");
+        Files.setLastModifiedTime(abandoned, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+        var inProgress = Files.writeString(remoteTransfersDir.resolve("remote2.tmp"), "archive");
+        saveOutput("a", "content");
+
+        cacheManager.cleanUpIntermediateResults();
+
+        assertThat(abandoned).doesNotExist();
+        assertThat(inProgress).exists();
+    }
+
+    /**
+     * A remote cache that has an entry with the given content for every key, which it sends once it may proceed.
+     */
+    private static class ArchiveBackend implements CacheBackend {
+        private final String content;
+        private final CountDownLatch proceed;
+        final CountDownLatch loading = new CountDownLatch(1);
+
+        ArchiveBackend(String content, CountDownLatch proceed) {
+            this.content = content;
+            this.proceed = proceed;
+        }
+
+        @Override
+        public boolean load(String key, Path target) throws IOException {
+            loading.countDown();
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            try (var out = new ZipOutputStream(Files.newOutputStream(target))) {
+                out.putNextEntry(new ZipEntry("output"));
+                out.write(content.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+            return true;
+        }
+
+        @Override
+        public void store(String key, Path source) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private Path saveFallbackOutput(String keyValue, String content) throws Exception {
+        try (var fallbackCache = new CacheManager(tempDir.resolve("image"), null, tempDir.resolve("work"))) {
+            var output = fallbackCache.createWorkspace(node.id()).resolve("output.jar");
+            Files.writeString(output, content);
+            var outputValues = new HashMap<>(Map.of("output", output));
+            fallbackCache.saveOutputs(node, cacheKey(keyValue), outputValues, Map.of("output", HashingUtil.sha1(output)));
+            var entry = outputValues.get("output");
+            // Make sure that touching the files would be noticed
+            var lastModified = FileTime.from(Instant.now().minus(Duration.ofDays(1)));
+            Files.setLastModifiedTime(entry, lastModified);
+            Files.setLastModifiedTime(entry.resolveSibling(cacheKeyOf(entry) + ".txt"), lastModified);
+            return entry;
+        }
+    }
+
+    private Path saveOutput(String keyValue, String content) throws IOException {
+        var workspace = cacheManager.createWorkspace(node.id());
+        var output = workspace.resolve("output.jar");
+        Files.writeString(output, content);
+
+        var outputValues = new HashMap<>(Map.of("output", output));
+        cacheManager.saveOutputs(node, cacheKey(keyValue), outputValues, Map.of("output", HashingUtil.sha1(output)));
+        return outputValues.get("output");
+    }
+
+    /**
+     * Makes the cache entry appear unused for longer than the maximum age.
+     */
+    private void expire(Path entry) throws IOException {
+        var m = CacheKey.FILENAME_PREFIX_PATTERN.matcher(entry.getFileName().toString());
+        assertThat(m.find()).isTrue();
+        var marker = entry.resolveSibling(m.group(1) + ".txt");
+        var lastUsed = Instant.now().minus(Duration.ofDays(60));
+        Files.setLastModifiedTime(marker, FileTime.from(lastUsed));
+        cacheIndex().recordUsed(m.group(1), lastUsed.toEpochMilli());
+    }
+
+    private void markUsed(Path entry, Duration ago) throws IOException {
+        var lastUsed = Instant.now().minus(ago);
+        Files.setLastModifiedTime(entry.resolveSibling(cacheKeyOf(entry) + ".txt"), FileTime.from(lastUsed));
+        cacheIndex().recordUsed(cacheKeyOf(entry), lastUsed.toEpochMilli());
+    }
+
+    private static String cacheKeyOf(Path entry) {
+        var m = CacheKey.FILENAME_PREFIX_PATTERN.matcher(entry.getFileName().toString());
+        assertThat(m.find()).isTrue();
+        return m.group(1);
+    }
+
+    private CacheIndex cacheIndex() {
+        return new CacheIndex(tempDir.resolve("home/intermediate_results.idx"));
+    }
+
+    private static Object fileKey(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+}
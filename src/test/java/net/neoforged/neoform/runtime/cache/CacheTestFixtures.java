@@ -0,0 +1,36 @@
+package net.neoforged.neoform.runtime.cache;
+
+import net.neoforged.neoform.runtime.cli.FileHashService;
+import net.neoforged.neoform.runtime.graph.ExecutionGraph;
+import net.neoforged.neoform.runtime.graph.ExecutionNode;
+import net.neoforged.neoform.runtime.graph.NodeOutputType;
+
+import java.util.Map;
+
+/**
+ * Nodes and cache keys for tests that store outputs in the cache.
+ */
+final class CacheTestFixtures {
+    private CacheTestFixtures() {
+    }
+
+    /**
+     * Creates a node with a single output named {@code output}.
+     */
+    static ExecutionNode createNode() {
+        var builder = new ExecutionGraph().nodeBuilder("strip");
+        builder.output("output", NodeOutputType.JAR, "output");
+        builder.action(environment -> {
+        });
+        return builder.build();
+    }
+
+    /**
+     * Creates a cache key for the node returned by {@link #createNode()}, which differs for every value.
+     */
+    static CacheKey cacheKey(String value) {
+        var cacheKeyBuilder = new CacheKeyBuilder("strip", new FileHashService(), Map.of());
+        cacheKeyBuilder.add("key", value);
+        return cacheKeyBuilder.build();
+    }
+}
@@ -0,0 +1,102 @@
+package net.neoforged.neoform.runtime.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FileHashIndexTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testEntriesArePersisted() throws IOException {
+        var indexFile = tempDir.resolve("index");
+        var file = createOldFile("file.txt", "content");
+
+        try (var index = FileHashIndex.load(indexFile)) {
+            index.put(file, attributes(file), "SHA1", "abcdef");
+        }
+
+        try (var index = FileHashIndex.load(indexFile)) {
+            assertEquals("abcdef", index.get(file, attributes(file), "SHA1"));
+            assertNull(index.get(file, attributes(file), "MD5"));
+        }
+    }
+
+    @Test
+    void testEntriesAreInvalidatedWhenFileChanges() throws IOException {
+        var indexFile = tempDir.resolve("index");
+        var file = createOldFile("file.txt", "content");
+
+        try (var index = FileHashIndex.load(indexFile)) {
+            index.put(file, attributes(file), "SHA1", "abcdef");
+        }
+
+        Files.writeString(file, "other content");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+
+        try (var index = FileHashIndex.load(indexFile)) {
+            assertNull(index.get(file, attributes(file), "SHA1"));
+        }
+    }
+
+    @Test
+    void testRecentlyModifiedFilesAreNotPersisted() throws IOException {
+        var indexFile = tempDir.resolve("index");
+        var file = tempDir.resolve("file.txt");
+        Files.writeString(file, "content");
+
+        try (var index = FileHashIndex.load(indexFile)) {
+            index.put(file, attributes(file), "SHA1", "abcdef");
+        }
+
+        try (var index = FileHashIndex.load(indexFile)) {
+            assertNull(index.get(file, attributes(file), "SHA1"));
+        }
+    }
+
+    @Test
+    void testTruncatedRecordsAreIgnored() throws IOException {
+        var indexFile = tempDir.resolve("index");
+        var file1 = createOldFile("file1.txt", "content1");
+        var file2 = createOldFile("file2.txt", "content2");
+
+        try (var index = FileHashIndex.load(indexFile)) {
+            index.put(file1, attributes(file1), "SHA1", "111111");
+        }
+        // Simulate a process that died while appending a record
+        Files.writeString(indexFile, "1234abcd " + file2.toAbsolutePath(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (var index = FileHashIndex.load(indexFile)) {
+            index.put(file2, attributes(file2), "SHA1", "222222");
+        }
+
+        try (var index = FileHashIndex.load(indexFile)) {
+            assertEquals("111111", index.get(file1, attributes(file1), "SHA1"));
+            assertEquals("222222", index.get(file2, attributes(file2), "SHA1"));
+        }
+    }
+
+    private Path createOldFile(String name, String content) throws IOException {
+        var file = tempDir.resolve(name);
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(1, ChronoUnit.DAYS)));
+        return file;
+    }
+
+    private static BasicFileAttributes attributes(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+}
@@ -0,0 +1,144 @@
+package net.neoforged.neoform.runtime.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.neoforged.neoform.runtime.utils.HashingUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static net.neoforged.neoform.runtime.cache.CacheTestFixtures.cacheKey;
+import static net.neoforged.neoform.runtime.cache.CacheTestFixtures.createNode;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpCacheBackendTest {
+    @TempDir
+    Path tempDir;
+    HttpServer server;
+    String baseUrl;
+    Map<String, byte[]> entries = new ConcurrentHashMap<>();
+    List<String> requests = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(Inet4Address.getLocalHost(), 0), 0);
+        server.createContext("/cache/", this::handle);
+        server.start();
+        var address = server.getAddress();
+        baseUrl = "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + "/cache/";
+    }
+
+    /**
+     * Behaves like a minimal build cache server that stores entries in memory.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var key = exchange.getRequestURI().getPath().substring("/cache/".length());
+            requests.add(exchange.getRequestMethod() + " " + key);
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> {
+                    var content = entries.get(key);
+                    if (content == null) {
+                        exchange.sendResponseHeaders(404, -1);
+                    } else {
+                        exchange.sendResponseHeaders(200, content.length);
+                        exchange.getResponseBody().write(content);
+                    }
+                }
+                case "PUT" -> {
+                    entries.put(key, exchange.getRequestBody().readAllBytes());
+                    exchange.sendResponseHeaders(201, -1);
+                }
+                default -> exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testLoadAndStore() throws IOException {
+        try (var backend = new HttpCacheBackend(URI.create(baseUrl))) {
+            var target = tempDir.resolve("target");
+            assertFalse(backend.load("somekey", target));
+            assertThat(target).doesNotExist();
+
+            var source = tempDir.resolve("source");
+            Files.writeString(source, "hello, world!");
+            backend.store("somekey", source);
+
+            assertTrue(backend.load("somekey", target));
+            assertThat(target).hasContent("hello, world!");
+        }
+    }
+
+    @Test
+    void testServerErrorIsReported() {
+        server.removeContext("/cache/");
+        server.createContext("/cache/", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        try (var backend = new HttpCacheBackend(URI.create(baseUrl))) {
+            assertThrows(IOException.class, () -> backend.load("somekey", tempDir.resolve("target")));
+        }
+    }
+
+    @Test
+    void testOutputsAreSharedThroughRemoteCache() throws Exception {
+        var node = createNode();
+        var cacheKey = cacheKey("value");
+
+        // The first machine builds the output and pushes it
+        try (var producer = createCacheManager("producer", true)) {
+            var workspace = producer.createWorkspace(node.id());
+            var output = workspace.resolve("output.jar");
+            Files.writeString(output, "content");
+            producer.saveOutputs(node, cacheKey, new HashMap<>(Map.of("output", output)), Map.of("output", HashingUtil.sha1(output)));
+        }
+        assertThat(entries).containsKey(cacheKey.toString());
+
+        // The second machine only has it in the remote cache
+        try (var consumer = createCacheManager("consumer", false)) {
+            consumer.prefetch(node, cacheKey);
+            var outputValues = new HashMap<String, Path>();
+            assertTrue(consumer.restoreOutputsFromCache(node, cacheKey, outputValues));
+            assertThat(outputValues.get("output")).hasContent("content");
+        }
+        assertThat(requests).containsExactly("PUT " + cacheKey, "GET " + cacheKey);
+    }
+
+    @Test
+    void testRemoteCacheMiss() throws Exception {
+        try (var cacheManager = createCacheManager("consumer", false)) {
+            var outputValues = new HashMap<String, Path>();
+            assertFalse(cacheManager.restoreOutputsFromCache(createNode(), cacheKey("value"), outputValues));
+            assertThat(outputValues).isEmpty();
+        }
+    }
+
+    private CacheManager createCacheManager(String name, boolean push) throws IOException {
+        var cacheManager = new CacheManager(tempDir.resolve(name), null, tempDir.resolve(name + "-work"));
+        cacheManager.setRemoteBackend(new HttpCacheBackend(URI.create(baseUrl)), push);
+        return cacheManager;
+    }
+}
@@ -0,0 +1,25 @@
+package net.neoforged.neoform.runtime.cli;
+
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ByteSizeConverterTest {
+    ByteSizeConverter converter = new ByteSizeConverter();
+
+    @Test
+    void testValidSizesAreConverted() {
+        assertEquals(6L * 1024 * 1024 * 1024, (long) converter.convert("6g"));
+        assertEquals(512L, (long) converter.convert("512"));
+    }
+
+    @Test
+    void testInvalidSizesAreReportedAsConversionErrors() {
+        for (var size : new String[]{"6gb", "x", "", "0", "-1g", "99999999999t"}) {
+            var e = assertThrows(CommandLine.TypeConversionException.class, () -> converter.convert(size));
+            assertEquals("'" + size + "' is not a positive size such as 512m or 10g", e.getMessage());
+        }
+    }
+}
@@ -4,14 +4,22 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class LockManagerTest {
 
@@ -43,6 +51,224 @@ class LockManagerTest {
         );
     }
 
+    @Test
+    void testLockFilesAreShardedByHash() throws Exception {
+        var lockManager = new LockManager(tempDir);
+        lockManager.lock("key").close();
+
+        assertThat(listRecursively()).containsOnly(
+                "locks/",
+                "locks/a6/",
+                "locks/a6/_a62f2225bf70bfaccbc7f1ef2a397836717377de.lock"
+        );
+    }
+
+    @Test
+    void testMaintenanceDeletesOutdatedUnusedLockFiles() throws Exception {
+        var lockManager = new LockManager(tempDir);
+        lockManager.lock("key").close();
+        lockManager.lock("used key").close();
+        try (var stream = Files.walk(tempDir)) {
+            for (var lockFile : stream.filter(Files::isRegularFile).toList()) {
+                Files.setLastModifiedTime(lockFile, FileTime.from(Instant.now().minus(MIN_AGE_TO_DELETE, ChronoUnit.HOURS)));
+            }
+        }
+
+        try (var ignored = lockManager.lock("used key")) {
+            lockManager.performMaintenance(0, 256);
+        }
+
+        assertThat(listRecursively()).containsOnly(
+                "locks/",
+                "locks/a6/",
+                "locks/1b/",
+                "locks/1b/_1b1558fc9d146efe0c5632fc6ee0a62ceeda96f0.lock"
+        );
+
+        // Lock files are recreated on demand
+        try (var ignored = lockManager.lock("key")) {
+            assertThat(listRecursively()).contains("locks/a6/_a62f2225bf70bfaccbc7f1ef2a397836717377de.lock");
+        }
+    }
+
+    @Test
+    void testLegacyLockFilesAreLockedWhileTheyExist() throws Exception {
+        var lockManager = new LockManager(tempDir);
+        var legacyLockFile = tempDir.resolve("_a62f2225bf70bfaccbc7f1ef2a397836717377de.lock");
+        Files.createFile(legacyLockFile);
+
+        // Older versions only lock the legacy lock file
+        try (var olderVersion = FileChannel.open(legacyLockFile, StandardOpenOption.WRITE)) {
+            var olderVersionLock = olderVersion.lock();
+            try {
+                assertThat(lockManager.tryLock("key")).isNull();
+
+                var acquired = new CountDownLatch(1);
+                var thread = new Thread(() -> {
+                    try (var ignored = lockManager.lockShared("key")) {
+                        acquired.countDown();
+                    }
+                });
+                thread.start();
+                assertThat(acquired.await(200, TimeUnit.MILLISECONDS)).isFalse();
+                olderVersionLock.release();
+                assertThat(acquired.await(5, TimeUnit.SECONDS)).isTrue();
+                thread.join();
+            } finally {
+                olderVersionLock.release();
+            }
+        }
+
+        try (var ignored = lockManager.lock("key");
+             var olderVersion = FileChannel.open(legacyLockFile, StandardOpenOption.WRITE)) {
+            assertThrows(OverlappingFileLockException.class, olderVersion::tryLock);
+        }
+
+        // Legacy lock files are not created for keys that older versions did not lock
+        lockManager.lock("other key").close();
+        assertThat(listRecursively().stream().filter(path -> path.startsWith("_")).toList()).containsExactly(
+                "_a62f2225bf70bfaccbc7f1ef2a397836717377de.lock");
+    }
+
+    @Test
+    void testMaintenanceDoesNotDeleteLegacyLockFilesInUse() throws Exception {
+        touchFile("_a62f2225bf70bfaccbc7f1ef2a397836717377de.lock", MIN_AGE_TO_DELETE);
+        var lockManager = new LockManager(tempDir);
+
+        try (var ignored = lockManager.lock("key")) {
+            lockManager.performMaintenance(0, 0);
+            assertThat(listRecursively()).contains("_a62f2225bf70bfaccbc7f1ef2a397836717377de.lock");
+        }
+
+        lockManager.performMaintenance(0, 0);
+        assertThat(listRecursively()).doesNotContain("_a62f2225bf70bfaccbc7f1ef2a397836717377de.lock");
+    }
+
+    @Test
+    void testWaitingThreadIsWokenWhenLockIsReleased() throws Exception {
+        var lockManager = new LockManager(tempDir);
+        var acquired = new CountDownLatch(1);
+        var waitingSince = new AtomicLong();
+        var waitedNanos = new AtomicLong();
+
+        try (var ignored = lockManager.lock("key")) {
+            var thread = new Thread(() -> {
+                waitingSince.set(System.nanoTime());
+                try (var ignored2 = lockManager.lock("key")) {
+                    waitedNanos.set(System.nanoTime() - waitingSince.get());
+                    acquired.countDown();
+                }
+            });
+            thread.start();
+            // The waiting thread blocks on the lock with a timeout, so that it can update its progress
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (thread.getState() != Thread.State.TIMED_WAITING && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            assertThat(thread.getState()).isEqualTo(Thread.State.TIMED_WAITING);
+            assertThat(acquired.getCount()).isEqualTo(1);
+            waitingSince.set(System.nanoTime());
+        }
+
+        assertThat(acquired.await(5, TimeUnit.SECONDS)).isTrue();
+        // The waiting thread is woken up when the lock is released, rather than when it next checks the lock
+        assertThat(TimeUnit.NANOSECONDS.toMillis(waitedNanos.get())).isLessThan(500);
+    }
+
+    @Test
+    void testTryLockFailsWhileLockIsHeldInProcess() throws Exception {
+        var lockManager = new LockManager(tempDir);
+        var otherLockManager = new LockManager(tempDir);
+
+        try (var ignored = lockManager.lock("key")) {
+            assertThat(otherLockManager.tryLock("key")).isNull();
+            try (var other = otherLockManager.tryLock("other key")) {
+                assertThat(other).isNotNull();
+            }
+        }
+
+        try (var lock = otherLockManager.tryLock("key")) {
+            assertThat(lock).isNotNull();
+        }
+    }
+
+    @Test
+    void testSharedLocksDoNotBlockEachOther() throws Exception {
+        var lockManager = new LockManager(tempDir);
+        var otherLockManager = new LockManager(tempDir);
+
+        try (var ignored = lockManager.lockShared("key")) {
+            var acquired = new CountDownLatch(1);
+            var thread = new Thread(() -> {
+                try (var ignored2 = otherLockManager.lockShared("key")) {
+                    acquired.countDown();
+                }
+            });
+            thread.start();
+            assertThat(acquired.await(5, TimeUnit.SECONDS)).isTrue();
+            thread.join();
+
+            assertThat(otherLockManager.tryLock("key")).isNull();
+        }
+
+        try (var lock = otherLockManager.tryLock("key")) {
+            assertThat(lock).isNotNull();
+        }
+    }
+
+    @Test
+    void testSharedLockWaitsForExclusiveLock() throws Exception {
+        var lockManager = new LockManager(tempDir);
+        var acquired = new CountDownLatch(1);
+
+        try (var ignored = lockManager.lock("key")) {
+            var thread = new Thread(() -> {
+                try (var ignored2 = lockManager.lockShared("key")) {
+                    acquired.countDown();
+                }
+            });
+            thread.start();
+            assertThat(acquired.await(200, TimeUnit.MILLISECONDS)).isFalse();
+        }
+
+        assertThat(acquired.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void testThreadsWaitingForAnotherProcessDoNotBlockCarrierThreads() throws Exception {
+        var lockManager = new LockManager(tempDir);
+        lockManager.lock("key").close();
+        var lockFile = tempDir.resolve("locks/a6/_a62f2225bf70bfaccbc7f1ef2a397836717377de.lock");
+
+        // More virtual threads wait for the lock than there are carrier threads. If waiting pinned them to their
+        // carriers, the virtual thread releasing the lock held by the other process would never run.
+        var waiters = Runtime.getRuntime().availableProcessors() * 2;
+        var acquired = new CountDownLatch(waiters);
+        try (var otherProcess = FileChannel.open(lockFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var otherProcessLock = otherProcess.lock();
+            try {
+                for (var i = 0; i < waiters; i++) {
+                    executor.submit(() -> {
+                        try (var ignored = lockManager.lockShared("key")) {
+                            acquired.countDown();
+                        }
+                    });
+                }
+                executor.submit(() -> {
+                    Thread.sleep(200);
+                    otherProcessLock.release();
+                    return null;
+                });
+
+                assertThat(acquired.await(10, TimeUnit.SECONDS)).isTrue();
+            } finally {
+                // Lets the waiters finish even if the test failed, so closing the executor does not hang
+                otherProcessLock.release();
+            }
+        }
+    }
+
     private List<String> listRecursively() throws IOException {
         try (var stream = Files.walk(tempDir)) {
             return stream.map(p -> {
@@ -0,0 +1,86 @@
+package net.neoforged.neoform.runtime.cli;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultWriteModeTest {
+    @TempDir
+    Path tempDir;
+
+    Path result;
+    Path destination;
+    FileHashService fileHashService = new FileHashService();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        result = tempDir.resolve("result.jar");
+        destination = tempDir.resolve("destination.jar");
+        Files.writeString(result, "result content");
+    }
+
+    @ParameterizedTest
+    @EnumSource(ResultWriteMode.class)
+    void testMaterializeReplacesDestination(ResultWriteMode mode) throws IOException {
+        Files.writeString(destination, "old content");
+        assertThat(mode.isUpToDate(result, destination, fileHashService)).isFalse();
+
+        mode.materialize(result, destination);
+
+        assertThat(destination).hasContent("result content");
+        assertThat(tempDir.resolve("destination.jar.tmp")).doesNotExist();
+        assertThat(mode.isUpToDate(result, destination, new FileHashService())).isTrue();
+    }
+
+    @Test
+    void testMissingDestinationIsNotUpToDate() throws IOException {
+        for (var mode : ResultWriteMode.values()) {
+            assertThat(mode.isUpToDate(result, destination, fileHashService)).isFalse();
+        }
+    }
+
+    @Test
+    void testHardlinkSharesContentWithResult() throws IOException {
+        ResultWriteMode.HARDLINK.materialize(result, destination);
+
+        assertThat(Files.isSymbolicLink(destination)).isFalse();
+        assertThat(Files.isSameFile(result, destination)).isTrue();
+    }
+
+    @Test
+    void testSymlinkPointsToResult() throws IOException {
+        ResultWriteMode.SYMLINK.materialize(result, destination);
+
+        assertThat(Files.readSymbolicLink(destination)).isEqualTo(result.toAbsolutePath());
+    }
+
+    @Test
+    void testCopyHasNewModificationTime() throws IOException {
+        var resultLastModified = FileTime.from(Instant.now().minus(Duration.ofDays(1)));
+        Files.setLastModifiedTime(result, resultLastModified);
+
+        ResultWriteMode.COPY.materialize(result, destination);
+
+        assertThat(Files.getLastModifiedTime(destination)).isNotEqualTo(resultLastModified);
+    }
+
+    @Test
+    void testCopyIsNotUpToDateForLinkModes() throws IOException {
+        ResultWriteMode.COPY.materialize(result, destination);
+
+        assertThat(ResultWriteMode.COPY.isUpToDate(result, destination, fileHashService)).isTrue();
+        assertThat(ResultWriteMode.HARDLINK.isUpToDate(result, destination, fileHashService)).isFalse();
+        assertThat(ResultWriteMode.SYMLINK.isUpToDate(result, destination, fileHashService)).isFalse();
+    }
+}
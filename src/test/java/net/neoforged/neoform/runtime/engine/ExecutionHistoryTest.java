@@ -0,0 +1,85 @@
+package net.neoforged.neoform.runtime.engine;
+
+import net.neoforged.neoform.runtime.graph.ExecutionGraph;
+import net.neoforged.neoform.runtime.graph.ExecutionNode;
+import net.neoforged.neoform.runtime.graph.NodeOutputType;
+import net.neoforged.neoform.runtime.utils.AppendOnlyLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExecutionHistoryTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testStatisticsAreSummarizedAcrossRuns() throws IOException {
+        var historyFile = tempDir.resolve("history.log");
+        var input = tempDir.resolve("input.jar");
+        var output = tempDir.resolve("output.jar");
+        Files.write(input, new byte[100]);
+        Files.write(output, new byte[250]);
+
+        for (var i = 0; i < 3; i++) {
+            try (var history = ExecutionHistory.load(historyFile)) {
+                var graph = new ExecutionGraph();
+                var download = addNode(graph, "download", null);
+                complete(download, input, false);
+                var decompile = addNode(graph, "decompile", "download");
+                decompile.recordChildProcessPeakRss(1024L * (i + 1));
+                complete(decompile, output, i == 2);
+                history.record(decompile);
+            }
+        }
+
+        var statistics = ExecutionHistory.load(historyFile).getStatistics();
+        assertThat(statistics).hasSize(1);
+        var decompileStats = statistics.getFirst();
+        assertThat(decompileStats.nodeId()).isEqualTo("decompile");
+        assertThat(decompileStats.executions()).isEqualTo(3);
+        assertThat(decompileStats.cacheHits()).isEqualTo(1);
+        assertThat(decompileStats.p50InputBytes()).isEqualTo(100);
+        assertThat(decompileStats.p50OutputBytes()).isEqualTo(250);
+        assertThat(decompileStats.p95PeakRssBytes()).isEqualTo(2048);
+    }
+
+    @Test
+    void testRecordsOfPreviousVersionAreRead() throws IOException {
+        var historyFile = tempDir.resolve("history.log");
+        new AppendOnlyLog(historyFile).append(List.of(
+                List.of("1", "0", "decompile", "1000", "miss"),
+                List.of("1", "0", "decompile", "3000", "miss"),
+                List.of("1", "0", "decompile", "2000", "miss")
+        ));
+
+        var history = ExecutionHistory.load(historyFile);
+        assertThat(history.estimateDuration("decompile")).hasValue(2000);
+        var statistics = history.getStatistics().getFirst();
+        assertThat(statistics.p50ElapsedMs()).isEqualTo(2000);
+        assertThat(statistics.p95ElapsedMs()).isEqualTo(3000);
+        assertThat(statistics.p50OutputBytes()).isEqualTo(-1);
+    }
+
+    private static ExecutionNode addNode(ExecutionGraph graph, String id, String dependency) {
+        var builder = graph.nodeBuilder(id);
+        if (dependency != null) {
+            builder.inputFromNodeOutput("input", dependency, "output");
+        }
+        builder.output("output", NodeOutputType.JAR, "output");
+        builder.action(environment -> {
+        });
+        return builder.build();
+    }
+
+    private static void complete(ExecutionNode node, Path output, boolean fromCache) {
+        node.start();
+        node.complete(Map.of("output", output), fromCache);
+    }
+}
@@ -0,0 +1,246 @@
+package net.neoforged.neoform.runtime.engine;
+
+import net.neoforged.neoform.runtime.actions.ExtensibleClasspath;
+import net.neoforged.neoform.runtime.artifacts.ArtifactManager;
+import net.neoforged.neoform.runtime.artifacts.ClasspathItem;
+import net.neoforged.neoform.runtime.cache.CacheKeyBuilder;
+import net.neoforged.neoform.runtime.cache.CacheManager;
+import net.neoforged.neoform.runtime.cache.LauncherInstallations;
+import net.neoforged.neoform.runtime.cli.FileHashService;
+import net.neoforged.neoform.runtime.cli.LockManager;
+import net.neoforged.neoform.runtime.downloads.DownloadManager;
+import net.neoforged.neoform.runtime.graph.ExecutionGraph;
+import net.neoforged.neoform.runtime.graph.ExecutionNodeAction;
+import net.neoforged.neoform.runtime.graph.NodeOutputType;
+import net.neoforged.neoform.runtime.graph.NodeState;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NeoFormEngineTest {
+    @TempDir
+    Path tempDir;
+
+    private final List<String> executedNodes = Collections.synchronizedList(new ArrayList<>());
+    private CacheManager cacheManager;
+    private LockManager lockManager;
+    private DownloadManager downloadManager;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cacheManager = new CacheManager(tempDir.resolve("home"), null, tempDir.resolve("work"));
+        lockManager = new LockManager(tempDir.resolve("home"));
+        downloadManager = new DownloadManager();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        downloadManager.close();
+        cacheManager.close();
+    }
+
+    @Test
+    void testWarmCacheCompletesNodesTopDownWithoutRunningThem() throws Exception {
+        try (var engine = createEngine("final")) {
+            engine.createResults("final");
+        }
+        assertThat(executedNodes).containsExactlyInAnyOrder("source", "transform", "final");
+        executedNodes.clear();
+
+        // Requesting a different set of results bypasses the cache of results
+        try (var engine = createEngine("final")) {
+            var results = engine.createResults("final", "transform");
+            assertThat(results.get("final")).hasContent("source transform final");
+            assertThat(engine.getGraph().getRequiredNode("final").isFromCache()).isTrue();
+        }
+        assertThat(executedNodes).isEmpty();
+    }
+
+    @Test
+    void testModifiedUpstreamOutputForcesRerun() throws Exception {
+        Path transformOutput;
+        try (var engine = createEngine("final")) {
+            engine.createResults("final");
+            transformOutput = engine.getGraph().getRequiredOutput("transform", "output").getResultPath();
+        }
+        executedNodes.clear();
+
+        Files.delete(transformOutput);
+        Files.writeString(transformOutput, "modified output");
+
+        try (var engine = createEngine("final")) {
+            engine.setVerbose(true);
+            var results = engine.createResults("final", "transform");
+            // The result must be computed from the modified output, instead of the recorded hash of the original one
+            assertThat(Files.readString(results.get("final"))).isEqualTo("modified output final");
+        }
+        assertThat(executedNodes).contains("final").doesNotContain("source");
+    }
+
+    @Test
+    void testPartiallyCachedGraphOnlyRunsChangedNodes() throws Exception {
+        try (var engine = createEngine("final")) {
+            engine.createResults("final");
+        }
+        executedNodes.clear();
+
+        try (var engine = createEngine("changed")) {
+            var results = engine.createResults("final");
+            assertThat(results.get("final")).hasContent("source transform changed");
+            assertThat(engine.getGraph().getRequiredNode("transform").isFromCache()).isTrue();
+        }
+        assertThat(executedNodes).containsExactly("final");
+    }
+
+    @Test
+    void testResultsCacheCoversClasspathsReferencingNodeOutputs() throws Exception {
+        try (var engine = createEngine("final")) {
+            addTransformToClasspathOfFinal(engine.getGraph());
+            engine.createResults("final");
+        }
+        executedNodes.clear();
+
+        try (var engine = createEngine("final")) {
+            addTransformToClasspathOfFinal(engine.getGraph());
+            var results = engine.createResults("final");
+            assertThat(results.get("final")).hasContent("source transform final");
+            // The results were restored without evaluating the graph
+            assertThat(engine.getGraph().getRequiredNode("final").getState()).isEqualTo(NodeState.NOT_STARTED);
+        }
+        assertThat(executedNodes).isEmpty();
+    }
+
+    @Test
+    void testCachedResultsCoverOutputsOfNodesThatWereNotCompleted() throws Exception {
+        var externalOutput = tempDir.resolve("external.txt");
+        try (var engine = createEngine("final")) {
+            getAction(engine.getGraph(), "source").externalOutput = externalOutput;
+            engine.createResults("final");
+        }
+
+        // Completes transform and final top-down, without completing source, and caches these results
+        try (var engine = createEngine("final")) {
+            getAction(engine.getGraph(), "source").externalOutput = externalOutput;
+            engine.createResults("final", "transform");
+            assertThat(engine.getGraph().getRequiredNode("source").getState()).isEqualTo(NodeState.NOT_STARTED);
+        }
+        executedNodes.clear();
+
+        Files.writeString(externalOutput, "modified source");
+
+        try (var engine = createEngine("final")) {
+            getAction(engine.getGraph(), "source").externalOutput = externalOutput;
+            var results = engine.createResults("final", "transform");
+            assertThat(results.get("final")).hasContent("source transform final");
+        }
+        // Source produces the same output again, so final is restored from the cache after transform
+        assertThat(executedNodes).containsExactlyInAnyOrder("source", "transform");
+    }
+
+    @Test
+    void testCorruptFallbackEntriesAreRunInsteadOfQuarantined() throws Exception {
+        Path sourceOutput;
+        try (var engine = createEngine("final")) {
+            engine.createResults("final");
+            sourceOutput = engine.getGraph().getRequiredOutput("source", "output").getResultPath();
+        }
+        executedNodes.clear();
+        Files.delete(sourceOutput);
+        Files.writeString(sourceOutput, "corrupt");
+
+        // Use the cache as a read-only fallback cache of another one
+        cacheManager.close();
+        cacheManager = new CacheManager(tempDir.resolve("other-home"), null, tempDir.resolve("work"));
+        cacheManager.setFallbackDirs(List.of(tempDir.resolve("home")), false);
+        cacheManager.setVerifyOutputs(true);
+        try (var engine = createEngine("final")) {
+            var results = engine.createResults("source");
+            assertThat(results.get("source")).hasContent("source");
+        }
+        assertThat(executedNodes).containsExactly("source");
+        assertThat(sourceOutput).hasContent("corrupt");
+        assertThat(tempDir.resolve("home/quarantine")).doesNotExist();
+    }
+
+    private static void addTransformToClasspathOfFinal(ExecutionGraph graph) {
+        getAction(graph, "final").classpath.add(ClasspathItem.of(graph.getRequiredOutput("transform", "output")));
+    }
+
+    private static AppendWordAction getAction(ExecutionGraph graph, String nodeId) {
+        return (AppendWordAction) graph.getRequiredNode(nodeId).action();
+    }
+
+    /**
+     * Creates an engine with a chain of three nodes, where each node appends a word to the output of the previous one.
+     */
+    private NeoFormEngine createEngine(String finalWord) throws IOException {
+        var artifactManager = new ArtifactManager(List.of(), cacheManager, downloadManager, lockManager,
+                URI.create("http://localhost/version_manifest.json"), new LauncherInstallations(List.of()));
+        var engine = new NeoFormEngine(artifactManager, new FileHashService(), cacheManager, lockManager);
+        var graph = engine.getGraph();
+
+        var source = graph.nodeBuilder("source");
+        graph.setResult("source", source.output("output", NodeOutputType.TXT, "output"));
+        source.action(new AppendWordAction("source", "source"));
+        source.build();
+
+        var transform = graph.nodeBuilder("transform");
+        transform.inputFromNodeOutput("input", "source", "output");
+        graph.setResult("transform", transform.output("output", NodeOutputType.TXT, "output"));
+        transform.action(new AppendWordAction("transform", "transform"));
+        transform.build();
+
+        var finalNode = graph.nodeBuilder("final");
+        finalNode.inputFromNodeOutput("input", "transform", "output");
+        graph.setResult("final", finalNode.output("output", NodeOutputType.TXT, "output"));
+        finalNode.action(new AppendWordAction("final", finalWord));
+        finalNode.build();
+
+        return engine;
+    }
+
+    private class AppendWordAction implements ExecutionNodeAction {
+        private final String nodeId;
+        private final String word;
+        private final ExtensibleClasspath classpath = new ExtensibleClasspath();
+        @Nullable
+        private Path externalOutput;
+
+        AppendWordAction(String nodeId, String word) {
+            this.nodeId = nodeId;
+            this.word = word;
+        }
+
+        @Override
+        public void run(ProcessingEnvironment environment) throws IOException {
+            executedNodes.add(nodeId);
+            var input = environment.getInputPath("input");
+            var content = input != null ? Files.readString(input) + " " + word : word;
+            if (externalOutput != null) {
+                Files.writeString(externalOutput, content);
+                environment.setOutput("output", externalOutput);
+            } else {
+                Files.writeString(environment.getOutputPath("output"), content);
+            }
+        }
+
+        @Override
+        public void computeCacheKey(CacheKeyBuilder ck) {
+            ExecutionNodeAction.super.computeCacheKey(ck);
+            ck.add("word", word);
+            classpath.computeCacheKey("classpath", ck);
+        }
+    }
+}
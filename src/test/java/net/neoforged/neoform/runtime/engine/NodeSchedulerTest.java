@@ -0,0 +1,172 @@
+package net.neoforged.neoform.runtime.engine;
+
+import net.neoforged.neoform.runtime.graph.ExecutionGraph;
+import net.neoforged.neoform.runtime.graph.ExecutionNode;
+import net.neoforged.neoform.runtime.graph.ExecutionNodeAction;
+import net.neoforged.neoform.runtime.graph.NodeResources;
+import net.neoforged.neoform.runtime.graph.NodeOutputType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NodeSchedulerTest {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ExecutionGraph graph = new ExecutionGraph();
+    private final List<String> executedNodes = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void testLongestPathIsStartedFirst() throws InterruptedException {
+        var download = addNode("download");
+        addNode("decompile");
+        addNode("patch", "decompile");
+        var recompile = addNode("recompile", "patch");
+
+        var estimates = Map.of("download", 500L, "decompile", 1000L, "patch", 1000L, "recompile", 1000L);
+        var scheduler = new NodeScheduler(executor, new ResourceBudget(Long.MAX_VALUE, 1), node -> estimates.get(node.id()), node -> executedNodes.add(node.id()));
+        scheduler.run(List.of(download, recompile));
+
+        assertThat(executedNodes).containsExactly("decompile", "patch", "recompile", "download");
+    }
+
+    @Test
+    void testDependenciesRunBeforeDependents() throws InterruptedException {
+        addNode("a");
+        addNode("b");
+        addNode("c", "a", "b");
+        var d = addNode("d", "c", "a");
+
+        var scheduler = new NodeScheduler(executor, new ResourceBudget(Long.MAX_VALUE, 4), node -> 1000, node -> executedNodes.add(node.id()));
+        scheduler.run(List.of(d));
+
+        assertThat(executedNodes).hasSize(4);
+        assertThat(executedNodes.indexOf("c")).isGreaterThan(executedNodes.indexOf("a")).isGreaterThan(executedNodes.indexOf("b"));
+        assertThat(executedNodes.get(3)).isEqualTo("d");
+    }
+
+    @Test
+    void testFailureStopsDependentNodes() {
+        addNode("a");
+        var b = addNode("b", "a");
+
+        var scheduler = new NodeScheduler(executor, new ResourceBudget(Long.MAX_VALUE, 2), node -> 1000, node -> {
+            executedNodes.add(node.id());
+            throw new IllegalStateException("failed " + node.id());
+        });
+
+        var e = assertThrows(IllegalStateException.class, () -> scheduler.run(List.of(b)));
+        assertThat(e).hasMessage("failed a");
+        assertThat(executedNodes).containsExactly("a");
+    }
+
+    @Test
+    void testNodesExceedingMemoryBudgetDoNotRunConcurrently() throws InterruptedException {
+        var heavyResources = new NodeResources(3000, 1);
+        var decompile = addNode("decompile", heavyResources);
+        var transform = addNode("transform", heavyResources);
+        var oversized = addNode("oversized", new NodeResources(5000, 1));
+
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+        var scheduler = new NodeScheduler(executor, new ResourceBudget(4000, 4), node -> 1000, node -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            running.decrementAndGet();
+            executedNodes.add(node.id());
+        });
+        scheduler.run(List.of(decompile, transform, oversized));
+
+        assertThat(executedNodes).containsExactlyInAnyOrder("decompile", "transform", "oversized");
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    void testIoOnlyNodesRunAlongsideNodesUsingAllCores() throws InterruptedException {
+        var decompile = addNode("decompile");
+        var download = addNode("download", NodeResources.IO_ONLY);
+
+        var bothRunning = new CountDownLatch(2);
+        var scheduler = new NodeScheduler(executor, new ResourceBudget(Long.MAX_VALUE, 1), node -> 1000, node -> {
+            bothRunning.countDown();
+            if (bothRunning.await(5, TimeUnit.SECONDS)) {
+                executedNodes.add(node.id());
+            }
+        });
+        scheduler.run(List.of(decompile, download));
+
+        assertThat(executedNodes).containsExactlyInAnyOrder("decompile", "download");
+    }
+
+    @Test
+    void testNodesCompletedWithoutRunningDoNotReserveResources() throws InterruptedException {
+        var compile = addNode("compile");
+        addNode("cached");
+        var dependent = addNode("dependent", "cached");
+
+        var cachedCompleted = new CountDownLatch(1);
+        var completedNodes = Collections.synchronizedList(new ArrayList<String>());
+        var scheduler = new NodeScheduler(executor, new ResourceBudget(Long.MAX_VALUE, 1), node -> 1000, new NodeScheduler.NodeRunner() {
+            @Override
+            public void run(ExecutionNode node) throws InterruptedException {
+                if (node == compile && !cachedCompleted.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("cached node was not completed while compile was running");
+                }
+                executedNodes.add(node.id());
+            }
+
+            @Override
+            public boolean tryComplete(ExecutionNode node) {
+                if (!node.id().equals("cached")) {
+                    return false;
+                }
+                completedNodes.add(node.id());
+                cachedCompleted.countDown();
+                return true;
+            }
+        });
+        scheduler.run(List.of(compile, dependent));
+
+        assertThat(completedNodes).containsExactly("cached");
+        assertThat(executedNodes).containsExactlyInAnyOrder("compile", "dependent");
+    }
+
+    private ExecutionNode addNode(String id, String... dependencies) {
+        return addNode(id, NodeResources.DEFAULT, dependencies);
+    }
+
+    private ExecutionNode addNode(String id, NodeResources resources, String... dependencies) {
+        var builder = graph.nodeBuilder(id);
+        for (var dependency : dependencies) {
+            builder.inputFromNodeOutput(dependency, dependency, "output");
+        }
+        builder.output("output", NodeOutputType.JAR, "output");
+        builder.action(new ExecutionNodeAction() {
+            @Override
+            public void run(ProcessingEnvironment environment) {
+            }
+
+            @Override
+            public NodeResources getResources() {
+                return resources;
+            }
+        });
+        return builder.build();
+    }
+}
@@ -6,8 +6,15 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
 class HashingUtilTest {
     @TempDir
@@ -26,4 +33,47 @@ class HashingUtilTest {
         Files.writeString(emptyFile, "test");
         assertEquals("a94a8fe5ccb19ba61c4c0873d391e987982fbbd3", HashingUtil.hashFile(emptyFile, "SHA1"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testHashFilesLargerThanTheBufferConcurrently() throws Exception {
+        var files = IntStream.range(0, 8).mapToObj(i -> tempDir.resolve("file" + i)).toList();
+        var expectedHashes = new ArrayList<String>();
+        var random = new Random(1234);
+        for (var file : files) {
+            var content = new byte[1024 * 1024 + random.nextInt(1024)];
+            random.nextBytes(content);
+            Files.write(file, content);
+            expectedHashes.add(HexFormat.of().formatHex(MessageDigest.getInstance("SHA1").digest(content)));
+        }
+
+        for (var i = 0; i < 3; i++) {
+            List<String> hashes = files.parallelStream().map(file -> {
+                try {
+                    return HashingUtil.hashFile(file, "SHA1");
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }).toList();
+            assertEquals(expectedHashes, hashes);
+        }
+    }
+
+    @Test
+    void testHashDirectoryHashesManifestOfRelativePaths() throws IOException {
+        Files.createDirectories(tempDir.resolve("sub"));
+        Files.writeString(tempDir.resolve("sub/b.txt"), "b");
+        Files.writeString(tempDir.resolve("a.txt"), "a");
+
+        var manifest = "a.txt " + HashingUtil.sha1("a") + "\nsub/b.txt " + HashingUtil.sha1("b");
+        assertEquals(HashingUtil.sha1(manifest), HashingUtil.hashDirectory(tempDir, "SHA1"));
+    }
+
+    @Test
+    void testHashDirectoryChangesWithContent() throws IOException {
+        Files.writeString(tempDir.resolve("a.txt"), "a");
+        var hash = HashingUtil.hashDirectory(tempDir, "SHA1");
+
+        Files.writeString(tempDir.resolve("a.txt"), "changed");
+        assertNotEquals(hash, HashingUtil.hashDirectory(tempDir, "SHA1"));
+    }
+}
@@ -25,4 +25,16 @@ class StringUtilTest {
     void testFormatSize(long size, String expected) {
         assertEquals(expected, StringUtil.formatBytes(size));
     }
+
+    @ParameterizedTest
+    @CsvSource(textBlock = """
+            123,123
+            1k,1024
+            512m,536870912
+            4G,4294967296
+            1t,1099511627776
+            """)
+    void testParseBytes(String size, long expected) {
+        assertEquals(expected, StringUtil.parseBytes(size));
+    }
 }
\ No newline at end of file
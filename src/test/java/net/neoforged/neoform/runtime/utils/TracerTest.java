@@ -0,0 +1,58 @@
+package net.neoforged.neoform.runtime.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TracerTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSpansAreWrittenAsTraceEvents() throws IOException {
+        Tracer.start();
+        try (var span = Tracer.span("node", "decompile")) {
+            span.arg("fromCache", false);
+            try (var ignored = Tracer.span("lock", "Lock decompile")) {
+            }
+        }
+        var traceFile = tempDir.resolve("trace.json");
+        Tracer.stopAndWrite(traceFile);
+
+        var events = JsonParser.parseString(Files.readString(traceFile)).getAsJsonObject().getAsJsonArray("traceEvents");
+        var completeEvents = events.asList().stream()
+                .map(JsonElement::getAsJsonObject)
+                .filter(event -> event.get("ph").getAsString().equals("X"))
+                .toList();
+        assertThat(completeEvents).hasSize(2);
+
+        // Spans are recorded when they end, so the inner span comes first
+        var lockEvent = completeEvents.get(0);
+        var nodeEvent = completeEvents.get(1);
+        assertThat(lockEvent.get("name").getAsString()).isEqualTo("Lock decompile");
+        assertThat(nodeEvent.get("cat").getAsString()).isEqualTo("node");
+        assertThat(nodeEvent.getAsJsonObject("args").get("fromCache").getAsString()).isEqualTo("false");
+        assertThat(lockEvent.get("ts").getAsLong()).isGreaterThanOrEqualTo(nodeEvent.get("ts").getAsLong());
+        assertThat(lockEvent.get("tid").getAsLong()).isEqualTo(Thread.currentThread().threadId());
+    }
+
+    @Test
+    void testSpansAreNotRecordedWhenDisabled() throws IOException {
+        try (var ignored = Tracer.span("node", "decompile")) {
+        }
+        Tracer.start();
+        var traceFile = tempDir.resolve("trace.json");
+        Tracer.stopAndWrite(traceFile);
+
+        var events = JsonParser.parseString(Files.readString(traceFile)).getAsJsonObject().getAsJsonArray("traceEvents");
+        assertThat(events).isEmpty();
+        assertThat(Tracer.isEnabled()).isFalse();
+    }
+}